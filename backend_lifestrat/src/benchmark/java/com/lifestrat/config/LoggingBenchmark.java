@@ -0,0 +1,109 @@
+package com.lifestrat.config;
+
+import ch.qos.logback.classic.LoggerContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость логирования для вызывающего потока: четыре потока пишут события сервисов
+ * через fluent API, как TaskService, AnalyticsService и JwtService под нагрузкой.
+ * async — конфигурация logback-spring.xml, sync — синхронная консоль Spring Boot по умолчанию,
+ * off — логгеры com.lifestrat выключены. Стандартный вывод перенаправлен во временный файл.
+ * В режиме async при заполненной очереди INFO отбрасываются, поэтому измеряется только задержка вызова.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class LoggingBenchmark {
+
+    @Param({"async", "sync", "off"})
+    private String mode;
+
+    private final Logger taskLog = LoggerFactory.getLogger("com.lifestrat.service.TaskService");
+    private final Logger analyticsLog = LoggerFactory.getLogger("com.lifestrat.service.AnalyticsService");
+    private final Logger jwtLog = LoggerFactory.getLogger("com.lifestrat.service.JwtService");
+    private PrintStream console;
+    private Path output;
+    private ConfigurableApplicationContext context;
+
+    @Configuration(proxyBeanMethods = false)
+    static class NoBeans {
+    }
+
+    @State(Scope.Thread)
+    public static class Events {
+        private final long userId = Thread.currentThread().getId();
+        private long sequence;
+    }
+
+    @Setup(Level.Trial)
+    public void startLogging() throws IOException {
+        console = System.out;
+        output = Files.createTempFile("logging-benchmark", ".log");
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(output.toFile())), true));
+
+        String[] args = switch (mode) {
+            case "async" -> new String[0];
+            case "sync" -> new String[]{"--logging.config=classpath:logback-benchmark-sync.xml"};
+            case "off" -> new String[]{"--logging.level.com.lifestrat=OFF"};
+            default -> throw new IllegalArgumentException("Unknown logging mode: " + mode);
+        };
+        context = new SpringApplicationBuilder(NoBeans.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopLogging() throws IOException {
+        context.close();
+        ((LoggerContext) LoggerFactory.getILoggerFactory()).stop();
+        System.out.flush();
+        System.setOut(console);
+        Files.deleteIfExists(output);
+    }
+
+    @Benchmark
+    public void logEvent(Events events) {
+        long sequence = events.sequence++;
+        switch ((int) (sequence % 3)) {
+            case 0 -> taskLog.atInfo().setMessage("Task completed").addKeyValue("taskId", sequence)
+                    .addKeyValue("userId", events.userId).log();
+            case 1 -> analyticsLog.atInfo().setMessage("Time statistics calculated")
+                    .addKeyValue("userId", events.userId).log();
+            default -> jwtLog.atInfo().setMessage("JWT token generated")
+                    .addKeyValue("subject", "user" + events.userId).log();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.lifestrat.service;
+
+import com.lifestrat.dto.DailyPlanDto;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время построения дневного плана по бэклогу из открытых задач.
+ * Лимит времени DP снят, чтобы измерялось точное решение, а не момент отката на жадную эвристику;
+ * жадная эвристика измеряется отдельно, без выделения таблицы DP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DailyPlanBenchmark {
+
+    @Param({"500", "5000"})
+    private int backlogSize;
+
+    @Param({"480"})
+    private int timeBudgetMinutes;
+
+    @Param({"10"})
+    private int energyBudget;
+
+    private final DailyPlanService planner = new DailyPlanService(null, TimeUnit.MINUTES.toMillis(1));
+    private final LocalDate today = LocalDate.now();
+    private List<Task> backlog;
+
+    @Setup
+    public void createBacklog() {
+        Random random = new Random(42);
+        backlog = new ArrayList<>(backlogSize);
+        for (int i = 0; i < backlogSize; i++) {
+            Task task = new Task();
+            task.setId((long) i);
+            task.setTitle("Task " + i);
+            task.setDeadline(today.plusDays(random.nextInt(30) - 5));
+            task.setPriority(Priority.values()[random.nextInt(Priority.values().length)]);
+            task.setEstimatedTimeMinutes(5 + random.nextInt(120));
+            task.setEnergyCost(EnergyCost.values()[random.nextInt(EnergyCost.values().length)]);
+            backlog.add(task);
+        }
+        // Иначе бенчмарк knapsack незаметно измерял бы жадную эвристику
+        if (!knapsack().optimal()) {
+            throw new IllegalStateException("Backlog of " + backlogSize + " tasks does not fit the exact planner");
+        }
+    }
+
+    @Benchmark
+    public DailyPlanDto knapsack() {
+        return planner.plan(backlog, today, timeBudgetMinutes, energyBudget, DailyPlanService.Strategy.AUTO);
+    }
+
+    @Benchmark
+    public DailyPlanDto greedy() {
+        return planner.plan(backlog, today, timeBudgetMinutes, energyBudget, DailyPlanService.Strategy.GREEDY);
+    }
+}
\ No newline at end of file
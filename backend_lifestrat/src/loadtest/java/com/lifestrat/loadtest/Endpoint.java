@@ -0,0 +1,24 @@
+package com.lifestrat.loadtest;
+
+// Операции нагрузочного теста; key используется в настройках смеси и SLO
+enum Endpoint {
+    LOGIN("login"),
+    LIST_TASKS("list-tasks"),
+    COMPLETE_TASK("complete-task"),
+    DASHBOARD("dashboard");
+
+    final String key;
+
+    Endpoint(String key) {
+        this.key = key;
+    }
+
+    static Endpoint ofKey(String key) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.key.equals(key)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint in load test settings: " + key);
+    }
+}
\ No newline at end of file
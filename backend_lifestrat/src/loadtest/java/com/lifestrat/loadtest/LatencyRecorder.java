@@ -0,0 +1,49 @@
+package com.lifestrat.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Задержки одной операции в микросекундах. Все значения хранятся целиком,
+ * перцентили считаются по отсортированной копии методом ближайшего ранга.
+ */
+final class LatencyRecorder {
+
+    private long[] micros = new long[1024];
+    private int count;
+    private long errors;
+
+    synchronized void record(long latencyNanos, boolean success) {
+        if (count == micros.length) {
+            micros = Arrays.copyOf(micros, count * 2);
+        }
+        micros[count++] = latencyNanos / 1000;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        long[] sorted = Arrays.copyOf(micros, count);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, errors);
+    }
+
+    record Snapshot(long[] sortedMicros, long errors) {
+
+        long count() {
+            return sortedMicros.length;
+        }
+
+        double percentileMs(double percentile) {
+            if (sortedMicros.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedMicros.length);
+            return sortedMicros[Math.max(rank, 1) - 1] / 1000.0;
+        }
+
+        double maxMs() {
+            return sortedMicros.length == 0 ? 0 : sortedMicros[sortedMicros.length - 1] / 1000.0;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.lifestrat.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+// HTTP-клиент к приложению на loopback; тела ответов читаются полностью, как это делал бы браузер
+final class LoadTestClient {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    LoadTestClient(int port) {
+        this.baseUrl = "http://127.0.0.1:" + port;
+    }
+
+    // Зарегистрировать пользователя и вернуть его токен
+    String register(String username, String password) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = post("/api/auth/register", null,
+                Map.of("username", username, "email", username + "@loadtest.local", "password", password));
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("Registration failed with status " + response.statusCode());
+        }
+        JsonNode body = objectMapper.readTree(response.body());
+        return body.get("token").asText();
+    }
+
+    int login(String username, String password) throws IOException, InterruptedException {
+        return post("/api/auth/login", null, Map.of("username", username, "password", password)).statusCode();
+    }
+
+    int listTasks(String token) throws IOException, InterruptedException {
+        return get("/api/tasks", token).statusCode();
+    }
+
+    int completeTask(String token, long taskId) throws IOException, InterruptedException {
+        return post("/api/tasks/" + taskId + "/complete", token, null).statusCode();
+    }
+
+    int dashboard(String token) throws IOException, InterruptedException {
+        return get("/api/analytics", token).statusCode();
+    }
+
+    private HttpResponse<byte[]> get(String path, String token) throws IOException, InterruptedException {
+        return http.send(request(path, token).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpResponse<byte[]> post(String path, String token, Object body) throws IOException, InterruptedException {
+        HttpRequest.BodyPublisher publisher = body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body));
+        return http.send(request(path, token).header("Content-Type", "application/json").POST(publisher).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private HttpRequest.Builder request(String path, String token) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Accept", "application/json");
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.lifestrat.loadtest;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.LifeSphereRepository;
+import com.lifestrat.repository.TaskRepository;
+import com.lifestrat.repository.UserRepository;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Сквозной нагрузочный тест: поднимает приложение на встроенной H2, заполняет ее пользователями
+ * и задачами и подает смешанный HTTP-трафик через loopback с заданной интенсивностью.
+ * Модель открытая: запросы поступают по расписанию независимо от ответов, а задержка считается
+ * от запланированного момента, поэтому ожидание свободного потока тоже попадает в перцентили.
+ * По окончании печатает пропускную способность и p50/p95/p99 по операциям и завершается с кодом 1,
+ * если нарушен хотя бы один SLO или доля ошибок выше допустимой.
+ *
+ * Запуск: mvn -Ploadtest verify -Dloadtest.args="loadtest.rate=300 loadtest.concurrency=64"
+ */
+public class LoadTestRunner {
+
+    private static final String PASSWORD = "loadtest-password";
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    private record VirtualUser(String username, String token, long[] taskIds) {
+    }
+
+    private final LoadTestSettings settings;
+    private final LoadTestClient client;
+    private final Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+    private final Endpoint[] weightedEndpoints;
+    private List<VirtualUser> users;
+    // Ответы, завершившиеся внутри измеряемого интервала: при перегрузке это пропускная способность сервера
+    private final LongAdder windowCompletions = new LongAdder();
+    private volatile long windowStart;
+    private volatile long windowEnd;
+
+    private LoadTestRunner(LoadTestSettings settings, int port) {
+        this.settings = settings;
+        this.client = new LoadTestClient(port);
+        for (Endpoint endpoint : Endpoint.values()) {
+            recorders.put(endpoint, new LatencyRecorder());
+        }
+        // Смесь разворачивается в массив, из которого операция выбирается равновероятно
+        List<Endpoint> weighted = new ArrayList<>();
+        settings.mix().forEach((endpoint, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(endpoint);
+            }
+        });
+        this.weightedEndpoints = weighted.toArray(Endpoint[]::new);
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.load(args);
+        // Свойства передаются аргументами командной строки: в отличие от properties() они важнее application.properties
+        String[] appArgs = settings.appProperties().entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(LifestratApplication.class)
+                .properties("server.port=0")
+                .run(appArgs);
+        boolean passed;
+        try {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadTestRunner runner = new LoadTestRunner(settings, port);
+            runner.seed(context);
+            runner.drive();
+            passed = runner.report();
+        } finally {
+            SpringApplication.exit(context);
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Регистрация идет через HTTP, а задачи пишутся напрямую в репозиторий пачками
+    private void seed(ConfigurableApplicationContext context) throws Exception {
+        long start = System.nanoTime();
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        LifeSphereRepository lifeSphereRepository = context.getBean(LifeSphereRepository.class);
+        TaskRepository taskRepository = context.getBean(TaskRepository.class);
+
+        ExecutorService pool = Executors.newFixedThreadPool(settings.concurrency());
+        List<Future<VirtualUser>> seeded = new ArrayList<>();
+        for (int i = 0; i < settings.users(); i++) {
+            String username = "loadtest" + i;
+            Random random = new Random(i);
+            seeded.add(pool.submit(() -> {
+                String token = client.register(username, PASSWORD);
+                long[] taskIds = ShardContext.callAsUsername(username, () -> {
+                    User user = userRepository.findByUsername(username).orElseThrow();
+                    List<LifeSphere> spheres = lifeSphereRepository.findAllByUserId(user.getId());
+                    return insertTasks(taskRepository, user, spheres, random);
+                });
+                return new VirtualUser(username, token, taskIds);
+            }));
+        }
+        users = new ArrayList<>();
+        try {
+            for (Future<VirtualUser> user : seeded) {
+                users.add(user.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.printf("Seeded %d users with %d tasks each in %d ms%n", settings.users(), settings.tasksPerUser(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private long[] insertTasks(TaskRepository taskRepository, User user, List<LifeSphere> spheres, Random random) {
+        long[] taskIds = new long[settings.tasksPerUser()];
+        int inserted = 0;
+        while (inserted < taskIds.length) {
+            List<Task> batch = new ArrayList<>();
+            for (int i = 0; i < Math.min(SEED_BATCH_SIZE, taskIds.length - inserted); i++) {
+                Task task = new Task();
+                task.setTitle("Load test task " + (inserted + i));
+                task.setDeadline(LocalDate.now().plusDays(random.nextInt(61) - 30));
+                task.setPriority(Priority.values()[random.nextInt(Priority.values().length)]);
+                task.setEstimatedTimeMinutes(15 + random.nextInt(120));
+                task.setEnergyCost(EnergyCost.values()[random.nextInt(EnergyCost.values().length)]);
+                task.setType(TaskType.ACTION);
+                task.setCompleted(random.nextInt(3) == 0);
+                task.setLifeSphere(spheres.get(random.nextInt(spheres.size())));
+                task.setUser(user);
+                batch.add(task);
+            }
+            for (Task task : taskRepository.saveAll(batch)) {
+                taskIds[inserted++] = task.getId();
+            }
+        }
+        return taskIds;
+    }
+
+    // Подать трафик: прогрев без замеров, затем измеряемый интервал
+    private void drive() throws InterruptedException {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(settings.concurrency(), settings.concurrency(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate());
+        long start = System.nanoTime();
+        long measureFrom = start + settings.warmup().toNanos();
+        long end = measureFrom + settings.duration().toNanos();
+        windowStart = measureFrom;
+        windowEnd = end;
+        System.out.printf("Driving %.0f req/s with %d workers: %d s warm-up, %d s measured%n", settings.rate(),
+                settings.concurrency(), settings.warmup().toSeconds(), settings.duration().toSeconds());
+
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * periodNanos;
+            if (scheduled >= end) {
+                break;
+            }
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = weightedEndpoints[ThreadLocalRandom.current().nextInt(weightedEndpoints.length)];
+            boolean measured = scheduled >= measureFrom;
+            workers.execute(() -> execute(endpoint, scheduled, measured));
+        }
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.MINUTES);
+    }
+
+    private void execute(Endpoint endpoint, long scheduledNanos, boolean measured) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        VirtualUser user = users.get(random.nextInt(users.size()));
+        boolean success;
+        try {
+            int status = switch (endpoint) {
+                case LOGIN -> client.login(user.username(), PASSWORD);
+                case LIST_TASKS -> client.listTasks(user.token());
+                case COMPLETE_TASK -> client.completeTask(user.token(), user.taskIds()[random.nextInt(user.taskIds().length)]);
+                case DASHBOARD -> client.dashboard(user.token());
+            };
+            success = status >= 200 && status < 300;
+        } catch (Exception e) {
+            success = false;
+        }
+        long completed = System.nanoTime();
+        if (measured) {
+            recorders.get(endpoint).record(completed - scheduledNanos, success);
+        }
+        if (success && completed >= windowStart && completed < windowEnd) {
+            windowCompletions.increment();
+        }
+    }
+
+    // Напечатать сводку и проверить SLO; false, если хотя бы одна проверка не пройдена
+    private boolean report() {
+        double seconds = settings.duration().toMillis() / 1000.0;
+        List<String> violations = new ArrayList<>();
+        long totalRequests = 0;
+        long totalErrors = 0;
+
+        System.out.printf("%n%-14s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        for (Endpoint endpoint : settings.mix().keySet()) {
+            LatencyRecorder.Snapshot snapshot = recorders.get(endpoint).snapshot();
+            totalRequests += snapshot.count();
+            totalErrors += snapshot.errors();
+            System.out.printf("%-14s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", endpoint.key, snapshot.count(),
+                    snapshot.errors(), snapshot.count() / seconds, snapshot.percentileMs(50),
+                    snapshot.percentileMs(95), snapshot.percentileMs(99), snapshot.maxMs());
+
+            LoadTestSettings.Slo slo = settings.slos().get(endpoint);
+            check(violations, endpoint, "p50", snapshot.percentileMs(50), slo.p50Ms());
+            check(violations, endpoint, "p95", snapshot.percentileMs(95), slo.p95Ms());
+            check(violations, endpoint, "p99", snapshot.percentileMs(99), slo.p99Ms());
+        }
+
+        double errorRate = totalRequests == 0 ? 0 : (double) totalErrors / totalRequests;
+        System.out.printf("%-14s %9d %7d %9.1f   (offered %.1f req/s, completed %.1f req/s)%n%n",
+                "total", totalRequests, totalErrors, totalRequests / seconds, settings.rate(),
+                windowCompletions.sum() / seconds);
+        if (errorRate > settings.maxErrorRate()) {
+            violations.add(String.format("error rate %.2f%% exceeds %.2f%%", errorRate * 100, settings.maxErrorRate() * 100));
+        }
+
+        if (violations.isEmpty()) {
+            System.out.println("All SLOs met");
+            return true;
+        }
+        violations.forEach(violation -> System.out.println("SLO violated: " + violation));
+        return false;
+    }
+
+    private static void check(List<String> violations, Endpoint endpoint, String percentile, double actualMs, Long limitMs) {
+        if (limitMs != null && actualMs > limitMs) {
+            violations.add(String.format("%s %s %.1f ms > %d ms", endpoint.key, percentile, actualMs, limitMs));
+        }
+    }
+}
\ No newline at end of file
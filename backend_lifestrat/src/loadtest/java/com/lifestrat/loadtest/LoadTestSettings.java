@@ -0,0 +1,94 @@
+package com.lifestrat.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Настройки нагрузочного теста: loadtest.properties из classpath, поверх них системные свойства
+ * и аргументы программы вида key=value. Свойства с префиксом app. передаются приложению.
+ */
+record LoadTestSettings(
+        int users,
+        int tasksPerUser,
+        double rate,
+        int concurrency,
+        Duration warmup,
+        Duration duration,
+        Map<Endpoint, Integer> mix,
+        double maxErrorRate,
+        Map<Endpoint, Slo> slos,
+        Map<String, Object> appProperties
+) {
+
+    private static final String APP_PREFIX = "app.";
+
+    // Пороги задержки в миллисекундах; null — порог не задан
+    record Slo(Long p50Ms, Long p95Ms, Long p99Ms) {
+    }
+
+    static LoadTestSettings load(String[] args) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream defaults = LoadTestSettings.class.getResourceAsStream("/loadtest.properties")) {
+            if (defaults != null) {
+                properties.load(defaults);
+            }
+        }
+        System.getProperties().forEach((key, value) -> {
+            if (key.toString().startsWith("loadtest.") || key.toString().startsWith(APP_PREFIX)) {
+                properties.put(key, value);
+            }
+        });
+        // Maven передает все переопределения одним аргументом, поэтому аргументы дополнительно делятся по пробелам
+        for (String arg : args) {
+            for (String pair : arg.trim().split("\\s+")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    properties.setProperty(pair.substring(0, separator), pair.substring(separator + 1));
+                }
+            }
+        }
+
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (String entry : properties.getProperty("loadtest.mix").split(",")) {
+            String[] parts = entry.trim().split(":");
+            mix.put(Endpoint.ofKey(parts[0]), Integer.parseInt(parts[1]));
+        }
+
+        Map<Endpoint, Slo> slos = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            String prefix = "loadtest.slo." + endpoint.key + ".";
+            slos.put(endpoint, new Slo(millis(properties, prefix + "p50-ms"),
+                    millis(properties, prefix + "p95-ms"),
+                    millis(properties, prefix + "p99-ms")));
+        }
+
+        Map<String, Object> appProperties = new HashMap<>();
+        properties.forEach((key, value) -> {
+            if (key.toString().startsWith(APP_PREFIX)) {
+                appProperties.put(key.toString().substring(APP_PREFIX.length()), value);
+            }
+        });
+
+        return new LoadTestSettings(
+                Integer.parseInt(properties.getProperty("loadtest.users")),
+                Integer.parseInt(properties.getProperty("loadtest.tasks-per-user")),
+                Double.parseDouble(properties.getProperty("loadtest.rate")),
+                Integer.parseInt(properties.getProperty("loadtest.concurrency")),
+                Duration.ofSeconds(Long.parseLong(properties.getProperty("loadtest.warmup-seconds"))),
+                Duration.ofSeconds(Long.parseLong(properties.getProperty("loadtest.duration-seconds"))),
+                mix,
+                Double.parseDouble(properties.getProperty("loadtest.max-error-rate")),
+                slos,
+                appProperties);
+    }
+
+    private static Long millis(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        return value == null || value.isBlank() ? null : Long.valueOf(value.trim());
+    }
+}
\ No newline at end of file
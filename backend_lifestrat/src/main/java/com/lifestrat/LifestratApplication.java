@@ -1,4 +1,14 @@
 package com.lifestrat;
 
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.security.servlet.UserDetailsServiceAutoConfiguration;
+
+// Пользователи аутентифицируются по JWT (SecurityConfig), генерируемый пользователь Spring Boot не нужен
+@SpringBootApplication(exclude = UserDetailsServiceAutoConfiguration.class)
 public class LifestratApplication {
-}
+
+    public static void main(String[] args) {
+        SpringApplication.run(LifestratApplication.class, args);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.lifestrat.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вывод в консоль пачками: события копятся в буфере и пишутся одним системным вызовом,
+ * когда буфер заполнен, раз в flushPeriodMs и сразу после WARN/ERROR.
+ * Рассчитан на работу за AsyncAppender: в logback-spring.xml его вызывают два фоновых потока,
+ * ASYNC и ASYNC_ALERTS, и их записи в буфер упорядочивает блокировка streamWriteLock.
+ * WARN/ERROR приходят по своей очереди и сбрасываются сразу, поэтому могут оказаться в выводе
+ * раньше событий INFO, которые были залогированы до них, но еще ждут в очереди ASYNC.
+ */
+public class BatchingConsoleAppender extends OutputStreamAppender<ILoggingEvent> {
+
+    private int bufferSize = 64 * 1024;
+    private long flushPeriodMs = 1000;
+    private ScheduledFuture<?> flushTask;
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setFlushPeriodMs(long flushPeriodMs) {
+        this.flushPeriodMs = flushPeriodMs;
+    }
+
+    @Override
+    public void start() {
+        setOutputStream(new BufferedOutputStream(new ConsoleStream(System.out), bufferSize));
+        setImmediateFlush(false);
+        super.start();
+        flushTask = getContext().getScheduledExecutorService()
+                .scheduleAtFixedRate(this::flush, flushPeriodMs, flushPeriodMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+        super.stop();
+    }
+
+    @Override
+    protected void subAppend(ILoggingEvent event) {
+        super.subAppend(event);
+        if (event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        streamWriteLock.lock();
+        try {
+            if (getOutputStream() != null) {
+                getOutputStream().flush();
+            }
+        } catch (IOException e) {
+            addError("Failed to flush console log buffer", e);
+        } finally {
+            streamWriteLock.unlock();
+        }
+    }
+
+    // Закрытие аппендера не должно закрывать стандартный вывод
+    private static final class ConsoleStream extends OutputStream {
+
+        private final PrintStream console;
+
+        ConsoleStream(PrintStream console) {
+            this.console = console;
+        }
+
+        @Override
+        public void write(int b) {
+            console.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            console.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            console.flush();
+        }
+
+        @Override
+        public void close() {
+            console.flush();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.lifestrat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.EnumFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Компактный двоичный формат CBOR рядом с JSON: клиент выбирает его заголовком Accept: application/cbor
+ * (и Content-Type для тел запросов). Маппер строится из настроек Spring Boot, но перечисления
+ * пишутся порядковым номером вместо имени, поэтому новые значения enum добавляются только в конец.
+ * Номера читаются обратно, в том числе в ключах словарей, так что маппер понимает то, что сам записал.
+ * Ссылки на строки (тег 256) заменяют повторные имена полей и значения индексом уже переданной строки.
+ */
+@Configuration
+public class BinaryFormatConfig {
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+            Jackson2ObjectMapperBuilder builder,
+            @Value("${lifestrat.cbor.string-references:true}") boolean stringReferences) {
+        CBORFactory factory = CBORFactory.builder()
+                .configure(CBORGenerator.Feature.STRINGREF, stringReferences)
+                .build();
+        ObjectMapper cborMapper = builder.factory(factory)
+                .featuresToEnable(SerializationFeature.WRITE_ENUMS_USING_INDEX,
+                        SerializationFeature.WRITE_ENUM_KEYS_USING_INDEX)
+                .build();
+        // Значения enum по номеру Jackson читает и так, а ключи словарей — только с этой настройкой
+        cborMapper.configure(EnumFeature.READ_ENUM_KEYS_USING_INDEX, true);
+        return new MappingJackson2CborHttpMessageConverter(cborMapper);
+    }
+}
\ No newline at end of file
@@ -1,4 +1,66 @@
 package com.lifestrat.config;
 
-public class JwtAuthenticationFilter {
-}
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.UserService;
+import io.jsonwebtoken.JwtException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Аутентификация запросов по JWT из заголовка Authorization.
+ * Подпись и срок действия проверяются по самому токену: имя пользователя из токена
+ * становится Principal, а контроллеры сами находят по нему пользователя (и шард).
+ * Имя еще проверяется на существование (UserService.isRegistered, с коротким кешем положительных ответов).
+ * Токен удаленного или неизвестного пользователя иначе дошел бы до контроллера и вместо 401 получил бы
+ * ошибку поиска пользователя.
+ * Запрос без токена или с недействительным токеном проходит дальше неаутентифицированным.
+ */
+@Slf4j
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final JwtService jwtService;
+    private final UserService userService;
+
+    public JwtAuthenticationFilter(JwtService jwtService, UserService userService) {
+        this.jwtService = jwtService;
+        this.userService = userService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER_PREFIX)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            authenticate(header.substring(BEARER_PREFIX.length()), request);
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private void authenticate(String token, HttpServletRequest request) {
+        try {
+            // Разбор токена проверяет и подпись, и срок действия
+            String username = jwtService.extractUsername(token);
+            if (!userService.isRegistered(username)) {
+                log.debug("Rejected JWT token for request {}. Reason: user is not registered", request.getRequestURI());
+                return;
+            }
+            SecurityContextHolder.getContext().setAuthentication(
+                    UsernamePasswordAuthenticationToken.authenticated(username, null, List.of()));
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("Rejected JWT token for request {}. Reason: {}", request.getRequestURI(), e.getMessage());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+package com.lifestrat.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.dto.ErrorResponse;
+import com.lifestrat.service.QuotaCategory;
+import com.lifestrat.service.RequestQuotaService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * Проверка квот до обработки запроса: после JWT-фильтра, чтобы квоты аутентифицированных запросов
+ * считались по пользователю. Вход и регистрация считаются по IP клиента; запросы без токена
+ * к остальным адресам не проверяются — их и так отклонит Spring Security.
+ * При пустой корзине отвечает 429 с заголовком Retry-After.
+ */
+public class RequestQuotaFilter extends OncePerRequestFilter {
+
+    private final RequestQuotaService quotaService;
+    private final ObjectMapper objectMapper;
+
+    public RequestQuotaFilter(RequestQuotaService quotaService, ObjectMapper objectMapper) {
+        this.quotaService = quotaService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !quotaService.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QuotaCategory category = categoryOf(request.getRequestURI());
+        String subject;
+        if (category == QuotaCategory.AUTH) {
+            subject = request.getRemoteAddr();
+        } else {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            if (authentication == null || !authentication.isAuthenticated()) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            subject = authentication.getName();
+        }
+
+        long waitMs = quotaService.tryAcquire(category, subject);
+        if (waitMs > 0) {
+            reject(response, waitMs);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private static QuotaCategory categoryOf(String uri) {
+        if (uri.startsWith("/api/auth/")) {
+            return QuotaCategory.AUTH;
+        }
+        if (uri.startsWith("/api/analytics") || uri.startsWith("/api/users/me/export")) {
+            return QuotaCategory.ANALYTICS;
+        }
+        return QuotaCategory.CRUD;
+    }
+
+    private void reject(HttpServletResponse response, long waitMs) throws IOException {
+        HttpStatus status = HttpStatus.TOO_MANY_REQUESTS;
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((waitMs + 999) / 1000));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), new ErrorResponse(status.value(), status.getReasonPhrase(),
+                "Request quota exceeded, retry in " + waitMs + " ms", LocalDateTime.now()));
+    }
+}
\ No newline at end of file
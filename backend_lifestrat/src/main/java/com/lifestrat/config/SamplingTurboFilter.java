@@ -0,0 +1,52 @@
+package com.lifestrat.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выборка частых INFO-событий по категориям (имени логгера): из категории с частотой N
+ * записывается в среднем одно событие из N. Решение принимается до создания события, поэтому
+ * отброшенное событие ничего не выделяет; остальные уровни и категории не затрагиваются.
+ * Категории задаются в logback-spring.xml элементами {@code <sample>logger:N</sample>}.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+
+    // Заполняется при конфигурации до start() и дальше только читается
+    private final Map<String, Integer> rates = new HashMap<>();
+
+    public void addSample(String sample) {
+        int separator = sample.lastIndexOf(':');
+        if (separator <= 0) {
+            addError("Sample must be given as <logger>:<rate>, got: " + sample);
+            return;
+        }
+        try {
+            int rate = Integer.parseInt(sample.substring(separator + 1).trim());
+            if (rate > 1) {
+                rates.put(sample.substring(0, separator).trim(), rate);
+            }
+        } catch (NumberFormatException e) {
+            addError("Invalid sample rate in: " + sample);
+        }
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // Вызывается на каждую проверку уровня во всем приложении, поэтому сначала самые дешевые условия
+        if (level != Level.INFO || !isStarted()) {
+            return FilterReply.NEUTRAL;
+        }
+        Integer rate = rates.get(logger.getName());
+        if (rate == null || ThreadLocalRandom.current().nextInt(rate) == 0) {
+            return FilterReply.NEUTRAL;
+        }
+        return FilterReply.DENY;
+    }
+}
\ No newline at end of file
@@ -1,4 +1,49 @@
 package com.lifestrat.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.RequestQuotaService;
+import com.lifestrat.service.UserService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+
+/**
+ * Stateless-аутентификация по JWT: без сессий, CSRF и форм входа.
+ * Открыты только вход, регистрация и проверка состояния; остальное требует токена,
+ * а без него отвечает 401. После аутентификации проверяются квоты запросов (RequestQuotaFilter).
+ */
+@Configuration
+@EnableWebSecurity
 public class SecurityConfig {
-}
+
+    @Bean
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, JwtService jwtService,
+                                                   RequestQuotaService quotaService,
+                                                   UserService userService,
+                                                   ObjectMapper objectMapper) throws Exception {
+        return http
+                .csrf(AbstractHttpConfigurer::disable)
+                .httpBasic(AbstractHttpConfigurer::disable)
+                .formLogin(AbstractHttpConfigurer::disable)
+                .logout(AbstractHttpConfigurer::disable)
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .authorizeHttpRequests(requests -> requests
+                        .requestMatchers("/api/auth/**", "/actuator/health").permitAll()
+                        .anyRequest().authenticated())
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
+                // Фильтры создаются здесь, а не бинами, чтобы Spring Boot не зарегистрировал их второй раз как фильтры сервлета
+                .addFilterBefore(new JwtAuthenticationFilter(jwtService, userService),
+                        UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(new RequestQuotaFilter(quotaService, objectMapper), JwtAuthenticationFilter.class)
+                .build();
+    }
+}
\ No newline at end of file
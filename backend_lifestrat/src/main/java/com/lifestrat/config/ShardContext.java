@@ -0,0 +1,72 @@
+package com.lifestrat.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Явный выбор шарда для текущего потока.
+ * Запросы пользователей маршрутизируются по пользователю из контекста безопасности;
+ * этот контекст нужен там, где его нет: регистрация и вход, фоновые задачи по шардам,
+ * пересчеты в собственных потоках сервисов. Без включенного шардирования ни на что не влияет.
+ */
+public final class ShardContext {
+
+    // Ровно одно из полей задано
+    record Route(Integer shard, Long userId, String username) {
+    }
+
+    private static final ThreadLocal<Route> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static <T> T callOnShard(int shard, Supplier<T> action) {
+        return callWith(new Route(shard, null, null), action);
+    }
+
+    public static void runOnShard(int shard, Runnable action) {
+        callOnShard(shard, asSupplier(action));
+    }
+
+    public static <T> T callAsUser(Long userId, Supplier<T> action) {
+        return callWith(new Route(null, userId, null), action);
+    }
+
+    public static void runAsUser(Long userId, Runnable action) {
+        callAsUser(userId, asSupplier(action));
+    }
+
+    public static <T> T callAsUsername(String username, Supplier<T> action) {
+        return callWith(new Route(null, null, username), action);
+    }
+
+    // Перенести маршрут текущего потока в задачу, выполняемую в другом потоке
+    public static <T> Supplier<T> propagate(Supplier<T> action) {
+        Route route = CURRENT.get();
+        return route == null ? action : () -> callWith(route, action);
+    }
+
+    static Route current() {
+        return CURRENT.get();
+    }
+
+    private static <T> T callWith(Route route, Supplier<T> action) {
+        Route previous = CURRENT.get();
+        CURRENT.set(route);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    private static Supplier<Void> asSupplier(Runnable action) {
+        return () -> {
+            action.run();
+            return null;
+        };
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.lifestrat.config;
+
+import com.lifestrat.service.UserDirectoryService;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource, выбирающий шард в момент получения соединения, то есть в начале транзакции.
+ * Шард берется из ShardContext, а если он не задан — по пользователю из контекста безопасности.
+ * Без пользователя (запуск, служебные запросы) используется шард 0.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private final UserDirectoryService directory;
+
+    public ShardRoutingDataSource(UserDirectoryService directory) {
+        this.directory = directory;
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ShardContext.Route route = ShardContext.current();
+        if (route != null) {
+            if (route.shard() != null) {
+                return route.shard();
+            }
+            return route.userId() != null
+                    ? directory.shardOf(route.userId())
+                    : directory.shardOfUsername(route.username());
+        }
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            return directory.shardOfUsername(authentication.getName());
+        }
+        return null;
+    }
+
+    // Пул соединений конкретного шарда, минуя маршрутизацию
+    public DataSource getShard(int shard) {
+        return getResolvedDataSources().get(shard);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource dataSource : getResolvedDataSources().values()) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
\ No newline at end of file
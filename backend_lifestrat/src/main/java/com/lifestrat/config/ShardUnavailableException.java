@@ -0,0 +1,9 @@
+package com.lifestrat.config;
+
+// Данные пользователя сейчас переносятся на другой шард; запрос нужно повторить позже
+public class ShardUnavailableException extends RuntimeException {
+
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+}
\ No newline at end of file
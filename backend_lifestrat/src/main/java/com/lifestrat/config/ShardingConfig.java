@@ -0,0 +1,127 @@
+package com.lifestrat.config;
+
+import com.lifestrat.service.UserDirectoryService;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Шардирование данных пользователей по нескольким базам (lifestrat.sharding.enabled=true).
+ * Все репозитории и JdbcTemplate работают через ShardRoutingDataSource; без шардирования
+ * остается обычный DataSource Spring Boot.
+ */
+@Configuration
+@EnableConfigurationProperties(ShardingProperties.class)
+@Slf4j
+public class ShardingConfig {
+
+    // Таблицы с автоинкрементом, у которых каждый шард выдает ID из своего диапазона
+    private static final List<String> IDENTITY_TABLES = List.of("life_spheres", "projects", "tasks", "task_dependencies",
+            "change_log");
+
+    // Ширина диапазона ID одного шарда; для 31 шарда ID остаются точными в JavaScript (< 2^53)
+    private static final int SHARD_ID_BITS = 48;
+
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+
+    // Шард, из диапазона которого выдан ID строки таблицы с автоинкрементом
+    public static int shardOfId(long id) {
+        return (int) (id >>> SHARD_ID_BITS);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "lifestrat.sharding", name = "enabled", havingValue = "true")
+    public ShardRoutingDataSource dataSource(ShardingProperties properties, UserDirectoryService directory) {
+        Map<Object, Object> shards = new HashMap<>();
+        for (int shard = 0; shard < properties.shardUrls().size(); shard++) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(properties.shardUrls().get(shard))
+                    .username(properties.username())
+                    .password(properties.password())
+                    .build();
+            dataSource.setPoolName("shard-" + shard);
+            shards.put(shard, dataSource);
+        }
+
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource(directory);
+        routingDataSource.setTargetDataSources(shards);
+        routingDataSource.setDefaultTargetDataSource(shards.get(0));
+        log.info("Sharding enabled with {} shards", shards.size());
+        return routingDataSource;
+    }
+
+    // Создать схему на пустых шардах; ddl-auto Hibernate затрагивает только шард по умолчанию.
+    // На шардах со схемой могут быть пользователи, созданные до включения шардирования, — они
+    // заносятся в справочник на свой текущий шард и при ребалансировке переезжают на шард по кольцу
+    @Bean
+    @ConditionalOnProperty(prefix = "lifestrat.sharding", name = "enabled", havingValue = "true")
+    public SmartInitializingSingleton shardSchemaInitializer(EntityManagerFactory entityManagerFactory,
+                                                             ShardRoutingDataSource dataSource,
+                                                             ShardingProperties properties,
+                                                             UserDirectoryService directory) {
+        return () -> {
+            for (int shard : properties.shardIndexes()) {
+                JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource.getShard(shard));
+                if (hasSchema(jdbcTemplate)) {
+                    backfillDirectory(jdbcTemplate, shard, directory);
+                    continue;
+                }
+                log.info("Creating schema on empty shard {}", shard);
+                ShardContext.runOnShard(shard, () -> entityManagerFactory.unwrap(SessionFactory.class)
+                        .getSchemaManager()
+                        .exportMappedObjects(true));
+                // ID сущностей уникальны между шардами, поэтому данные пользователя переносятся без перенумерации
+                if (shard > 0) {
+                    long firstId = ((long) shard << SHARD_ID_BITS) + 1;
+                    for (String table : IDENTITY_TABLES) {
+                        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id RESTART WITH " + firstId);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void backfillDirectory(JdbcTemplate jdbcTemplate, int shard, UserDirectoryService directory) {
+        long added = 0;
+        long lastId = 0;
+        List<UserDirectoryService.ExistingUser> page;
+        do {
+            page = jdbcTemplate.query("SELECT id, username, email FROM users WHERE id > ? ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new UserDirectoryService.ExistingUser(
+                            rs.getLong("id"), rs.getString("username"), rs.getString("email")),
+                    lastId, BACKFILL_PAGE_SIZE);
+            added += directory.backfill(shard, page);
+            if (!page.isEmpty()) {
+                lastId = page.get(page.size() - 1).userId();
+            }
+        } while (page.size() == BACKFILL_PAGE_SIZE);
+        if (added > 0) {
+            log.info("Registered {} existing users of shard {} in the user directory", added, shard);
+        }
+    }
+
+    private static boolean hasSchema(JdbcTemplate jdbcTemplate) {
+        try {
+            jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE 1 = 0", Long.class);
+            return true;
+        } catch (BadSqlGrammarException e) {
+            return false;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.lifestrat.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Настройки шардирования данных пользователей (lifestrat.sharding.*)
+@ConfigurationProperties(prefix = "lifestrat.sharding")
+public record ShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue List<String> shardUrls,
+        String directoryUrl,
+        @DefaultValue("sa") String username,
+        @DefaultValue("") String password,
+        @DefaultValue("128") int virtualNodes,
+        @DefaultValue("30000") long directoryCacheTtlMs,
+        @DefaultValue("false") boolean rebalanceOnStartup) {
+
+    // Номера шардов, по которым проходят фоновые задачи; без шардирования — единственная база
+    public List<Integer> shardIndexes() {
+        return enabled ? IntStream.range(0, shardUrls.size()).boxed().toList() : List.of(0);
+    }
+}
\ No newline at end of file
@@ -1,4 +1,55 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.dto.AnalyticsDto;
+import com.lifestrat.service.AnalyticsCoalescer;
+import com.lifestrat.service.AnalyticsPushService;
+import com.lifestrat.service.AnalyticsService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.security.Principal;
+
+@RestController
+@Lazy
+@RequestMapping("/api/analytics")
 public class AnalyticsController {
-}
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsPushService analyticsPushService;
+    private final AnalyticsCoalescer analyticsCoalescer;
+    private final UserService userService;
+
+    @Autowired
+    public AnalyticsController(AnalyticsService analyticsService, AnalyticsPushService analyticsPushService,
+                               AnalyticsCoalescer analyticsCoalescer, UserService userService) {
+        this.analyticsService = analyticsService;
+        this.analyticsPushService = analyticsPushService;
+        this.analyticsCoalescer = analyticsCoalescer;
+        this.userService = userService;
+    }
+
+    // Все разделы аналитики; в JSON или CBOR в зависимости от заголовка Accept.
+    // Одновременные запросы одного пользователя (несколько устройств, повторы SPA) считаются один раз
+    @GetMapping
+    public AnalyticsDto analytics(Principal principal) {
+        Long userId = currentUserId(principal);
+        return analyticsCoalescer.coalesce(userId, "analytics", () -> analyticsService.getAnalytics(userId));
+    }
+
+    // Подписка на изменения аналитики вместо периодического опроса
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(Principal principal) {
+        return analyticsPushService.subscribe(currentUserId(principal));
+    }
+
+    private Long currentUserId(Principal principal) {
+        return userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
\ No newline at end of file
@@ -1,4 +1,79 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.dto.AuthRequest;
+import com.lifestrat.dto.AuthResponse;
+import com.lifestrat.entity.User;
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.LifeSphereService;
+import com.lifestrat.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/auth")
+@Slf4j
 public class AuthController {
-}
+
+    private final UserService userService;
+    private final LifeSphereService lifeSphereService;
+    private final JwtService jwtService;
+
+    @Autowired
+    public AuthController(UserService userService, LifeSphereService lifeSphereService, JwtService jwtService) {
+        this.userService = userService;
+        this.lifeSphereService = lifeSphereService;
+        this.jwtService = jwtService;
+    }
+
+    // Регистрация: пользователь получает стандартный набор сфер жизни и сразу токен
+    @PostMapping("/register")
+    @ResponseStatus(HttpStatus.CREATED)
+    public AuthResponse register(@RequestBody AuthRequest request) {
+        if (isBlank(request.username()) || isBlank(request.email()) || isBlank(request.password())) {
+            throw new IllegalArgumentException("Username, email and password are required");
+        }
+        User user = userService.createUser(request.username(), request.email(), request.password());
+        // Запрос еще не аутентифицирован, поэтому шард нового пользователя задается явно
+        ShardContext.runAsUser(user.getId(), () -> lifeSphereService.createDefaultLifeSpheres(user));
+        return issueToken(user.getUsername());
+    }
+
+    // Вход по имени и паролю
+    @PostMapping("/login")
+    public AuthResponse login(@RequestBody AuthRequest request) {
+        if (isBlank(request.username()) || isBlank(request.password())) {
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        // При шардировании неизвестное имя нельзя передавать маршрутизации: отказ справочника стал бы ошибкой 400,
+        // по которой можно было бы отличить несуществующее имя от неверного пароля
+        Optional<User> found = userService.existsByUsername(request.username())
+                ? ShardContext.callAsUsername(request.username(), () -> userService.findByUsername(request.username()))
+                : Optional.empty();
+        boolean authenticated = found.isPresent()
+                ? userService.checkPassword(request.password(), found.get().getPassword())
+                : userService.checkPasswordOfUnknownUser(request.password());
+        if (!authenticated) {
+            log.warn("Failed login attempt for username: {}", request.username());
+            throw new BadCredentialsException("Invalid username or password");
+        }
+        return issueToken(found.get().getUsername());
+    }
+
+    private AuthResponse issueToken(String username) {
+        return new AuthResponse(jwtService.generateToken(username), username, jwtService.getExpirationTime());
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
\ No newline at end of file
@@ -1,4 +1,39 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.dto.LifeSphereDto;
+import com.lifestrat.dto.LifeSpherePatchRequest;
+import com.lifestrat.service.LifeSphereService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/life-spheres")
 public class LifeSphereController {
-}
+
+    private final LifeSphereService lifeSphereService;
+    private final UserService userService;
+
+    @Autowired
+    public LifeSphereController(LifeSphereService lifeSphereService, UserService userService) {
+        this.lifeSphereService = lifeSphereService;
+        this.userService = userService;
+    }
+
+    // Частичное обновление сферы жизни; при несовпадении версии возвращается 409
+    @PatchMapping("/{id}")
+    public LifeSphereDto patch(@PathVariable Long id, @RequestBody LifeSpherePatchRequest patch, Principal principal) {
+        return LifeSphereDto.from(lifeSphereService.patch(id, currentUserId(principal), patch));
+    }
+
+    private Long currentUserId(Principal principal) {
+        return userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
\ No newline at end of file
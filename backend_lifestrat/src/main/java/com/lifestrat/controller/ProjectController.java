@@ -1,4 +1,60 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.dto.ProjectDto;
+import com.lifestrat.dto.ProjectPatchRequest;
+import com.lifestrat.dto.ProjectScheduleDto;
+import com.lifestrat.service.ProjectScheduleService;
+import com.lifestrat.service.ProjectService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/projects")
 public class ProjectController {
-}
+
+    private final ProjectService projectService;
+    private final ProjectScheduleService projectScheduleService;
+    private final UserService userService;
+
+    @Autowired
+    public ProjectController(ProjectService projectService, ProjectScheduleService projectScheduleService,
+                             UserService userService) {
+        this.projectService = projectService;
+        this.projectScheduleService = projectScheduleService;
+        this.userService = userService;
+    }
+
+    // Все проекты пользователя; в JSON или CBOR в зависимости от заголовка Accept
+    @GetMapping
+    public List<ProjectDto> list(Principal principal) {
+        return projectService.findAllByUserId(currentUserId(principal)).stream()
+                .map(ProjectDto::from)
+                .toList();
+    }
+
+    // Частичное обновление проекта; при несовпадении версии возвращается 409
+    @PatchMapping("/{id}")
+    public ProjectDto patch(@PathVariable Long id, @RequestBody ProjectPatchRequest patch, Principal principal) {
+        return ProjectDto.from(projectService.patch(id, currentUserId(principal), patch));
+    }
+
+    // Критический путь по зависимостям шагов и прогноз даты завершения проекта
+    @GetMapping("/{id}/schedule")
+    public ProjectScheduleDto schedule(@PathVariable Long id, Principal principal) {
+        return projectScheduleService.getSchedule(currentUserId(principal), id);
+    }
+
+    private Long currentUserId(Principal principal) {
+        return userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
\ No newline at end of file
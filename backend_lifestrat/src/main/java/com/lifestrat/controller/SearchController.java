@@ -0,0 +1,42 @@
+package com.lifestrat.controller;
+
+import com.lifestrat.dto.SearchResultDto;
+import com.lifestrat.service.SearchIndexService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Locale;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+
+    private final SearchIndexService searchIndexService;
+    private final UserService userService;
+
+    @Autowired
+    public SearchController(SearchIndexService searchIndexService, UserService userService) {
+        this.searchIndexService = searchIndexService;
+        this.userService = userService;
+    }
+
+    // Поиск по проектам и задачам; kind=project|task ограничивает тип результатов
+    @GetMapping
+    public List<SearchResultDto> search(@RequestParam("q") String query,
+                                        @RequestParam(required = false) String kind,
+                                        @RequestParam(defaultValue = "20") int limit,
+                                        Principal principal) {
+        Long userId = userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        SearchIndexService.DocumentKind documentKind = kind != null
+                ? SearchIndexService.DocumentKind.valueOf(kind.toUpperCase(Locale.ROOT))
+                : null;
+        return searchIndexService.search(userId, query, documentKind, limit);
+    }
+}
\ No newline at end of file
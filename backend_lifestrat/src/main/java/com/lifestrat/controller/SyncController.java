@@ -0,0 +1,38 @@
+package com.lifestrat.controller;
+
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.service.ChangeLogService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/sync")
+public class SyncController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final ChangeLogService changeLogService;
+    private final UserService userService;
+
+    @Autowired
+    public SyncController(ChangeLogService changeLogService, UserService userService) {
+        this.changeLogService = changeLogService;
+        this.userService = userService;
+    }
+
+    // Изменения после курсора; cursor=0 — полная первичная синхронизация
+    @GetMapping
+    public SyncResponseDto sync(@RequestParam(defaultValue = "0") long cursor,
+                                @RequestParam(defaultValue = "500") int limit,
+                                Principal principal) {
+        Long userId = userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        return changeLogService.sync(userId, cursor, Math.min(Math.max(limit, 1), MAX_LIMIT));
+    }
+}
\ No newline at end of file
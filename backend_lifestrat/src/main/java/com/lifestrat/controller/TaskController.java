@@ -1,4 +1,92 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.dto.DailyPlanDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.dto.TaskPatchRequest;
+import com.lifestrat.service.DailyPlanService;
+import com.lifestrat.service.ProjectScheduleService;
+import com.lifestrat.service.TaskService;
+import com.lifestrat.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/tasks")
 public class TaskController {
-}
+
+    private final TaskService taskService;
+    private final DailyPlanService dailyPlanService;
+    private final ProjectScheduleService projectScheduleService;
+    private final UserService userService;
+
+    @Autowired
+    public TaskController(TaskService taskService, DailyPlanService dailyPlanService,
+                          ProjectScheduleService projectScheduleService, UserService userService) {
+        this.taskService = taskService;
+        this.dailyPlanService = dailyPlanService;
+        this.projectScheduleService = projectScheduleService;
+        this.userService = userService;
+    }
+
+    // Все задачи пользователя; в JSON или CBOR в зависимости от заголовка Accept
+    @GetMapping
+    public List<TaskDto> list(Principal principal) {
+        return taskService.findAllByUserId(currentUserId(principal)).stream()
+                .map(TaskDto::from)
+                .toList();
+    }
+
+    // Частичное обновление задачи; при несовпадении версии возвращается 409
+    @PatchMapping("/{id}")
+    public TaskDto patch(@PathVariable Long id, @RequestBody TaskPatchRequest patch, Principal principal) {
+        return TaskDto.from(taskService.patch(id, currentUserId(principal), patch));
+    }
+
+    // Отметить задачу как выполненную
+    @PostMapping("/{id}/complete")
+    public TaskDto complete(@PathVariable Long id, Principal principal) {
+        return TaskDto.from(taskService.markAsCompleted(id, currentUserId(principal)));
+    }
+
+    // Прекратить повторение ритуала; уже созданные экземпляры остаются обычными задачами
+    @DeleteMapping("/{id}/recurrence")
+    public TaskDto stopRecurrence(@PathVariable Long id, Principal principal) {
+        return TaskDto.from(taskService.stopRecurrence(id, currentUserId(principal)));
+    }
+
+    // Шаг проекта может начаться только после выполнения другого шага; цикл отклоняется с 400
+    @PostMapping("/{id}/dependencies/{dependsOnId}")
+    public void addDependency(@PathVariable Long id, @PathVariable Long dependsOnId, Principal principal) {
+        projectScheduleService.addDependency(currentUserId(principal), id, dependsOnId);
+    }
+
+    // Удалить зависимость шага от другого шага
+    @DeleteMapping("/{id}/dependencies/{dependsOnId}")
+    public void removeDependency(@PathVariable Long id, @PathVariable Long dependsOnId, Principal principal) {
+        projectScheduleService.removeDependency(currentUserId(principal), id, dependsOnId);
+    }
+
+    // План на день под бюджет времени (в минутах) и энергии
+    @GetMapping("/plan")
+    public DailyPlanDto plan(@RequestParam(defaultValue = "480") int minutes,
+                             @RequestParam(defaultValue = "10") int energy,
+                             Principal principal) {
+        return dailyPlanService.buildPlan(currentUserId(principal), minutes, energy);
+    }
+
+    private Long currentUserId(Principal principal) {
+        return userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+}
\ No newline at end of file
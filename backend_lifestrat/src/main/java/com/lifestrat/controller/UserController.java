@@ -1,4 +1,65 @@
 package com.lifestrat.controller;
 
+import com.lifestrat.service.ExportService;
+import com.lifestrat.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.security.Principal;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/users")
+@Slf4j
 public class UserController {
-}
+
+    private final UserService userService;
+    private final ObjectProvider<ExportService> exportService; // Сервис выгрузки создается при первом запросе
+
+    @Autowired
+    public UserController(UserService userService, ObjectProvider<ExportService> exportService) {
+        this.userService = userService;
+        this.exportService = exportService;
+    }
+
+    // Потоковая выгрузка всех данных текущего пользователя (CSV или NDJSON, опционально gzip)
+    @GetMapping("/me/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format,
+                                                        @RequestParam(defaultValue = "false") boolean gzip,
+                                                        Principal principal) {
+        Long userId = userService.findIdByUsername(principal.getName())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        ExportService.Format exportFormat = ExportService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        ExportService exporter = exportService.getObject();
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                // syncFlush, чтобы промежуточные flush доходили до клиента
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 8192, true);
+                exporter.export(userId, exportFormat, gzipOut);
+                gzipOut.finish();
+            } else {
+                exporter.export(userId, exportFormat, out);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"lifestrat-export." + exportFormat.getExtension() + "\"");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
\ No newline at end of file
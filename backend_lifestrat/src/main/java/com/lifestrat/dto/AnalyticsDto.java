@@ -0,0 +1,15 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.Priority;
+
+import java.util.List;
+import java.util.Map;
+
+public record AnalyticsDto(
+        Map<String, Double> lifeSphereBalance,
+        List<ProjectProgressDto> projectsProgress,
+        ProductivityStatsDto productivityStats,
+        TimeStatisticsDto timeStatistics,
+        Map<Priority, Long> priorityDistribution
+) {
+}
\ No newline at end of file
@@ -1,4 +1,9 @@
 package com.lifestrat.dto;
 
-public class AuthRequest {
-}
+// Вход и регистрация; email нужен только при регистрации
+public record AuthRequest(
+        String username,
+        String email,
+        String password
+) {
+}
\ No newline at end of file
@@ -1,4 +1,9 @@
 package com.lifestrat.dto;
 
-public class AuthResponse {
-}
+// Токен передается в заголовке Authorization: Bearer <token>
+public record AuthResponse(
+        String token,
+        String username,
+        long expiresInMs
+) {
+}
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.lifestrat.dto;
+
+import java.util.List;
+
+public record DailyPlanDto(
+        int timeBudgetMinutes,
+        int energyBudget,
+        int plannedMinutes,
+        int plannedEnergy,
+        double totalScore,
+        boolean optimal, // false, если план построен жадной эвристикой
+        List<PlannedTaskDto> tasks
+) {
+}
\ No newline at end of file
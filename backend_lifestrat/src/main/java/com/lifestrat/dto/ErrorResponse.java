@@ -1,4 +1,21 @@
 package com.lifestrat.dto;
 
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
 public class ErrorResponse {
-}
+
+    private int status;
+
+    private String error;
+
+    private String message;
+
+    private LocalDateTime timestamp;
+}
\ No newline at end of file
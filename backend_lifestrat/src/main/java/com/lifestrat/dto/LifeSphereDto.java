@@ -0,0 +1,23 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.LifeSphere;
+
+import java.time.LocalDateTime;
+
+public record LifeSphereDto(
+        Long id,
+        String name,
+        String color,
+        Long version,
+        LocalDateTime updatedAt
+) {
+    public static LifeSphereDto from(LifeSphere lifeSphere) {
+        return new LifeSphereDto(
+                lifeSphere.getId(),
+                lifeSphere.getName(),
+                lifeSphere.getColor(),
+                lifeSphere.getVersion(),
+                lifeSphere.getUpdatedAt()
+        );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.lifestrat.dto;
+
+// Частичное обновление сферы жизни: null-поля не меняются, version — ожидаемая версия записи
+public record LifeSpherePatchRequest(
+        Long version,
+        String name,
+        String color
+) {
+}
\ No newline at end of file
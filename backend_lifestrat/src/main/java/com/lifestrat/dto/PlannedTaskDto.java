@@ -0,0 +1,17 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.Priority;
+
+import java.time.LocalDate;
+
+public record PlannedTaskDto(
+        Long taskId,
+        String title,
+        Priority priority,
+        LocalDate deadline,
+        int estimatedTimeMinutes,
+        EnergyCost energyCost,
+        double score
+) {
+}
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.lifestrat.dto;
+
+import java.time.LocalDate;
+
+public record ProductivityStatsDto(
+        long currentStreak,
+        long maxStreak,
+        long totalCompletedTasks,
+        LocalDate analysisDate
+) {
+}
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public record ProjectDto(
+        Long id,
+        String title,
+        String description,
+        LocalDate deadline,
+        Priority priority,
+        boolean overdue,
+        Long lifeSphereId,
+        Long version,
+        LocalDateTime updatedAt
+) {
+    public static ProjectDto from(Project project) {
+        return new ProjectDto(
+                project.getId(),
+                project.getTitle(),
+                project.getDescription(),
+                project.getDeadline(),
+                project.getPriority(),
+                project.isOverdue(),
+                project.getLifeSphere() != null ? project.getLifeSphere().getId() : null,
+                project.getVersion(),
+                project.getUpdatedAt()
+        );
+    }
+}
\ No newline at end of file
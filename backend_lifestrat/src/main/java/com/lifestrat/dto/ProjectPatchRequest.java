@@ -0,0 +1,15 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.Priority;
+
+import java.time.LocalDate;
+
+// Частичное обновление проекта: null-поля не меняются, version — ожидаемая версия записи
+public record ProjectPatchRequest(
+        Long version,
+        String title,
+        String description,
+        LocalDate deadline,
+        Priority priority
+) {
+}
\ No newline at end of file
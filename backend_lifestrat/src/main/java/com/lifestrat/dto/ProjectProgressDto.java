@@ -1,11 +1,15 @@
 package com.lifestrat.dto;
 
+import java.time.LocalDate;
+
 public record ProjectProgressDto(
         Long projectId,
         String title,
         int totalSteps,
         int completedSteps,
-        double progressPercentage
+        double progressPercentage,
+        LocalDate projectedFinish, // Прогноз по критическому пути оставшихся шагов
+        boolean onTrack
 ) {
     public ProjectProgressDto {
         progressPercentage = totalSteps > 0 ? (double) completedSteps / totalSteps * 100 : 0.0;
@@ -0,0 +1,14 @@
+package com.lifestrat.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record ProjectScheduleDto(
+        Long projectId,
+        long remainingMinutes,
+        LocalDate projectedFinish,
+        LocalDate deadline,
+        boolean onTrack,
+        List<Long> criticalPath
+) {
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.lifestrat.dto;
+
+public record SearchResultDto(
+        String kind,
+        Long id,
+        String title,
+        double score
+) {
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.lifestrat.dto;
+
+import java.util.List;
+
+public record SyncResponseDto(
+        long cursor, // Передается в следующий запрос синхронизации
+        boolean hasMore,
+        List<LifeSphereDto> lifeSpheres,
+        List<ProjectDto> projects,
+        List<TaskDto> tasks,
+        List<SyncTombstoneDto> deleted
+) {
+}
\ No newline at end of file
@@ -0,0 +1,9 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.EntityKind;
+
+public record SyncTombstoneDto(
+        EntityKind kind,
+        Long id
+) {
+}
\ No newline at end of file
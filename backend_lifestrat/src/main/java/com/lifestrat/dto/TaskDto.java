@@ -0,0 +1,49 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.RecurrenceRule;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+public record TaskDto(
+        Long id,
+        String title,
+        String description,
+        boolean completed,
+        boolean overdue,
+        LocalDate deadline,
+        Priority priority,
+        Integer estimatedTimeMinutes,
+        EnergyCost energyCost,
+        TaskType type,
+        RecurrenceRule recurrence,
+        Long projectId,
+        Long lifeSphereId,
+        Long version,
+        LocalDateTime updatedAt
+) {
+    // ID связанных сущностей читаются из прокси без их загрузки
+    public static TaskDto from(Task task) {
+        return new TaskDto(
+                task.getId(),
+                task.getTitle(),
+                task.getDescription(),
+                task.isCompleted(),
+                task.isOverdue(),
+                task.getDeadline(),
+                task.getPriority(),
+                task.getEstimatedTimeMinutes(),
+                task.getEnergyCost(),
+                task.getType(),
+                task.getRecurrence(),
+                task.getProject() != null ? task.getProject().getId() : null,
+                task.getLifeSphere() != null ? task.getLifeSphere().getId() : null,
+                task.getVersion(),
+                task.getUpdatedAt()
+        );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package com.lifestrat.dto;
+
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.Priority;
+
+import java.time.LocalDate;
+
+// Частичное обновление задачи: null-поля не меняются, version — ожидаемая версия записи
+public record TaskPatchRequest(
+        Long version,
+        String title,
+        String description,
+        LocalDate deadline,
+        Priority priority,
+        Integer estimatedTimeMinutes,
+        EnergyCost energyCost,
+        Boolean completed
+) {
+}
\ No newline at end of file
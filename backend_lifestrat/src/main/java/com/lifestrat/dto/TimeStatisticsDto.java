@@ -0,0 +1,10 @@
+package com.lifestrat.dto;
+
+public record TimeStatisticsDto(
+        long totalTimePlanned,
+        long totalTimeCompleted,
+        double completionRate,
+        long tasksCount,
+        long completedTasksCount
+) {
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Завершенная задача, перенесенная из живой таблицы tasks в архив.
+ * Связи хранятся простыми идентификаторами: архив только дописывается и читается агрегатами.
+ */
+@Entity
+@Table(name = "archived_tasks",
+        indexes = {
+                @Index(name = "idx_archived_tasks_user_deadline", columnList = "user_id, deadline"),
+                @Index(name = "idx_archived_tasks_user_project", columnList = "user_id, project_id")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchivedTask {
+
+    @Id
+    private Long id; // Тот же ID, что был у задачи в tasks
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "life_sphere_id", nullable = false)
+    private Long lifeSphereId;
+
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(nullable = false, length = 100)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String description;
+
+    @Column(nullable = false)
+    private LocalDate deadline;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Priority priority;
+
+    @Column(name = "estimated_time_minutes", nullable = false)
+    private Integer estimatedTimeMinutes;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "energy_cost", nullable = false)
+    private EnergyCost energyCost;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TaskType type;
+
+    @Column(name = "completed_at", nullable = false)
+    private LocalDateTime completedAt; // Время последнего изменения задачи до архивации
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+}
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Запись журнала изменений для дельта-синхронизации. На каждую сущность хранится
+ * только последняя запись, а ее ID служит монотонным курсором синхронизации.
+ */
+@Entity
+@Table(name = "change_log",
+        uniqueConstraints = @UniqueConstraint(name = "uk_change_log_entity",
+                columnNames = {"entity_kind", "entity_id"}),
+        indexes = @Index(name = "idx_change_log_user_seq", columnList = "user_id, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeLogEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_kind", nullable = false, length = 20)
+    private EntityKind entityKind;
+
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Column(nullable = false)
+    private boolean deleted; // Tombstone: сущность удалена
+
+    @Column(name = "changed_at", nullable = false)
+    private LocalDateTime changedAt;
+}
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.lifestrat.entity;
+
+public enum EntityKind {
+    LIFE_SPHERE,
+    PROJECT,
+    TASK
+}
\ No newline at end of file
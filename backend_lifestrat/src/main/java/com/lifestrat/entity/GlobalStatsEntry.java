@@ -0,0 +1,42 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+
+/**
+ * Значение метрики глобальной статистики. Каждый обработанный диапазон пользователей
+ * записывает свои счетчики отдельно (partitionFrom = первый ID диапазона), итог запуска
+ * записывается с shard и partitionFrom = -1. Все метрики аддитивны и суммируются между диапазонами.
+ */
+@Entity
+@Table(name = "global_stats_entries",
+        indexes = @Index(name = "idx_global_stats_run_partition", columnList = "run_id, shard, partition_from"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GlobalStatsEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "run_id", nullable = false)
+    private Long runId;
+
+    @Column(nullable = false)
+    private Integer shard;
+
+    @Column(name = "partition_from", nullable = false)
+    private Long partitionFrom;
+
+    @Column(nullable = false, length = 40)
+    private String metric;
+
+    @Column(nullable = false, length = 100)
+    private String dimension; // Сфера или корзина гистограммы; пустая строка для скалярных метрик
+
+    @Column(name = "metric_value", nullable = false)
+    private Long value;
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Запуск глобального расчета статистики по всем пользователям.
+ * Незавершенный запуск (finishedAt = null) продолжается со следующего необработанного диапазона.
+ */
+@Entity
+@Table(name = "global_stats_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GlobalStatsRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "partition_size", nullable = false)
+    private Long partitionSize; // Ширина диапазона ID пользователей; продолжение запуска использует ее, а не текущую настройку
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
\ No newline at end of file
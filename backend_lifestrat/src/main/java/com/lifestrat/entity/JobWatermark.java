@@ -0,0 +1,23 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "job_watermarks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobWatermark {
+
+    @Id
+    @Column(name = "job_name", length = 50)
+    private String jobName;
+
+    // Последний день, полностью обработанный фоновой задачей
+    @Column(name = "last_processed_date", nullable = false)
+    private LocalDate lastProcessedDate;
+}
\ No newline at end of file
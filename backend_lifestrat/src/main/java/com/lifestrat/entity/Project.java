@@ -5,9 +5,15 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import jakarta.persistence.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "projects")
+@Table(name = "projects", indexes = {
+        @Index(name = "idx_projects_user_deadline", columnList = "user_id, deadline"),
+        @Index(name = "idx_projects_user_priority", columnList = "user_id, priority"),
+        @Index(name = "idx_projects_user_overdue", columnList = "user_id, overdue"),
+        @Index(name = "idx_projects_deadline", columnList = "deadline")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,6 +32,9 @@ public class Project {
     @Column(nullable = false)
     private LocalDate deadline;
 
+    @Column(nullable = false)
+    private boolean overdue = false; // Выставляется при записи и ночным обходом просроченных проектов
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Priority priority;
@@ -37,4 +46,17 @@ public class Project {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
+
+    @Version
+    @Column(nullable = false)
+    private Long version; // Версия для оптимистичной блокировки
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        updatedAt = LocalDateTime.now();
+    }
 }
\ No newline at end of file
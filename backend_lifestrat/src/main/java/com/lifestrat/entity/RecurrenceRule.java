@@ -0,0 +1,20 @@
+package com.lifestrat.entity;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+
+public enum RecurrenceRule {
+    DAILY,
+    WEEKDAYS,
+    WEEKENDS;
+
+    // Проверить, нужно ли создавать экземпляр ритуала в указанный день
+    public boolean appliesTo(LocalDate day) {
+        boolean weekend = day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY;
+        return switch (this) {
+            case DAILY -> true;
+            case WEEKDAYS -> !weekend;
+            case WEEKENDS -> weekend;
+        };
+    }
+}
\ No newline at end of file
@@ -5,9 +5,20 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import jakarta.persistence.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "tasks")
+@Table(name = "tasks",
+        uniqueConstraints = @UniqueConstraint(name = "uk_tasks_source_deadline",
+                columnNames = {"source_task_id", "deadline"}),
+        indexes = {
+                @Index(name = "idx_tasks_recurrence_user", columnList = "recurrence, user_id"),
+                @Index(name = "idx_tasks_user_deadline", columnList = "user_id, deadline"),
+                @Index(name = "idx_tasks_user_priority", columnList = "user_id, priority"),
+                @Index(name = "idx_tasks_user_overdue", columnList = "user_id, overdue"),
+                @Index(name = "idx_tasks_deadline", columnList = "deadline"),
+                @Index(name = "idx_tasks_completed_updated", columnList = "completed, updated_at")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -27,7 +38,10 @@ public class Task {
     private boolean completed = false;
 
     @Column(nullable = false)
-    private LocalDate deadline;
+    private LocalDate deadline; // У шаблона ритуала — дата начала повторений: экземпляры создаются с этого дня
+
+    @Column(nullable = false)
+    private boolean overdue = false; // Выставляется при записи и ночным обходом просроченных задач
 
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
@@ -44,6 +58,14 @@ public class Task {
     @Column(nullable = false)
     private TaskType type;
 
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private RecurrenceRule recurrence; // Задано только у шаблонов RITUAL; выполненный шаблон больше не повторяется
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "source_task_id")
+    private Task sourceTask; // Шаблон, из которого создан экземпляр ритуала
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "project_id")
     private Project project; // Может быть null для ACTION и RITUAL
@@ -55,4 +77,17 @@ public class Task {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
+
+    @Version
+    @Column(nullable = false)
+    private Long version; // Версия для оптимистичной блокировки
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onWrite() {
+        updatedAt = LocalDateTime.now();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package com.lifestrat.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import jakarta.persistence.*;
+
+/**
+ * Зависимость между шагами одного проекта: задача task может начаться только после dependsOn.
+ * Проект и пользователь хранятся в строке, чтобы граф проекта читался и удалялся без соединений.
+ */
+@Entity
+@Table(name = "task_dependencies",
+        uniqueConstraints = @UniqueConstraint(name = "uk_task_dependencies_edge",
+                columnNames = {"task_id", "depends_on_task_id"}),
+        indexes = {
+                @Index(name = "idx_task_dependencies_project", columnList = "project_id"),
+                @Index(name = "idx_task_dependencies_depends_on", columnList = "depends_on_task_id"),
+                @Index(name = "idx_task_dependencies_user", columnList = "user_id")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskDependency {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "task_id", nullable = false)
+    private Task task; // Зависимая задача
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "depends_on_task_id", nullable = false)
+    private Task dependsOn; // Задача, которая должна быть выполнена раньше
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "project_id", nullable = false)
+    private Project project;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+}
\ No newline at end of file
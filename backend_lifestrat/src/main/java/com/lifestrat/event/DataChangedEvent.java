@@ -0,0 +1,15 @@
+package com.lifestrat.event;
+
+import com.lifestrat.entity.EntityKind;
+
+/**
+ * Событие об изменении данных пользователя. Публикуется сервисами при записи;
+ * журнал изменений обрабатывает его до коммита, остальные слушатели — после.
+ */
+public record DataChangedEvent(
+        Long userId,
+        EntityKind kind,
+        Long entityId,
+        boolean deleted
+) {
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.lifestrat.repository;
+
+import com.lifestrat.entity.ArchivedTask;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface ArchivedTaskRepository extends JpaRepository<ArchivedTask, Long> {
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<ArchivedTask> streamAllByUserIdOrderById(Long userId);
+
+    // Строки [ID сферы, дата дедлайна, количество, суммарное время] по возрастанию даты
+    @Query("""
+            select a.lifeSphereId, a.deadline, count(a), sum(a.estimatedTimeMinutes) from ArchivedTask a
+            where a.userId = :userId
+            group by a.lifeSphereId, a.deadline
+            order by a.deadline
+            """)
+    List<Object[]> sumBySphereAndDay(@Param("userId") Long userId);
+
+    // Пары [приоритет, количество]
+    @Query("select a.priority, count(a) from ArchivedTask a where a.userId = :userId group by a.priority")
+    List<Object[]> countByPriority(@Param("userId") Long userId);
+
+    // Пары [ID проекта, количество архивных шагов]
+    @Query("""
+            select a.projectId, count(a) from ArchivedTask a
+            where a.userId = :userId and a.projectId is not null and a.type = com.lifestrat.entity.TaskType.STEP
+            group by a.projectId
+            """)
+    List<Object[]> countStepsByProject(@Param("userId") Long userId);
+}
\ No newline at end of file
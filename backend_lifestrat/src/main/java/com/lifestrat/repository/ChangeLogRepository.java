@@ -0,0 +1,28 @@
+package com.lifestrat.repository;
+
+import com.lifestrat.entity.ChangeLogEntry;
+import com.lifestrat.entity.EntityKind;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+
+    List<ChangeLogEntry> findAllByUserIdAndIdGreaterThanOrderById(Long userId, Long cursor, Limit limit);
+
+    Optional<ChangeLogEntry> findFirstByUserIdOrderByIdDesc(Long userId);
+
+    @Modifying
+    @Query("delete from ChangeLogEntry e where e.entityKind = :kind and e.entityId = :entityId")
+    int deleteByEntity(@Param("kind") EntityKind kind, @Param("entityId") Long entityId);
+
+    // Сериализует запись изменений одного пользователя до конца транзакции
+    @Query(value = "SELECT id FROM users WHERE id = :userId FOR UPDATE", nativeQuery = true)
+    Long lockUser(@Param("userId") Long userId);
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package com.lifestrat.repository;
+
+import com.lifestrat.entity.GlobalStatsRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface GlobalStatsRunRepository extends JpaRepository<GlobalStatsRun, Long> {
+
+    Optional<GlobalStatsRun> findFirstByFinishedAtIsNullOrderByIdDesc();
+}
\ No newline at end of file
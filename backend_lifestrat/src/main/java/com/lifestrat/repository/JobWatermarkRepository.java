@@ -0,0 +1,9 @@
+package com.lifestrat.repository;
+
+import com.lifestrat.entity.JobWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface JobWatermarkRepository extends JpaRepository<JobWatermark, String> {
+}
\ No newline at end of file
@@ -1,12 +1,24 @@
 package com.lifestrat.repository;
 
 import com.lifestrat.entity.LifeSphere;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface LifeSphereRepository extends JpaRepository<LifeSphere, Long> {
 
     List<LifeSphere> findAllByUserId(Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<LifeSphere> streamAllByUserIdOrderById(Long userId);
+
+    boolean existsByIdAndUserId(Long id, Long userId);
 }
\ No newline at end of file
@@ -1,12 +1,46 @@
 package com.lifestrat.repository;
 
+import com.lifestrat.entity.Priority;
 import com.lifestrat.entity.Project;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProjectRepository extends JpaRepository<Project, Long> {
 
     List<Project> findAllByUserId(Long userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Project> streamAllByUserIdOrderById(Long userId);
+
+    List<Project> findAllByUserIdAndDeadlineBeforeOrderByDeadline(Long userId, LocalDate date);
+
+    List<Project> findAllByUserIdAndDeadlineBetweenOrderByDeadline(Long userId, LocalDate from, LocalDate to);
+
+    List<Project> findAllByUserIdAndPriorityIn(Long userId, Collection<Priority> priorities);
+
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    List<Project> findAllByUserIdAndTitleContainingIgnoreCase(Long userId, String title);
+
+    @Query("select p.id, p.title, p.description from Project p where p.user.id = :userId")
+    List<Object[]> findSearchableByUserId(@Param("userId") Long userId);
+
+    long countByUserIdAndOverdueTrue(Long userId);
+
+    @Query("select min(p.deadline) from Project p where p.overdue = false")
+    Optional<LocalDate> findEarliestNotOverdueDeadline();
 }
\ No newline at end of file
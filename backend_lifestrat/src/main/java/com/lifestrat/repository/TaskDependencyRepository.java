@@ -0,0 +1,32 @@
+package com.lifestrat.repository;
+
+import com.lifestrat.entity.TaskDependency;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TaskDependencyRepository extends JpaRepository<TaskDependency, Long> {
+
+    // Ребра графа проекта: [ID предшествующей задачи, ID зависимой задачи]
+    @Query("select d.dependsOn.id, d.task.id from TaskDependency d where d.project.id = :projectId")
+    List<Object[]> findEdgesByProjectId(@Param("projectId") Long projectId);
+
+    boolean existsByTaskIdAndDependsOnId(Long taskId, Long dependsOnId);
+
+    @Modifying
+    @Query("delete from TaskDependency d where d.task.id = :taskId and d.dependsOn.id = :dependsOnId")
+    int deleteEdge(@Param("taskId") Long taskId, @Param("dependsOnId") Long dependsOnId);
+
+    @Modifying
+    @Query("delete from TaskDependency d where d.task.id = :taskId or d.dependsOn.id = :taskId")
+    int deleteAllByTask(@Param("taskId") Long taskId);
+
+    // Сериализует изменение графа зависимостей одного проекта до конца транзакции
+    @Query(value = "SELECT id FROM projects WHERE id = :projectId FOR UPDATE", nativeQuery = true)
+    Long lockProject(@Param("projectId") Long projectId);
+}
\ No newline at end of file
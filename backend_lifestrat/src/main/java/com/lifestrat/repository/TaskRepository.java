@@ -1,10 +1,21 @@
 package com.lifestrat.repository;
 
+import com.lifestrat.entity.Priority;
 import com.lifestrat.entity.Task;
 import com.lifestrat.entity.TaskType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface TaskRepository extends JpaRepository<Task, Long> {
@@ -16,4 +27,57 @@ public interface TaskRepository extends JpaRepository<Task, Long> {
     List<Task> findAllByProjectId(Long projectId);
 
     List<Task> findAllByLifeSphereId(Long lifeSphereId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Task> streamAllByUserIdOrderById(Long userId);
+
+    List<Task> findAllByUserIdAndCompletedFalseAndDeadlineBeforeOrderByDeadline(Long userId, LocalDate date);
+
+    List<Task> findAllByUserIdAndDeadlineBetweenOrderByDeadline(Long userId, LocalDate from, LocalDate to);
+
+    List<Task> findAllByUserIdAndPriorityIn(Long userId, Collection<Priority> priorities);
+
+    @Query("select t from Task t where t.user.id = :userId and t.completed = false and t.recurrence is null")
+    List<Task> findOpenByUserId(@Param("userId") Long userId);
+
+    boolean existsByIdAndUserId(Long id, Long userId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Task t set t.completed = true, t.overdue = false, t.version = t.version + 1, " +
+            "t.updatedAt = current_timestamp " +
+            "where t.id = :taskId and t.user.id = :userId")
+    int markCompleted(@Param("taskId") Long taskId, @Param("userId") Long userId);
+
+    @Query("select t.id, t.title, t.description from Task t where t.user.id = :userId")
+    List<Object[]> findSearchableByUserId(@Param("userId") Long userId);
+
+    long countByUserIdAndOverdueTrue(Long userId);
+
+    // Колонки для снимка аналитики: [ID, дедлайн, минуты, приоритет, тип, энергия, выполнена, ID сферы, версия]
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select t.id, t.deadline, t.estimatedTimeMinutes, t.priority, t.type, t.energyCost, t.completed, " +
+            "t.lifeSphere.id, t.version from Task t where t.user.id = :userId order by t.id")
+    List<Object[]> findColumnsByUserId(@Param("userId") Long userId);
+
+    // Шаги проекта для графа зависимостей: [ID, оценка времени в минутах, выполнен, версия]
+    @Query("select t.id, t.estimatedTimeMinutes, t.completed, t.version from Task t " +
+            "where t.project.id = :projectId and t.type = com.lifestrat.entity.TaskType.STEP")
+    List<Object[]> findStepDurationsByProjectId(@Param("projectId") Long projectId);
+
+    @Query("select min(t.deadline) from Task t " +
+            "where t.completed = false and t.overdue = false and t.recurrence is null")
+    Optional<LocalDate> findEarliestNotOverdueDeadline();
+
+    // Отвязать экземпляры ритуала от шаблона перед удалением шаблона (source_task_id — внешний ключ);
+    // экземпляры меняются, поэтому получают новую версию, как при записи через сервисы
+    @Modifying(flushAutomatically = true)
+    @Query("update Task t set t.sourceTask = null, t.version = t.version + 1, t.updatedAt = current_timestamp " +
+            "where t.sourceTask.id = :templateId")
+    int detachInstances(@Param("templateId") Long templateId);
+
+    @Query("select t.id from Task t where t.sourceTask.id = :templateId")
+    List<Long> findInstanceIds(@Param("templateId") Long templateId);
 }
\ No newline at end of file
@@ -2,7 +2,12 @@ package com.lifestrat.repository;
 
 import com.lifestrat.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
@@ -15,4 +20,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Boolean existsByUsername(String username);
 
     Boolean existsByEmail(String email);
+
+    @Query("select u.id from User u where u.username = :username")
+    Optional<Long> findIdByUsername(@Param("username") String username);
+
+    // При шардировании ID пользователя выдает глобальный справочник, а не автоинкремент шарда
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO users (id, username, email, password, created_at) "
+            + "VALUES (:id, :username, :email, :password, :createdAt)", nativeQuery = true)
+    void insertWithId(@Param("id") Long id,
+                      @Param("username") String username,
+                      @Param("email") String email,
+                      @Param("password") String password,
+                      @Param("createdAt") LocalDateTime createdAt);
 }
\ No newline at end of file
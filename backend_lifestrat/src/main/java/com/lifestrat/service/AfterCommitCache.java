@@ -0,0 +1,267 @@
+package com.lifestrat.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кеш построенных из БД структур, которые сервисы обновляют точечно после коммита своих транзакций.
+ * Значения вытесняются по LRU, когда их суммарный вес превышает бюджет. Для идущих сейчас загрузок
+ * учитываются изменения их ключа: значение, прочитанное во время изменения, не кешируется,
+ * иначе изменение, примененное до появления значения в кеше, было бы потеряно.
+ * Таблица меняется под блокировкой самого кеша, значение — под блокировкой этого значения.
+ * Запись хранит вес, с которым значение учтено в общем весе, поэтому удаление вычитает ровно учтенное,
+ * и общий вес не расходится с суммой весов при одновременных изменениях и вытеснении.
+ * Вложенно берется только блокировка значения под блокировкой кеша, но не наоборот.
+ */
+final class AfterCommitCache<K, V> {
+
+    // Загрузка значения из БД: число загружающих потоков и счетчик изменений ключа за время загрузки
+    private static final class PendingLoad {
+        int loaders;
+        long modifications;
+    }
+
+    // Значение, его текущий вес (под блокировкой значения) и вес, учтенный в общем (под блокировкой values)
+    private static final class Entry<V> {
+        final V value;
+        long weight;
+        long counted;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+
+    private final Map<K, Entry<V>> values = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, PendingLoad> pendingLoads = new HashMap<>(); // Идущие сейчас загрузки по ключу
+    private final long budget;
+    private final ToLongFunction<V> weigher;
+    private long weight; // Сумма учтенных весов записей; меняется под блокировкой values
+
+    AfterCommitCache(long budget, ToLongFunction<V> weigher) {
+        this.budget = budget;
+        this.weigher = weigher;
+    }
+
+    // Кеш не больше maxSize значений
+    static <K, V> AfterCommitCache<K, V> bySize(int maxSize) {
+        return new AfterCommitCache<>(maxSize, value -> 1);
+    }
+
+    // Выполнить action после коммита текущей транзакции, а вне транзакции — сразу.
+    // Версия сущности увеличивается при flush, поэтому поля, зависящие от нее, читаются внутри action
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    V get(K key) {
+        synchronized (values) {
+            return valueOf(values.get(key));
+        }
+    }
+
+    // Суммарный вес значений в кеше
+    long weight() {
+        synchronized (values) {
+            return weight;
+        }
+    }
+
+    // Значение из кеша или загруженное loader; загруженное кешируется, если ключ за время загрузки не менялся
+    V getOrLoad(K key, Function<K, V> loader) {
+        PendingLoad pending;
+        long seen;
+        synchronized (values) {
+            V value = valueOf(values.get(key));
+            if (value != null) {
+                return value;
+            }
+            pending = pendingLoads.computeIfAbsent(key, k -> new PendingLoad());
+            pending.loaders++;
+            seen = pending.modifications;
+        }
+
+        V loaded;
+        try {
+            loaded = loader.apply(key);
+        } finally {
+            synchronized (values) {
+                if (--pending.loaders == 0) {
+                    pendingLoads.remove(key);
+                }
+            }
+        }
+        synchronized (values) {
+            V value = valueOf(values.get(key));
+            if (value != null) {
+                return value;
+            }
+            if (seen == pending.modifications) {
+                add(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    // Положить значение, если ключа еще нет; возвращает уже лежащее значение или null
+    V putIfAbsent(K key, V value) {
+        synchronized (values) {
+            V existing = valueOf(values.get(key));
+            if (existing == null) {
+                add(key, value);
+            }
+            return existing;
+        }
+    }
+
+    // Заменить значение перечитанным из БД; идущие загрузки ключа его уже не перезапишут
+    void put(K key, V value) {
+        synchronized (values) {
+            discard(key);
+            add(key, value);
+            markModified(key);
+        }
+    }
+
+    // Применить изменение к значению в кеше
+    void update(K key, Consumer<V> action) {
+        Entry<V> entry;
+        synchronized (values) {
+            entry = values.get(key);
+            markModified(key);
+        }
+        // Значение еще не загружено — изменение попадет в него при загрузке из БД
+        if (entry == null) {
+            return;
+        }
+        boolean resized;
+        synchronized (entry.value) {
+            action.accept(entry.value);
+            long after = weigher.applyAsLong(entry.value);
+            resized = after != entry.weight;
+            entry.weight = after;
+        }
+        // Если запись успели убрать, из общего веса вычтено ровно учтенное в ней
+        if (resized) {
+            synchronized (values) {
+                if (values.get(key) == entry) {
+                    recount(entry);
+                    evictOverBudget(key);
+                }
+            }
+        }
+    }
+
+    // Убрать значение, если в кеше лежит именно оно, например после неудачной загрузки
+    void remove(K key, V value) {
+        synchronized (values) {
+            if (valueOf(values.get(key)) == value) {
+                discard(key);
+            }
+        }
+    }
+
+    // Сбросить значение ключа; при следующем обращении оно будет перечитано из БД
+    void invalidate(K key) {
+        synchronized (values) {
+            discard(key);
+            markModified(key);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (values) {
+            values.clear();
+            weight = 0;
+            pendingLoads.values().forEach(pending -> pending.modifications++);
+        }
+    }
+
+    // Значение уже изменено внутри транзакции; при ее откате оно сбрасывается и перечитывается из БД
+    void invalidateOnRollback(K key) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                synchronized (values) {
+                    if (status != STATUS_COMMITTED) {
+                        discard(key);
+                    }
+                    markModified(key);
+                }
+            }
+        });
+    }
+
+    // Вызывается под блокировкой values
+    private void add(K key, V value) {
+        Entry<V> entry = new Entry<>(value);
+        synchronized (value) {
+            entry.weight = weigher.applyAsLong(value);
+        }
+        values.put(key, entry);
+        recount(entry);
+        evictOverBudget(key);
+    }
+
+    // Вызывается под блокировкой values
+    private void discard(K key) {
+        Entry<V> removed = values.remove(key);
+        if (removed != null) {
+            weight -= removed.counted;
+        }
+    }
+
+    // Вытеснить давно не использованные значения, кроме только что добавленного или измененного
+    private void evictOverBudget(K keepKey) {
+        Iterator<Map.Entry<K, Entry<V>>> eldest = values.entrySet().iterator();
+        while (weight > budget && eldest.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = eldest.next();
+            if (!entry.getKey().equals(keepKey)) {
+                weight -= entry.getValue().counted;
+                eldest.remove();
+            }
+        }
+    }
+
+    private static <V> V valueOf(Entry<V> entry) {
+        return entry != null ? entry.value : null;
+    }
+
+    // Учесть в общем весе текущий вес записи; вызывается под блокировкой values
+    private void recount(Entry<V> entry) {
+        long current;
+        synchronized (entry.value) {
+            current = entry.weight;
+        }
+        weight += current - entry.counted;
+        entry.counted = current;
+    }
+
+    // Отметить изменение ключа для идущих сейчас его загрузок; вызывается под блокировкой values
+    private void markModified(K key) {
+        PendingLoad pending = pendingLoads.get(key);
+        if (pending != null) {
+            pending.modifications++;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.lifestrat.service;
+
+import com.lifestrat.event.DataChangedEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Склейка одновременных одинаковых запросов аналитики (single-flight).
+ * Первый вызов с ключом (пользователь, метод) выполняет расчет в своем потоке,
+ * остальные вызовы с тем же ключом, пришедшие до его окончания, ждут и получают тот же результат.
+ * Запись удаляется через remove(key, future), поэтому опоздавший поток не удалит чужой расчет.
+ * После коммита изменений данных пользователя текущие расчеты перестают принимать новых участников,
+ * чтобы запрос, пришедший после изменения, не получил результат, посчитанный до него.
+ */
+@Service
+@Slf4j
+public class AnalyticsCoalescer {
+
+    private record Key(Long userId, String method) {
+    }
+
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder computed = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+
+    @Autowired
+    public AnalyticsCoalescer(ObjectProvider<MeterRegistry> meterRegistry) {
+        meterRegistry.ifAvailable(this::registerMetrics);
+    }
+
+    // Выполнить расчет или присоединиться к уже идущему расчету с тем же ключом
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(Long userId, String method, Supplier<T> computation) {
+        Key key = new Key(userId, method);
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            deduplicated.increment();
+            log.debug("Joined in-flight analytics computation {} for user ID: {}", method, userId);
+            return (T) await(running);
+        }
+
+        computed.increment();
+        try {
+            T result = computation.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public long getComputedCount() {
+        return computed.sum();
+    }
+
+    public long getDeduplicatedCount() {
+        return deduplicated.sum();
+    }
+
+    // Новые запросы после изменения данных пользователя начинают собственный расчет
+    @TransactionalEventListener
+    public void onDataChanged(DataChangedEvent event) {
+        inFlight.keySet().removeIf(key -> key.userId().equals(event.userId()));
+    }
+
+    private static Object await(CompletableFuture<Object> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("lifestrat.analytics.calls", computed, LongAdder::sum)
+                .tag("result", "computed")
+                .description("Analytics calls that ran their own computation")
+                .register(registry);
+        FunctionCounter.builder("lifestrat.analytics.calls", deduplicated, LongAdder::sum)
+                .tag("result", "deduplicated")
+                .description("Analytics calls that shared an in-flight computation")
+                .register(registry);
+        Gauge.builder("lifestrat.analytics.in-flight", inFlight, Map::size)
+                .description("Analytics computations currently running")
+                .register(registry);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,235 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.event.DataChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Рассылка изменений аналитики подписчикам через Server-Sent Events.
+ * Изменения, пришедшие в течение окна склейки, пересчитываются один раз,
+ * а клиенту отправляются только разделы, значения которых изменились.
+ * Пересчеты идут в ограниченном пуле, так что тяжелый пользователь не задерживает остальных;
+ * для одного пользователя одновременно выполняется не больше одного пересчета.
+ * Периодический heartbeat не дает прокси закрыть простаивающее соединение.
+ */
+@Service
+@Lazy
+@Slf4j
+public class AnalyticsPushService {
+
+    private static final long EMITTER_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final String EVENT_NAME = "analytics";
+
+    // Состояние пересчета пользователя; отсутствие записи — пересчет не нужен
+    private enum PushState {
+        SCHEDULED,
+        RUNNING,
+        RUNNING_DIRTY // Во время пересчета пришли новые изменения — после него нужен еще один
+    }
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsCoalescer analyticsCoalescer;
+    private final long coalesceWindowMs;
+
+    private final Map<Long, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    private final Map<Long, PushState> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Map<String, Object>> lastSent = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ScheduledFuture<?> heartbeat;
+
+    @Autowired
+    public AnalyticsPushService(AnalyticsService analyticsService,
+                                AnalyticsCoalescer analyticsCoalescer,
+                                @Value("${lifestrat.analytics.push.coalesce-window-ms:300}") long coalesceWindowMs,
+                                @Value("${lifestrat.analytics.push.threads:4}") int threads,
+                                @Value("${lifestrat.analytics.push.heartbeat-interval-ms:15000}") long heartbeatIntervalMs) {
+        this.analyticsService = analyticsService;
+        this.analyticsCoalescer = analyticsCoalescer;
+        this.coalesceWindowMs = coalesceWindowMs;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "analytics-push-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = scheduler.scheduleAtFixedRate(this::sendHeartbeats,
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Подписать клиента на изменения аналитики пользователя
+    public SseEmitter subscribe(Long userId) {
+        log.debug("New analytics subscription for user ID: {}", userId);
+
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        // Добавление внутри compute: иначе список, только что удаленный unsubscribe, мог бы получить эмиттер
+        emitters.compute(userId, (id, list) -> {
+            List<SseEmitter> subscribers = list != null ? list : new CopyOnWriteArrayList<>();
+            subscribers.add(emitter);
+            return subscribers;
+        });
+        emitter.onCompletion(() -> unsubscribe(userId, emitter));
+        emitter.onTimeout(() -> unsubscribe(userId, emitter));
+        emitter.onError(error -> unsubscribe(userId, emitter));
+
+        // Новый подписчик получает полный снимок, а не дельту
+        scheduler.execute(() -> sendSnapshot(userId, emitter));
+        return emitter;
+    }
+
+    // Запланировать пересчет после коммита изменений; повторные события внутри окна склеиваются
+    @TransactionalEventListener
+    public void onDataChanged(DataChangedEvent event) {
+        Long userId = event.userId();
+        if (!emitters.containsKey(userId)) {
+            return;
+        }
+        pending.compute(userId, (id, state) -> {
+            if (state == null) {
+                schedulePush(id);
+                return PushState.SCHEDULED;
+            }
+            return state == PushState.RUNNING ? PushState.RUNNING_DIRTY : state;
+        });
+    }
+
+    private void schedulePush(Long userId) {
+        scheduler.schedule(() -> pushChanges(userId), coalesceWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Пересчитать аналитику и отправить изменившиеся разделы; изменения, пришедшие во время пересчета,
+    // запускают следующий пересчет после этого
+    private void pushChanges(Long userId) {
+        pending.put(userId, PushState.RUNNING);
+        try {
+            computeAndSendDelta(userId);
+        } finally {
+            pending.compute(userId, (id, state) -> {
+                if (state == PushState.RUNNING_DIRTY && emitters.containsKey(id)) {
+                    schedulePush(id);
+                    return PushState.SCHEDULED;
+                }
+                return null;
+            });
+        }
+    }
+
+    private void computeAndSendDelta(Long userId) {
+        List<SseEmitter> subscribers = emitters.get(userId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        try {
+            Map<String, Object> snapshot = computeSnapshot(userId);
+            Map<String, Object> previous = lastSent.getOrDefault(userId, Map.of());
+
+            Map<String, Object> delta = new LinkedHashMap<>();
+            snapshot.forEach((section, value) -> {
+                if (!Objects.equals(previous.get(section), value)) {
+                    delta.put(section, value);
+                }
+            });
+            lastSent.put(userId, snapshot);
+
+            if (delta.isEmpty()) {
+                log.debug("No analytics changes to push for user ID: {}", userId);
+                return;
+            }
+
+            for (SseEmitter emitter : subscribers) {
+                send(userId, emitter, delta);
+            }
+            log.debug("Pushed analytics delta for user ID: {}. Sections: {}", userId, delta.keySet());
+        } catch (Exception e) {
+            log.error("Error pushing analytics for user ID: {}. Error: {}", userId, e.getMessage());
+        }
+    }
+
+    private void sendSnapshot(Long userId, SseEmitter emitter) {
+        try {
+            Map<String, Object> snapshot = computeSnapshot(userId);
+            // Базу для дельт не сдвигаем: остальные подписчики могли еще не получить последние изменения
+            lastSent.putIfAbsent(userId, snapshot);
+            send(userId, emitter, snapshot);
+        } catch (Exception e) {
+            log.error("Error sending analytics snapshot for user ID: {}. Error: {}", userId, e.getMessage());
+            emitter.completeWithError(e);
+        }
+    }
+
+    // Пересчет идет в потоке планировщика без контекста безопасности, поэтому шард задается явно.
+    // Снимок не изменяется после расчета, поэтому одновременные подписки получают общий экземпляр
+    private Map<String, Object> computeSnapshot(Long userId) {
+        return ShardContext.callAsUser(userId, () -> analyticsCoalescer.coalesce(userId, "snapshot", () -> {
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("lifeSphereBalance", analyticsService.getLifeSphereBalance(userId));
+            snapshot.put("projectsProgress", analyticsService.getMainProjectsProgress(userId));
+            snapshot.put("productivityStats", analyticsService.getProductivityStats(userId));
+            snapshot.put("timeStatistics", analyticsService.getTimeStatistics(userId));
+            snapshot.put("priorityDistribution", analyticsService.getPriorityDistribution(userId));
+            return snapshot;
+        }));
+    }
+
+    // Комментарий SSE клиенты игнорируют; неудачная отправка заодно находит оборванные соединения
+    private void sendHeartbeats() {
+        emitters.forEach((userId, subscribers) -> {
+            for (SseEmitter emitter : subscribers) {
+                send(userId, emitter, SseEmitter.event().comment("heartbeat"));
+            }
+        });
+    }
+
+    private void send(Long userId, SseEmitter emitter, Map<String, Object> data) {
+        send(userId, emitter, SseEmitter.event().name(EVENT_NAME).data(data));
+    }
+
+    private void send(Long userId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping analytics subscriber for user ID: {}. Reason: {}", userId, e.getMessage());
+            unsubscribe(userId, emitter);
+        }
+    }
+
+    private void unsubscribe(Long userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (id, list) -> {
+            list.remove(emitter);
+            if (list.isEmpty()) {
+                lastSent.remove(id);
+                return null;
+            }
+            return list;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.cancel(false);
+        scheduler.shutdownNow();
+        emitters.values().forEach(list -> list.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+}
\ No newline at end of file
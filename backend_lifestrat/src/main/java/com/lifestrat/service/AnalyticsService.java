@@ -1,14 +1,21 @@
 package com.lifestrat.service;
 
+import com.lifestrat.dto.AnalyticsDto;
+import com.lifestrat.dto.ProductivityStatsDto;
 import com.lifestrat.dto.ProjectProgressDto;
+import com.lifestrat.dto.ProjectScheduleDto;
+import com.lifestrat.dto.TimeStatisticsDto;
+import com.lifestrat.entity.Priority;
 import com.lifestrat.entity.Task;
 import com.lifestrat.entity.TaskType;
 import com.lifestrat.entity.Project;
 import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.repository.LifeSphereRepository;
 import com.lifestrat.repository.TaskRepository;
 import com.lifestrat.repository.ProjectRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -17,18 +24,48 @@ import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Аналитика по задачам пользователя.
+ * Старые завершенные задачи лежат в архиве (см. TaskArchiveService), поэтому
+ * исторические показатели складываются из живой таблицы и агрегатов по архиву,
+ * которые хранятся вместе со снимком задач (см. ArchiveTotals).
+ * Живые задачи агрегируются сканами по колоночному снимку (см. TaskSnapshotService),
+ * а если снимки выключены — по загруженным сущностям.
+ */
 @Service
+@Lazy
 @Transactional
 @Slf4j
 public class AnalyticsService {
 
     private final TaskRepository taskRepository;
     private final ProjectRepository projectRepository;
+    private final LifeSphereRepository lifeSphereRepository;
+    private final ProjectScheduleService projectScheduleService;
+    private final TaskSnapshotService taskSnapshotService;
 
     @Autowired
-    public AnalyticsService(TaskRepository taskRepository, ProjectRepository projectRepository) {
+    public AnalyticsService(TaskRepository taskRepository,
+                            ProjectRepository projectRepository,
+                            LifeSphereRepository lifeSphereRepository,
+                            ProjectScheduleService projectScheduleService,
+                            TaskSnapshotService taskSnapshotService) {
         this.taskRepository = taskRepository;
         this.projectRepository = projectRepository;
+        this.lifeSphereRepository = lifeSphereRepository;
+        this.projectScheduleService = projectScheduleService;
+        this.taskSnapshotService = taskSnapshotService;
+    }
+
+    // Получить все разделы аналитики одним ответом
+    public AnalyticsDto getAnalytics(Long userId) {
+        return new AnalyticsDto(
+                getLifeSphereBalance(userId),
+                getMainProjectsProgress(userId),
+                getProductivityStats(userId),
+                getTimeStatistics(userId),
+                getPriorityDistribution(userId)
+        );
     }
 
     // Получить данные для радар-диаграммы баланса сфер жизни
@@ -36,22 +73,40 @@ public class AnalyticsService {
         log.debug("Getting life sphere balance for user ID: {}", userId);
 
         LocalDate thirtyDaysAgo = LocalDate.now().minusDays(30);
+        // Снимок и архив хранят ID сфер, имена читаются отдельно
+        Map<Long, String> sphereNames = lifeSphereRepository.findAllByUserId(userId).stream()
+                .collect(Collectors.toMap(LifeSphere::getId, LifeSphere::getName));
+
+        Map<String, Double> sphereBalance;
+        if (taskSnapshotService.isEnabled()) {
+            sphereBalance = new HashMap<>();
+            taskSnapshotService.completedMinutesBySphere(userId, thirtyDaysAgo).forEach((sphereId, minutes) ->
+                    sphereBalance.merge(sphereNames.get(sphereId), minutes.doubleValue(), Double::sum));
+        } else {
+            // Получаем все завершенные задачи пользователя за последние 30 дней
+            List<Task> completedTasks = taskRepository.findAllByUserId(userId).stream()
+                    .filter(Task::isCompleted)
+                    .filter(task -> task.getDeadline().isAfter(thirtyDaysAgo) ||
+                            task.getDeadline().isEqual(thirtyDaysAgo))
+                    .toList();
 
-        // Получаем все завершенные задачи пользователя за последние 30 дней
-        List<Task> completedTasks = taskRepository.findAllByUserId(userId).stream()
-                .filter(Task::isCompleted)
-                .filter(task -> task.getDeadline().isAfter(thirtyDaysAgo) ||
-                        task.getDeadline().isEqual(thirtyDaysAgo))
-                .toList();
+            // Группируем по сферам жизни и суммируем время
+            sphereBalance = completedTasks.stream()
+                    .collect(Collectors.groupingBy(
+                            task -> task.getLifeSphere().getName(),
+                            Collectors.summingDouble(Task::getEstimatedTimeMinutes)
+                    ));
+        }
 
-        // Группируем по сферам жизни и суммируем время
-        Map<String, Double> sphereBalance = completedTasks.stream()
-                .collect(Collectors.groupingBy(
-                        task -> task.getLifeSphere().getName(),
-                        Collectors.summingDouble(Task::getEstimatedTimeMinutes)
-                ));
+        // Добавляем задачи, уже перенесенные в архив; сферы, которых больше нет, пропускаются
+        taskSnapshotService.archiveTotals(userId).minutesBySphereSince(thirtyDaysAgo).forEach((sphereId, minutes) -> {
+            if (sphereNames.containsKey(sphereId)) {
+                sphereBalance.merge(sphereNames.get(sphereId), minutes.doubleValue(), Double::sum);
+            }
+        });
 
-        log.info("Life sphere balance calculated for user ID: {}. Spheres: {}", userId, sphereBalance.keySet());
+        log.atInfo().setMessage("Life sphere balance calculated").addKeyValue("userId", userId)
+                .addKeyValue("spheres", sphereBalance.size()).log();
         return sphereBalance;
     }
 
@@ -62,45 +117,65 @@ public class AnalyticsService {
         List<Project> userProjects = projectRepository.findAllByUserId(userId);
         List<ProjectProgressDto> progressList = new ArrayList<>();
 
+        // Архивные шаги всегда завершены
+        ArchiveTotals archive = taskSnapshotService.archiveTotals(userId);
+
         for (Project project : userProjects) {
             // Получаем все шаги (tasks типа STEP) для этого проекта
             List<Task> projectSteps = taskRepository.findAllByProjectId(project.getId()).stream()
                     .filter(task -> task.getType() == TaskType.STEP)
                     .toList();
 
-            int totalSteps = projectSteps.size();
+            int archived = (int) archive.steps(project.getId());
+            int totalSteps = projectSteps.size() + archived;
             int completedSteps = (int) projectSteps.stream()
                     .filter(Task::isCompleted)
-                    .count();
+                    .count() + archived;
+
+            // Прогноз берется из графа зависимостей, который держится в памяти и обновляется точечно
+            ProjectScheduleDto schedule = projectScheduleService.getSchedule(project);
 
             ProjectProgressDto progress = new ProjectProgressDto(
                     project.getId(),
                     project.getTitle(),
                     totalSteps,
                     completedSteps,
-                    totalSteps > 0 ? (double) completedSteps / totalSteps * 100 : 0.0
+                    totalSteps > 0 ? (double) completedSteps / totalSteps * 100 : 0.0,
+                    schedule.projectedFinish(),
+                    schedule.onTrack()
             );
 
             progressList.add(progress);
         }
 
-        log.info("Projects progress calculated for user ID: {}. Projects count: {}", userId, progressList.size());
+        log.atInfo().setMessage("Projects progress calculated").addKeyValue("userId", userId)
+                .addKeyValue("projects", progressList.size()).log();
         return progressList;
     }
 
     // Получить статистику продуктивности
-    public Map<String, Object> getProductivityStats(Long userId) {
+    public ProductivityStatsDto getProductivityStats(Long userId) {
         log.debug("Getting productivity stats for user ID: {}", userId);
 
-        // Получаем все завершенные задачи пользователя
-        List<Task> completedTasks = taskRepository.findAllByUserId(userId).stream()
-                .filter(Task::isCompleted)
-                .toList();
+        long completedCount;
+        Set<LocalDate> completedDates;
+        if (taskSnapshotService.isEnabled()) {
+            completedCount = taskSnapshotService.timeTotals(userId).completedTasks();
+            completedDates = new HashSet<>(taskSnapshotService.completedDays(userId));
+        } else {
+            // Получаем все завершенные задачи пользователя
+            List<Task> completedTasks = taskRepository.findAllByUserId(userId).stream()
+                    .filter(Task::isCompleted)
+                    .toList();
+            completedCount = completedTasks.size();
 
-        // Извлекаем уникальные даты выполнения задач
-        Set<LocalDate> completedDates = completedTasks.stream()
-                .map(task -> task.getDeadline()) // Используем deadline как дату выполнения
-                .collect(Collectors.toSet());
+            // Извлекаем уникальные даты выполнения задач
+            completedDates = completedTasks.stream()
+                    .map(task -> task.getDeadline()) // Используем deadline как дату выполнения
+                    .collect(Collectors.toSet());
+        }
+        ArchiveTotals archive = taskSnapshotService.archiveTotals(userId);
+        completedDates.addAll(archive.completionDays());
 
         // Сортируем даты в хронологическом порядке
         List<LocalDate> sortedDates = completedDates.stream()
@@ -111,14 +186,15 @@ public class AnalyticsService {
         long currentStreak = calculateCurrentStreak(sortedDates);
         long maxStreak = calculateMaxStreak(sortedDates);
 
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("currentStreak", currentStreak);
-        stats.put("maxStreak", maxStreak);
-        stats.put("totalCompletedTasks", completedTasks.size());
-        stats.put("analysisDate", LocalDate.now());
+        ProductivityStatsDto stats = new ProductivityStatsDto(
+                currentStreak,
+                maxStreak,
+                completedCount + archive.tasks(),
+                LocalDate.now()
+        );
 
-        log.info("Productivity stats calculated for user ID: {}. Current streak: {}, Max streak: {}",
-                userId, currentStreak, maxStreak);
+        log.atInfo().setMessage("Productivity stats calculated").addKeyValue("userId", userId)
+                .addKeyValue("currentStreak", currentStreak).addKeyValue("maxStreak", maxStreak).log();
 
         return stats;
     }
@@ -175,47 +251,60 @@ public class AnalyticsService {
     }
 
     // Получить общую статистику по времени
-    public Map<String, Object> getTimeStatistics(Long userId) {
+    public TimeStatisticsDto getTimeStatistics(Long userId) {
         log.debug("Getting time statistics for user ID: {}", userId);
 
-        List<Task> userTasks = taskRepository.findAllByUserId(userId);
+        TaskSnapshotService.TimeTotals live;
+        if (taskSnapshotService.isEnabled()) {
+            live = taskSnapshotService.timeTotals(userId);
+        } else {
+            List<Task> userTasks = taskRepository.findAllByUserId(userId);
+            live = new TaskSnapshotService.TimeTotals(
+                    userTasks.stream().mapToInt(Task::getEstimatedTimeMinutes).sum(),
+                    userTasks.stream().filter(Task::isCompleted).mapToInt(Task::getEstimatedTimeMinutes).sum(),
+                    userTasks.size(),
+                    userTasks.stream().filter(Task::isCompleted).count());
+        }
 
-        int totalTimePlanned = userTasks.stream()
-                .mapToInt(Task::getEstimatedTimeMinutes)
-                .sum();
+        // Архивные задачи завершены, поэтому входят и в запланированное, и в выполненное время
+        ArchiveTotals archive = taskSnapshotService.archiveTotals(userId);
+        long archivedTime = archive.minutes();
+        long archivedCount = archive.tasks();
 
-        int totalTimeCompleted = userTasks.stream()
-                .filter(Task::isCompleted)
-                .mapToInt(Task::getEstimatedTimeMinutes)
-                .sum();
+        long totalTimePlanned = live.plannedMinutes() + archivedTime;
+        long totalTimeCompleted = live.completedMinutes() + archivedTime;
 
         double completionRate = totalTimePlanned > 0 ?
                 (double) totalTimeCompleted / totalTimePlanned * 100 : 0.0;
 
-        Map<String, Object> timeStats = new HashMap<>();
-        timeStats.put("totalTimePlanned", totalTimePlanned);
-        timeStats.put("totalTimeCompleted", totalTimeCompleted);
-        timeStats.put("completionRate", Math.round(completionRate * 100.0) / 100.0);
-        timeStats.put("tasksCount", userTasks.size());
-        timeStats.put("completedTasksCount", userTasks.stream().filter(Task::isCompleted).count());
+        TimeStatisticsDto timeStats = new TimeStatisticsDto(
+                totalTimePlanned,
+                totalTimeCompleted,
+                Math.round(completionRate * 100.0) / 100.0,
+                live.tasks() + archivedCount,
+                live.completedTasks() + archivedCount
+        );
 
-        log.info("Time statistics calculated for user ID: {}", userId);
+        log.atInfo().setMessage("Time statistics calculated").addKeyValue("userId", userId).log();
         return timeStats;
     }
 
     // Получить распределение задач по приоритетам
-    public Map<String, Long> getPriorityDistribution(Long userId) {
+    public Map<Priority, Long> getPriorityDistribution(Long userId) {
         log.debug("Getting priority distribution for user ID: {}", userId);
 
-        List<Task> userTasks = taskRepository.findAllByUserId(userId);
-
-        Map<String, Long> priorityDistribution = userTasks.stream()
-                .collect(Collectors.groupingBy(
-                        task -> task.getPriority().name(),
-                        Collectors.counting()
-                ));
-
-        log.info("Priority distribution calculated for user ID: {}", userId);
+        Map<Priority, Long> priorityDistribution = taskSnapshotService.isEnabled()
+                ? taskSnapshotService.priorityDistribution(userId)
+                : taskRepository.findAllByUserId(userId).stream()
+                        .collect(Collectors.groupingBy(
+                                Task::getPriority,
+                                () -> new EnumMap<>(Priority.class),
+                                Collectors.counting()
+                        ));
+        taskSnapshotService.archiveTotals(userId).priorityDistribution()
+                .forEach((priority, count) -> priorityDistribution.merge(priority, count, Long::sum));
+
+        log.atInfo().setMessage("Priority distribution calculated").addKeyValue("userId", userId).log();
         return priorityDistribution;
     }
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.lifestrat.service;
+
+import com.lifestrat.entity.Priority;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Агрегаты архивных задач одного пользователя для аналитики.
+ * Архив меняется только пакетной архивацией и каскадным удалением, а они сбрасывают снимки,
+ * поэтому агрегаты читаются из БД вместе со снимком задач и дальше не меняются.
+ * Суммы хранятся по паре (сфера, день дедлайна): из них получаются итоги, дни выполнения
+ * и время по сферам с любой даты. Архивные задачи всегда выполнены.
+ */
+final class ArchiveTotals {
+
+    static final ArchiveTotals EMPTY = new ArchiveTotals(List.of(), List.of(), List.of());
+
+    // Пары (сфера, день) по возрастанию дня
+    private final long[] sphereIds;
+    private final int[] days;
+    private final long[] minutes;
+    private final long[] priorityCounts = new long[Priority.values().length];
+    private final Map<Long, Long> stepsByProject = new HashMap<>();
+    private final long tasks;
+    private final long totalMinutes;
+
+    // Строки запросов ArchivedTaskRepository: sumBySphereAndDay, countByPriority и countStepsByProject
+    ArchiveTotals(List<Object[]> bySphereAndDay, List<Object[]> byPriority, List<Object[]> steps) {
+        int n = bySphereAndDay.size();
+        sphereIds = new long[n];
+        days = new int[n];
+        minutes = new long[n];
+        long taskCount = 0;
+        long minuteSum = 0;
+        for (int i = 0; i < n; i++) {
+            Object[] row = bySphereAndDay.get(i);
+            sphereIds[i] = (Long) row[0];
+            days[i] = (int) ((LocalDate) row[1]).toEpochDay();
+            taskCount += ((Number) row[2]).longValue();
+            minutes[i] = ((Number) row[3]).longValue();
+            minuteSum += minutes[i];
+        }
+        tasks = taskCount;
+        totalMinutes = minuteSum;
+        for (Object[] row : byPriority) {
+            priorityCounts[((Priority) row[0]).ordinal()] = (Long) row[1];
+        }
+        for (Object[] row : steps) {
+            stepsByProject.put((Long) row[0], (Long) row[1]);
+        }
+    }
+
+    long tasks() {
+        return tasks;
+    }
+
+    long minutes() {
+        return totalMinutes;
+    }
+
+    long steps(Long projectId) {
+        return stepsByProject.getOrDefault(projectId, 0L);
+    }
+
+    Map<Priority, Long> priorityDistribution() {
+        Map<Priority, Long> result = new EnumMap<>(Priority.class);
+        for (Priority priority : Priority.values()) {
+            if (priorityCounts[priority.ordinal()] > 0) {
+                result.put(priority, priorityCounts[priority.ordinal()]);
+            }
+        }
+        return result;
+    }
+
+    // Различные дни дедлайнов по возрастанию
+    List<LocalDate> completionDays() {
+        List<LocalDate> result = new ArrayList<>();
+        for (int i = 0; i < days.length; i++) {
+            if (i == 0 || days[i] != days[i - 1]) {
+                result.add(LocalDate.ofEpochDay(days[i]));
+            }
+        }
+        return result;
+    }
+
+    // Минуты задач с дедлайном не раньше from по ID сфер
+    Map<Long, Long> minutesBySphereSince(LocalDate from) {
+        int fromDay = (int) from.toEpochDay();
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = days.length - 1; i >= 0 && days[i] >= fromDay; i--) {
+            result.merge(sphereIds[i], minutes[i], Long::sum);
+        }
+        return result;
+    }
+
+    // Оценка объема для бюджета памяти снимков: массивы пар и записи словаря шагов
+    long memoryBytes() {
+        return (long) days.length * (2 * Long.BYTES + Integer.BYTES)
+                + (long) priorityCounts.length * Long.BYTES
+                + stepsByProject.size() * 64L;
+    }
+}
@@ -0,0 +1,238 @@
+package com.lifestrat.service;
+
+import com.lifestrat.entity.EntityKind;
+import com.lifestrat.event.DataChangedEvent;
+import com.lifestrat.repository.ChangeLogRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Каскадное удаление аккаунта, сферы жизни и проекта без загрузки сущностей.
+ * Зависимые строки удаляются SQL-запросами по внешнему ключу пачками, в порядке зависимостей:
+ * журнал изменений и архив, зависимости шагов, задачи, проекты, сферы, пользователь.
+ * Все удаления вызываются вне транзакции: каждая пачка коммитится отдельно через TransactionTemplate,
+ * блокировки держатся только на время пачки, а прерванное удаление можно просто повторить.
+ * Сама удаляемая сущность удаляется последней, поэтому до конца удаления ее можно найти и удалить снова.
+ */
+@Service
+@Slf4j
+public class CascadeDeleteService {
+
+    // Условия выбора задач, проектов и архивных задач, попадающих под удаление
+    private static final String USER_SCOPE = "user_id = :id";
+    // Задачи проектов сферы могут лежать в других сферах; OR в одном условии не позволил бы использовать индексы
+    private static final String SPHERE_SCOPE = "life_sphere_id = :id";
+    private static final String SPHERE_PROJECT_TASKS_SCOPE =
+            "project_id IN (SELECT p.id FROM projects p WHERE p.life_sphere_id = :id)";
+    private static final String PROJECT_TASKS_SCOPE = "project_id = :id";
+    // Зависимости шагов, лежащих в сфере, но принадлежащих проектам других сфер
+    private static final String SPHERE_TASK_DEPENDENCIES_SCOPE =
+            "task_id IN (SELECT t.id FROM tasks t WHERE t.life_sphere_id = :id)";
+    private static final String SPHERE_DEPENDED_ON_TASKS_SCOPE =
+            "depends_on_task_id IN (SELECT t.id FROM tasks t WHERE t.life_sphere_id = :id)";
+
+    // Снять ссылку на шаблон без журнала: только при удалении аккаунта
+    private static final String DETACH_INSTANCES_SQL = "UPDATE tasks SET source_task_id = NULL WHERE id IN (SELECT i.id "
+            + "FROM tasks i WHERE i.source_task_id IN (SELECT id FROM tasks WHERE %s) LIMIT :limit)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ChangeLogRepository changeLogRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SearchIndexService searchIndexService;
+    private final ProjectScheduleService projectScheduleService;
+    private final TaskSnapshotService taskSnapshotService;
+    private final EntityManager entityManager;
+    private final int chunkSize;
+
+    @Autowired
+    public CascadeDeleteService(NamedParameterJdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                ChangeLogRepository changeLogRepository,
+                                ApplicationEventPublisher eventPublisher,
+                                SearchIndexService searchIndexService,
+                                ProjectScheduleService projectScheduleService,
+                                TaskSnapshotService taskSnapshotService,
+                                EntityManager entityManager,
+                                @Value("${lifestrat.delete.chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.changeLogRepository = changeLogRepository;
+        this.eventPublisher = eventPublisher;
+        this.searchIndexService = searchIndexService;
+        this.projectScheduleService = projectScheduleService;
+        this.taskSnapshotService = taskSnapshotService;
+        this.entityManager = entityManager;
+        this.chunkSize = chunkSize;
+    }
+
+    // Удалить аккаунт со всеми данными; вызывается вне транзакции
+    public void deleteUser(Long userId) {
+        log.debug("Deleting all data of user ID: {}", userId);
+
+        long rows = deleteInChunks("change_log", USER_SCOPE, userId);
+        rows += deleteInChunks("archived_tasks", USER_SCOPE, userId);
+        rows += deleteInChunks("task_dependencies", USER_SCOPE, userId);
+        // Журнал пользователя уже удален, а экземпляры удаляются следом, поэтому ссылка снимается без записи в журнал
+        updateInChunks(DETACH_INSTANCES_SQL.formatted(USER_SCOPE), new MapSqlParameterSource("id", userId));
+        rows += deleteInChunks("tasks", USER_SCOPE, userId);
+        rows += deleteInChunks("projects", USER_SCOPE, userId);
+        rows += deleteInChunks("life_spheres", USER_SCOPE, userId);
+        // Пользователь удаляется последним, чтобы прерванное удаление можно было повторить
+        Integer users = transactionTemplate.execute(status -> jdbcTemplate.update(
+                "DELETE FROM users WHERE id = :id", new MapSqlParameterSource("id", userId)));
+        searchIndexService.evict(userId);
+        taskSnapshotService.evict(userId);
+
+        log.info("User ID: {} deleted with {} dependent rows", userId, rows + (users != null ? users : 0));
+    }
+
+    // Удалить сферу жизни вместе с ее проектами и задачами; вызывается вне транзакции
+    public void deleteLifeSphere(Long userId, Long sphereId) {
+        log.debug("Deleting life sphere ID: {} of user ID: {} with dependents", sphereId, userId);
+
+        long rows = deleteInChunks("archived_tasks", SPHERE_PROJECT_TASKS_SCOPE, sphereId);
+        rows += deleteInChunks("archived_tasks", SPHERE_SCOPE, sphereId);
+        rows += deleteInChunks("task_dependencies", SPHERE_PROJECT_TASKS_SCOPE, sphereId);
+        rows += deleteInChunks("task_dependencies", SPHERE_TASK_DEPENDENCIES_SCOPE, sphereId);
+        rows += deleteInChunks("task_dependencies", SPHERE_DEPENDED_ON_TASKS_SCOPE, sphereId);
+        detachRitualInstances(SPHERE_PROJECT_TASKS_SCOPE, userId, sphereId);
+        detachRitualInstances(SPHERE_SCOPE, userId, sphereId);
+        rows += deleteLoggedInChunks(EntityKind.TASK, "tasks", SPHERE_PROJECT_TASKS_SCOPE, userId, sphereId);
+        rows += deleteLoggedInChunks(EntityKind.TASK, "tasks", SPHERE_SCOPE, userId, sphereId);
+        rows += deleteLoggedInChunks(EntityKind.PROJECT, "projects", SPHERE_SCOPE, userId, sphereId);
+        deleteRoot(EntityKind.LIFE_SPHERE, "life_spheres", userId, sphereId);
+        entityManager.clear();
+        searchIndexService.evict(userId);
+        taskSnapshotService.evict(userId);
+        projectScheduleService.evictAll();
+
+        log.info("Life sphere ID: {} deleted with {} dependent rows", sphereId, rows);
+    }
+
+    // Удалить проект вместе с его задачами; вызывается вне транзакции
+    public void deleteProject(Long userId, Long projectId) {
+        log.debug("Deleting project ID: {} of user ID: {} with dependents", projectId, userId);
+
+        long rows = deleteInChunks("archived_tasks", PROJECT_TASKS_SCOPE, projectId);
+        rows += deleteInChunks("task_dependencies", PROJECT_TASKS_SCOPE, projectId);
+        detachRitualInstances(PROJECT_TASKS_SCOPE, userId, projectId);
+        rows += deleteLoggedInChunks(EntityKind.TASK, "tasks", PROJECT_TASKS_SCOPE, userId, projectId);
+        deleteRoot(EntityKind.PROJECT, "projects", userId, projectId);
+        entityManager.clear();
+        searchIndexService.evict(userId);
+        taskSnapshotService.evict(userId);
+        projectScheduleService.invalidate(projectId);
+
+        log.info("Project ID: {} deleted with {} dependent rows", projectId, rows);
+    }
+
+    // Удалять строки пачками по chunkSize, пока подходящие строки не закончатся
+    private long deleteInChunks(String table, String scope, Long id) {
+        String sql = "DELETE FROM " + table + " WHERE id IN (SELECT id FROM " + table
+                + " WHERE " + scope + " LIMIT :limit)";
+        return updateInChunks(sql, new MapSqlParameterSource("id", id));
+    }
+
+    // Удалять пачками строки, о которых знают клиенты: в той же транзакции, что и пачка,
+    // запись журнала о каждой строке заменяется tombstone, чтобы клиенты убрали ее при синхронизации.
+    // Пачка — строки scope с ID не больше последнего из первых chunkSize, одно условие на все три запроса
+    private long deleteLoggedInChunks(EntityKind kind, String table, String scope, Long userId, Long id) {
+        String lastIdSql = "SELECT MAX(id) FROM (SELECT id FROM " + table + " WHERE " + scope
+                + " ORDER BY id LIMIT :limit) AS chunk";
+        String chunkScope = scope + " AND id <= :lastId";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("limit", chunkSize)
+                .addValue("kind", kind.name());
+
+        long deleted = 0;
+        int chunk;
+        do {
+            Integer count = transactionTemplate.execute(status -> {
+                // Номера записей журнала пользователя должны расти в порядке коммитов, как в ChangeLogService.record
+                changeLogRepository.lockUser(userId);
+                Long lastId = jdbcTemplate.queryForObject(lastIdSql, params, Long.class);
+                if (lastId == null) {
+                    return 0;
+                }
+                params.addValue("lastId", lastId)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+                jdbcTemplate.update("DELETE FROM change_log WHERE entity_kind = :kind AND entity_id IN (SELECT id FROM "
+                        + table + " WHERE " + chunkScope + ")", params);
+                jdbcTemplate.update("INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at) "
+                        + "SELECT user_id, :kind, id, TRUE, :now FROM " + table + " WHERE " + chunkScope, params);
+                return jdbcTemplate.update("DELETE FROM " + table + " WHERE " + chunkScope, params);
+            });
+            chunk = count != null ? count : 0;
+            deleted += chunk;
+        } while (chunk == chunkSize);
+        return deleted;
+    }
+
+    // Удалить саму сферу или проект последним; tombstone пишет ChangeLogService по событию до коммита.
+    // Если за время удаления пачек в сфере или проекте появились новые строки, удаление падает
+    // на внешнем ключе, и его можно просто повторить
+    private void deleteRoot(EntityKind kind, String table, Long userId, Long id) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE id = :id", new MapSqlParameterSource("id", id));
+            eventPublisher.publishEvent(new DataChangedEvent(userId, kind, id, true));
+        });
+    }
+
+    // Экземпляры ритуалов ссылаются на шаблоны; ссылка снимается пачками до удаления шаблонов.
+    // Экземпляры вне удаляемой области остаются у пользователя, поэтому каждая пачка, как в OverdueSweepService,
+    // в своей транзакции увеличивает их версию и заменяет их записи в журнале изменений
+    private void detachRitualInstances(String scope, Long userId, Long id) {
+        String chunkSql = "SELECT i.id FROM tasks i WHERE i.source_task_id IN (SELECT id FROM tasks WHERE " + scope
+                + ") ORDER BY i.id LIMIT :limit";
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("limit", chunkSize);
+
+        int chunk;
+        do {
+            Integer count = transactionTemplate.execute(status -> {
+                changeLogRepository.lockUser(userId);
+                List<Long> instanceIds = jdbcTemplate.queryForList(chunkSql, params, Long.class);
+                if (instanceIds.isEmpty()) {
+                    return 0;
+                }
+                params.addValue("ids", instanceIds)
+                        .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+                jdbcTemplate.update("UPDATE tasks SET source_task_id = NULL, version = version + 1, "
+                        + "updated_at = :now WHERE id IN (:ids)", params);
+                jdbcTemplate.update("DELETE FROM change_log WHERE entity_kind = 'TASK' AND entity_id IN (:ids)", params);
+                jdbcTemplate.update("INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at) "
+                        + "SELECT user_id, 'TASK', id, FALSE, :now FROM tasks WHERE id IN (:ids)", params);
+                return instanceIds.size();
+            });
+            chunk = count != null ? count : 0;
+        } while (chunk == chunkSize);
+    }
+
+    // Выполнять запрос с параметром :limit отдельными транзакциями, пока он затрагивает полную пачку
+    private long updateInChunks(String sql, MapSqlParameterSource params) {
+        params.addValue("limit", chunkSize);
+        long updated = 0;
+        int chunk;
+        do {
+            Integer count = transactionTemplate.execute(status -> jdbcTemplate.update(sql, params));
+            chunk = count != null ? count : 0;
+            updated += chunk;
+        } while (chunk == chunkSize);
+        return updated;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardingProperties;
+import com.lifestrat.entity.JobWatermark;
+import com.lifestrat.repository.JobWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Однократное заполнение журнала изменений для сущностей, созданных до его появления.
+ * Без этого первичная синхронизация (cursor=0) на обновленной базе не вернула бы старые данные:
+ * клиент получает только сущности, у которых есть запись в журнале.
+ * Пользователи обходятся пачками по ID, каждая пачка — в своей транзакции; после обхода шарда
+ * пишется watermark, и при следующих запусках шард не просматривается.
+ */
+@Service
+@Slf4j
+public class ChangeLogBackfillService implements ApplicationRunner {
+
+    private record Source(String kind, String table) {
+    }
+
+    static final String JOB_NAME = "change-log-backfill";
+
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final String SELECT_USERS_SQL = "SELECT id FROM users WHERE id > :afterId ORDER BY id LIMIT :limit";
+
+    // Как в ChangeLogService.record: номера записей журнала должны расти в порядке коммитов
+    private static final String LOCK_USERS_SQL = "SELECT id FROM users WHERE id IN (:userIds) ORDER BY id FOR UPDATE";
+
+    private static final String RECORD_MISSING_SQL = """
+            INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at)
+            SELECT e.user_id, :kind, e.id, FALSE, CURRENT_TIMESTAMP
+            FROM %s e
+            WHERE e.user_id IN (:userIds)
+              AND NOT EXISTS (SELECT 1 FROM change_log c WHERE c.entity_kind = :kind AND c.entity_id = e.id)
+            """;
+
+    private static final List<Source> SOURCES = List.of(
+            new Source("LIFE_SPHERE", "life_spheres"),
+            new Source("PROJECT", "projects"),
+            new Source("TASK", "tasks"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobWatermarkRepository watermarkRepository;
+    private final ShardingProperties shardingProperties;
+
+    @Autowired
+    public ChangeLogBackfillService(NamedParameterJdbcTemplate jdbcTemplate,
+                                    PlatformTransactionManager transactionManager,
+                                    JobWatermarkRepository watermarkRepository,
+                                    ShardingProperties shardingProperties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.watermarkRepository = watermarkRepository;
+        this.shardingProperties = shardingProperties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        backfill();
+    }
+
+    // Записать в журнал все сферы, проекты и задачи, у которых еще нет записи
+    public synchronized long backfill() {
+        long recorded = 0;
+        for (int shard : shardingProperties.shardIndexes()) {
+            recorded += ShardContext.callOnShard(shard, this::backfillShard);
+        }
+        if (recorded > 0) {
+            log.info("Change log backfill finished. Recorded entities: {}", recorded);
+        }
+        return recorded;
+    }
+
+    private long backfillShard() {
+        if (watermarkRepository.existsById(JOB_NAME)) {
+            return 0;
+        }
+
+        long recorded = 0;
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("afterId", 0L)
+                .addValue("limit", CHUNK_SIZE);
+        List<Long> userIds;
+        do {
+            userIds = jdbcTemplate.queryForList(SELECT_USERS_SQL, params, Long.class);
+            if (userIds.isEmpty()) {
+                break;
+            }
+            List<Long> chunk = userIds;
+            Long count = transactionTemplate.execute(status -> recordChunk(chunk));
+            recorded += count != null ? count : 0;
+            params.addValue("afterId", chunk.get(chunk.size() - 1));
+        } while (userIds.size() == CHUNK_SIZE);
+
+        transactionTemplate.executeWithoutResult(
+                status -> watermarkRepository.save(new JobWatermark(JOB_NAME, LocalDate.now())));
+        return recorded;
+    }
+
+    private long recordChunk(List<Long> userIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource("userIds", userIds);
+        jdbcTemplate.queryForList(LOCK_USERS_SQL, params, Long.class);
+
+        long recorded = 0;
+        for (Source source : SOURCES) {
+            params.addValue("kind", source.kind());
+            recorded += jdbcTemplate.update(RECORD_MISSING_SQL.formatted(source.table()), params);
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,131 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardingConfig;
+import com.lifestrat.dto.LifeSphereDto;
+import com.lifestrat.dto.ProjectDto;
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.dto.SyncTombstoneDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.entity.ChangeLogEntry;
+import com.lifestrat.entity.EntityKind;
+import com.lifestrat.event.DataChangedEvent;
+import com.lifestrat.repository.ChangeLogRepository;
+import com.lifestrat.repository.LifeSphereRepository;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Журнал изменений для дельта-синхронизации клиентов.
+ * Каждая запись сервисов фиксируется в журнале в той же транзакции; на сущность хранится
+ * одна последняя запись (изменение или tombstone), поэтому клиент по курсору получает
+ * только измененные после него строки.
+ */
+@Service
+@Transactional
+@Slf4j
+public class ChangeLogService {
+
+    private final ChangeLogRepository changeLogRepository;
+    private final LifeSphereRepository lifeSphereRepository;
+    private final ProjectRepository projectRepository;
+    private final TaskRepository taskRepository;
+
+    @Autowired
+    public ChangeLogService(ChangeLogRepository changeLogRepository,
+                            LifeSphereRepository lifeSphereRepository,
+                            ProjectRepository projectRepository,
+                            TaskRepository taskRepository) {
+        this.changeLogRepository = changeLogRepository;
+        this.lifeSphereRepository = lifeSphereRepository;
+        this.projectRepository = projectRepository;
+        this.taskRepository = taskRepository;
+    }
+
+    // Записать изменение в журнал до коммита, в той же транзакции, что и само изменение
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onDataChanged(DataChangedEvent event) {
+        record(event.userId(), event.kind(), event.entityId(), event.deleted());
+    }
+
+    // Заменить запись журнала о сущности новой с большим номером
+    public void record(Long userId, EntityKind kind, Long entityId, boolean deleted) {
+        log.debug("Recording change - User ID: {}, {} ID: {}, deleted: {}", userId, kind, entityId, deleted);
+
+        // Блокировка строки пользователя гарантирует, что номера его записей растут в порядке коммитов,
+        // иначе клиент мог бы сдвинуть курсор за еще не закоммиченную запись
+        changeLogRepository.lockUser(userId);
+        changeLogRepository.deleteByEntity(kind, entityId);
+        changeLogRepository.save(new ChangeLogEntry(null, userId, kind, entityId, deleted, LocalDateTime.now()));
+    }
+
+    // Получить изменения пользователя после курсора
+    @Transactional(readOnly = true)
+    public SyncResponseDto sync(Long userId, long cursor, int limit) {
+        log.debug("Syncing changes for user ID: {} after cursor: {}", userId, cursor);
+
+        // Курсор выдан другим шардом до переноса пользователя: журнал на новом шарде перенумерован
+        // в его диапазоне ID, поэтому клиент проходит синхронизацию заново с начала
+        if (cursor > 0 && isIssuedByAnotherShard(userId, cursor)) {
+            log.info("Sync cursor {} of user ID: {} was issued by another shard, restarting from 0", cursor, userId);
+            cursor = 0;
+        }
+
+        List<ChangeLogEntry> entries = changeLogRepository
+                .findAllByUserIdAndIdGreaterThanOrderById(userId, cursor, Limit.of(limit + 1));
+        boolean hasMore = entries.size() > limit;
+        if (hasMore) {
+            entries = entries.subList(0, limit);
+        }
+        if (entries.isEmpty()) {
+            return new SyncResponseDto(cursor, false, List.of(), List.of(), List.of(), List.of());
+        }
+
+        Map<EntityKind, List<Long>> changedIds = new EnumMap<>(EntityKind.class);
+        List<SyncTombstoneDto> deleted = new ArrayList<>();
+        for (ChangeLogEntry entry : entries) {
+            if (entry.isDeleted()) {
+                deleted.add(new SyncTombstoneDto(entry.getEntityKind(), entry.getEntityId()));
+            } else {
+                changedIds.computeIfAbsent(entry.getEntityKind(), kind -> new ArrayList<>()).add(entry.getEntityId());
+            }
+        }
+
+        List<LifeSphereDto> lifeSpheres = lifeSphereRepository
+                .findAllById(changedIds.getOrDefault(EntityKind.LIFE_SPHERE, List.of())).stream()
+                .map(LifeSphereDto::from)
+                .toList();
+        List<ProjectDto> projects = projectRepository
+                .findAllById(changedIds.getOrDefault(EntityKind.PROJECT, List.of())).stream()
+                .map(ProjectDto::from)
+                .toList();
+        List<TaskDto> tasks = taskRepository
+                .findAllById(changedIds.getOrDefault(EntityKind.TASK, List.of())).stream()
+                .map(TaskDto::from)
+                .toList();
+
+        long nextCursor = entries.get(entries.size() - 1).getId();
+        log.info("Sync for user ID: {}. Cursor: {} -> {}, changes: {}, hasMore: {}",
+                userId, cursor, nextCursor, entries.size(), hasMore);
+        return new SyncResponseDto(nextCursor, hasMore, lifeSpheres, projects, tasks, deleted);
+    }
+
+    // Последняя запись пользователя лежит в диапазоне ID другого шарда, чем курсор
+    private boolean isIssuedByAnotherShard(Long userId, long cursor) {
+        return changeLogRepository.findFirstByUserIdOrderByIdDesc(userId)
+                .map(latest -> ShardingConfig.shardOfId(latest.getId()) != ShardingConfig.shardOfId(cursor))
+                .orElse(false);
+    }
+}
\ No newline at end of file
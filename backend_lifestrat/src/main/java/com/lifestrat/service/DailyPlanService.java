@@ -0,0 +1,245 @@
+package com.lifestrat.service;
+
+import com.lifestrat.dto.DailyPlanDto;
+import com.lifestrat.dto.PlannedTaskDto;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Подбор задач на день под бюджет времени и энергии.
+ * Задача решается как 0/1 рюкзак с двумя ограничениями на примитивных массивах;
+ * если таблица состояний слишком велика или не укладывается в лимит времени,
+ * используется жадная эвристика по плотности ценности.
+ */
+@Service
+@Transactional(readOnly = true)
+@Slf4j
+public class DailyPlanService {
+
+    // Шаг дискретизации времени в минутах
+    private static final int TIME_STEP_MINUTES = 5;
+    // Максимальный размер таблицы (задачи × состояния), при котором еще решаем точно
+    private static final long MAX_DP_CELLS = 16_000_000L;
+    // Максимальное число состояний (время × энергия) — размер массива best независимо от числа задач
+    private static final long MAX_DP_STATES = 1_000_000L;
+    // Верхние границы бюджетов: план строится на один день
+    static final int MAX_TIME_BUDGET_MINUTES = 24 * 60;
+    static final int MAX_ENERGY_BUDGET = 1_000;
+    // Как часто (в задачах) проверять лимит времени внутри DP
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    // Способ подбора: AUTO — точное решение, если таблица и лимит времени позволяют, иначе жадная эвристика;
+    // GREEDY — сразу жадная эвристика, без выделения таблицы DP
+    enum Strategy {
+        AUTO,
+        GREEDY
+    }
+
+    private final TaskRepository taskRepository;
+    private final long latencyBudgetNanos;
+
+    @Autowired
+    public DailyPlanService(TaskRepository taskRepository,
+                            @Value("${lifestrat.planner.latency-budget-ms:20}") long latencyBudgetMs) {
+        this.taskRepository = taskRepository;
+        this.latencyBudgetNanos = latencyBudgetMs * 1_000_000L;
+    }
+
+    // Построить план на день для пользователя
+    public DailyPlanDto buildPlan(Long userId, int timeBudgetMinutes, int energyBudget) {
+        log.debug("Building daily plan for user ID: {}. Time budget: {}, energy budget: {}",
+                userId, timeBudgetMinutes, energyBudget);
+
+        if (timeBudgetMinutes < 0 || energyBudget < 0) {
+            throw new IllegalArgumentException("Time and energy budgets must not be negative");
+        }
+        if (timeBudgetMinutes > MAX_TIME_BUDGET_MINUTES || energyBudget > MAX_ENERGY_BUDGET) {
+            throw new IllegalArgumentException("Time budget must not exceed " + MAX_TIME_BUDGET_MINUTES
+                    + " minutes and energy budget must not exceed " + MAX_ENERGY_BUDGET);
+        }
+
+        List<Task> candidates = taskRepository.findOpenByUserId(userId).stream()
+                .filter(task -> task.getEstimatedTimeMinutes() <= timeBudgetMinutes)
+                .filter(task -> task.getEnergyCost().getValue() <= energyBudget)
+                .toList();
+
+        DailyPlanDto plan = plan(candidates, LocalDate.now(), timeBudgetMinutes, energyBudget);
+        log.info("Daily plan built for user ID: {}. Candidates: {}, planned: {}, optimal: {}",
+                userId, candidates.size(), plan.tasks().size(), plan.optimal());
+        return plan;
+    }
+
+    DailyPlanDto plan(List<Task> tasks, LocalDate today, int timeBudgetMinutes, int energyBudget) {
+        return plan(tasks, today, timeBudgetMinutes, energyBudget, Strategy.AUTO);
+    }
+
+    DailyPlanDto plan(List<Task> tasks, LocalDate today, int timeBudgetMinutes, int energyBudget, Strategy strategy) {
+        int n = tasks.size();
+        if (n == 0) {
+            return new DailyPlanDto(timeBudgetMinutes, energyBudget, 0, 0, 0, true, List.of());
+        }
+        int[] weights = new int[n];
+        int[] energy = new int[n];
+        double[] scores = new double[n];
+        long totalWeight = 0;
+        long totalEnergy = 0;
+        for (int i = 0; i < n; i++) {
+            Task task = tasks.get(i);
+            weights[i] = ceilDiv(task.getEstimatedTimeMinutes(), TIME_STEP_MINUTES);
+            energy[i] = task.getEnergyCost().getValue();
+            scores[i] = score(task, today);
+            totalWeight += weights[i];
+            totalEnergy += energy[i];
+        }
+
+        int timeCapacity = timeBudgetMinutes / TIME_STEP_MINUTES;
+        // Бюджет сверх суммарной стоимости всех задач ничего не меняет в ответе, но раздувает таблицу
+        int dpTimeCapacity = (int) Math.min(timeCapacity, totalWeight);
+        int dpEnergyCapacity = (int) Math.min(energyBudget, totalEnergy);
+        long states = (long) (dpTimeCapacity + 1) * (dpEnergyCapacity + 1);
+        long cells = n * states;
+
+        boolean[] selected = null;
+        if (strategy == Strategy.AUTO && states <= MAX_DP_STATES && cells <= MAX_DP_CELLS) {
+            selected = solveKnapsack(weights, energy, scores, dpTimeCapacity, dpEnergyCapacity,
+                    System.nanoTime() + latencyBudgetNanos);
+        }
+        boolean optimal = selected != null;
+        if (!optimal) {
+            log.debug("Planning {} tasks greedily ({} cells, strategy {})", n, cells, strategy);
+            selected = solveGreedy(weights, energy, scores, timeCapacity, energyBudget);
+        }
+
+        List<PlannedTaskDto> planned = new ArrayList<>();
+        int plannedMinutes = 0;
+        int plannedEnergy = 0;
+        double totalScore = 0;
+        for (int i = 0; i < n; i++) {
+            if (!selected[i]) {
+                continue;
+            }
+            Task task = tasks.get(i);
+            planned.add(new PlannedTaskDto(task.getId(), task.getTitle(), task.getPriority(), task.getDeadline(),
+                    task.getEstimatedTimeMinutes(), task.getEnergyCost(), scores[i]));
+            plannedMinutes += task.getEstimatedTimeMinutes();
+            plannedEnergy += energy[i];
+            totalScore += scores[i];
+        }
+
+        // Сначала самые срочные, при равном дедлайне — более важные
+        planned.sort(Comparator.comparing(PlannedTaskDto::deadline)
+                .thenComparing(PlannedTaskDto::priority, Comparator.reverseOrder()));
+
+        return new DailyPlanDto(timeBudgetMinutes, energyBudget, plannedMinutes, plannedEnergy,
+                totalScore, optimal, planned);
+    }
+
+    // Ценность задачи: вес приоритета, умноженный на срочность дедлайна
+    static double score(Task task, LocalDate today) {
+        long daysLeft = ChronoUnit.DAYS.between(today, task.getDeadline());
+        double urgency = daysLeft <= 0 ? 3.0 : 1.0 + 2.0 / (1 + daysLeft);
+        return priorityWeight(task.getPriority()) * urgency;
+    }
+
+    private static double priorityWeight(Priority priority) {
+        return switch (priority) {
+            case LOW -> 1.0;
+            case MEDIUM -> 2.0;
+            case HIGH -> 4.0;
+            case CRITICAL -> 8.0;
+        };
+    }
+
+    // Точное решение; возвращает null, если не уложились в лимит времени.
+    // Размер таблицы ограничен вызывающим кодом (MAX_DP_STATES, MAX_DP_CELLS)
+    private static boolean[] solveKnapsack(int[] weights, int[] energy, double[] scores,
+                                           int timeCapacity, int energyCapacity, long deadlineNanos) {
+        int n = weights.length;
+        int rowSize = energyCapacity + 1;
+        int states = Math.toIntExact((long) (timeCapacity + 1) * rowSize);
+        double[] best = new double[states];
+        long[] taken = new long[(int) (((long) n * states + 63) >>> 6)];
+
+        for (int i = 0; i < n; i++) {
+            if (i % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+                return null;
+            }
+            int w = weights[i];
+            int e = energy[i];
+            double value = scores[i];
+            long base = (long) i * states;
+            for (int t = timeCapacity; t >= w; t--) {
+                int row = t * rowSize;
+                int fromRow = (t - w) * rowSize;
+                for (int en = energyCapacity; en >= e; en--) {
+                    double candidate = best[fromRow + en - e] + value;
+                    if (candidate > best[row + en]) {
+                        best[row + en] = candidate;
+                        long bit = base + row + en;
+                        taken[(int) (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+            }
+        }
+
+        boolean[] selected = new boolean[n];
+        int t = timeCapacity;
+        int en = energyCapacity;
+        for (int i = n - 1; i >= 0; i--) {
+            long bit = (long) i * states + t * rowSize + en;
+            if ((taken[(int) (bit >>> 6)] & (1L << bit)) != 0) {
+                selected[i] = true;
+                t -= weights[i];
+                en -= energy[i];
+            }
+        }
+        return selected;
+    }
+
+    // Жадный выбор по отношению ценности к доле занимаемого бюджета
+    private static boolean[] solveGreedy(int[] weights, int[] energy, double[] scores,
+                                         int timeCapacity, int energyCapacity) {
+        int n = weights.length;
+        double[] density = new double[n];
+        for (int i = 0; i < n; i++) {
+            double cost = (double) weights[i] / Math.max(1, timeCapacity)
+                    + (double) energy[i] / Math.max(1, energyCapacity);
+            density[i] = scores[i] / Math.max(cost, 1e-9);
+        }
+
+        int[] order = IntStream.range(0, n)
+                .boxed()
+                .sorted((a, b) -> Double.compare(density[b], density[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        boolean[] selected = new boolean[n];
+        int timeLeft = timeCapacity;
+        int energyLeft = energyCapacity;
+        for (int i : order) {
+            if (weights[i] <= timeLeft && energy[i] <= energyLeft) {
+                selected[i] = true;
+                timeLeft -= weights[i];
+                energyLeft -= energy[i];
+            }
+        }
+        return selected;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
\ No newline at end of file
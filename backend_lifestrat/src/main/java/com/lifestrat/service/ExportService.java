@@ -0,0 +1,280 @@
+package com.lifestrat.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.entity.ArchivedTask;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.repository.ArchivedTaskRepository;
+import com.lifestrat.repository.LifeSphereRepository;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Потоковая выгрузка всех данных пользователя (сферы, проекты, задачи) в CSV или NDJSON.
+ * Задачи, перенесенные в архив, выгружаются теми же строками task, что и до архивации.
+ * Строки читаются из forward-only курсора и сразу пишутся в выходной поток,
+ * поэтому расход памяти не зависит от объема выгрузки.
+ */
+@Service
+@Lazy
+@Slf4j
+public class ExportService {
+
+    // Через сколько строк сбрасывать буфер и очищать persistence context
+    private static final int FLUSH_INTERVAL = 500;
+
+    private static final String[] COLUMNS = {
+            "kind", "id", "name", "color", "title", "description", "deadline", "priority", "completed",
+            "estimated_time_minutes", "energy_cost", "type", "project_id", "life_sphere_id"
+    };
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final LifeSphereRepository lifeSphereRepository;
+    private final ProjectRepository projectRepository;
+    private final TaskRepository taskRepository;
+    private final ArchivedTaskRepository archivedTaskRepository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public ExportService(LifeSphereRepository lifeSphereRepository,
+                         ProjectRepository projectRepository,
+                         TaskRepository taskRepository,
+                         ArchivedTaskRepository archivedTaskRepository,
+                         EntityManager entityManager,
+                         ObjectMapper objectMapper) {
+        this.lifeSphereRepository = lifeSphereRepository;
+        this.projectRepository = projectRepository;
+        this.taskRepository = taskRepository;
+        this.archivedTaskRepository = archivedTaskRepository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+    }
+
+    // Выгрузить все данные пользователя в поток в указанном формате
+    @Transactional(readOnly = true)
+    public long export(Long userId, Format format, OutputStream out) throws IOException {
+        log.debug("Exporting data for user ID: {} in format: {}", userId, format);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        RowWriter rowWriter = format == Format.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+        rowWriter.begin();
+        // Отдаем заголовок сразу, не дожидаясь выполнения запросов
+        writer.flush();
+
+        long rows = 0;
+        try (Stream<LifeSphere> spheres = lifeSphereRepository.streamAllByUserIdOrderById(userId)) {
+            rows += writeAll(spheres, this::toRow, rowWriter, writer);
+        }
+        try (Stream<Project> projects = projectRepository.streamAllByUserIdOrderById(userId)) {
+            rows += writeAll(projects, this::toRow, rowWriter, writer);
+        }
+        try (Stream<Task> tasks = taskRepository.streamAllByUserIdOrderById(userId)) {
+            rows += writeAll(tasks, this::toRow, rowWriter, writer);
+        }
+        try (Stream<ArchivedTask> archived = archivedTaskRepository.streamAllByUserIdOrderById(userId)) {
+            rows += writeAll(archived, this::toRow, rowWriter, writer);
+        }
+
+        rowWriter.end();
+        writer.flush();
+
+        log.info("Export finished for user ID: {}. Format: {}, rows: {}", userId, format, rows);
+        return rows;
+    }
+
+    // Записать все строки потока, периодически сбрасывая буфер и очищая persistence context
+    private <T> long writeAll(Stream<T> stream, Function<T, Object[]> mapper,
+                              RowWriter rowWriter, Writer writer) throws IOException {
+        long count = 0;
+        Iterator<T> iterator = stream.iterator();
+        while (iterator.hasNext()) {
+            rowWriter.write(mapper.apply(iterator.next()));
+            if (++count % FLUSH_INTERVAL == 0) {
+                writer.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.clear();
+        return count;
+    }
+
+    private Object[] toRow(LifeSphere sphere) {
+        return new Object[]{
+                "life_sphere", sphere.getId(), sphere.getName(), sphere.getColor(),
+                null, null, null, null, null, null, null, null, null, null
+        };
+    }
+
+    private Object[] toRow(Project project) {
+        return new Object[]{
+                "project", project.getId(), null, null,
+                project.getTitle(), project.getDescription(), project.getDeadline(), project.getPriority(),
+                null, null, null, null, null, idOf(project.getLifeSphere())
+        };
+    }
+
+    private Object[] toRow(Task task) {
+        return new Object[]{
+                "task", task.getId(), null, null,
+                task.getTitle(), task.getDescription(), task.getDeadline(), task.getPriority(),
+                task.isCompleted(), task.getEstimatedTimeMinutes(), task.getEnergyCost(), task.getType(),
+                idOf(task.getProject()), idOf(task.getLifeSphere())
+        };
+    }
+
+    // Архивируются только выполненные задачи
+    private Object[] toRow(ArchivedTask task) {
+        return new Object[]{
+                "task", task.getId(), null, null,
+                task.getTitle(), task.getDescription(), task.getDeadline(), task.getPriority(),
+                true, task.getEstimatedTimeMinutes(), task.getEnergyCost(), task.getType(),
+                task.getProjectId(), task.getLifeSphereId()
+        };
+    }
+
+    // ID связанной сущности берется из прокси без его инициализации
+    private static Long idOf(Project project) {
+        return project != null ? project.getId() : null;
+    }
+
+    private static Long idOf(LifeSphere lifeSphere) {
+        return lifeSphere != null ? lifeSphere.getId() : null;
+    }
+
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void write(Object[] row) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            writer.write(String.join(",", COLUMNS));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            for (int i = 0; i < row.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (row[i] != null) {
+                    writeValue(row[i].toString());
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        // Экранирование значения по RFC 4180
+        private void writeValue(String value) throws IOException {
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+
+        private final Writer writer;
+        private JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            generator = objectMapper.getFactory().createGenerator(writer);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // flush() генератора только переносит строку в буфер writer; в сеть она уходит раз в FLUSH_INTERVAL строк
+            generator.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        }
+
+        @Override
+        public void write(Object[] row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < row.length; i++) {
+                Object value = row[i];
+                if (value == null) {
+                    continue;
+                }
+                generator.writeFieldName(COLUMNS[i]);
+                if (value instanceof Number number) {
+                    generator.writeNumber(number.longValue());
+                } else if (value instanceof Boolean bool) {
+                    generator.writeBoolean(bool);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndObject();
+            generator.flush();
+            writer.write('\n');
+        }
+
+        @Override
+        public void end() throws IOException {
+            generator.close();
+        }
+    }
+}
\ No newline at end of file
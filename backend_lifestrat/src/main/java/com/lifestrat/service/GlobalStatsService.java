@@ -0,0 +1,312 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardingProperties;
+import com.lifestrat.entity.GlobalStatsRun;
+import com.lifestrat.repository.GlobalStatsRunRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Глобальная статистика по всем пользователям: доля выполненных задач, распределение времени
+ * по сферам и гистограмма максимальных серий.
+ * Пользователи делятся на диапазоны ID, которые обрабатываются на ForkJoinPool; каждый диапазон
+ * читается потоком строк в примитивные счетчики и сразу записывается в global_stats_entries,
+ * поэтому в памяти одновременно находятся только счетчики обрабатываемых диапазонов.
+ * Прерванный запуск продолжается с диапазонов, которых еще нет в таблице, с той же шириной диапазона;
+ * новая настройка partition-size применяется со следующего запуска.
+ */
+@Service
+@Slf4j
+public class GlobalStatsService {
+
+    // Живые задачи и архив вместе; шаблоны ритуалов не считаются
+    private static final String SCAN_PARTITION_SQL = """
+            SELECT t.user_id, t.completed, t.deadline, t.estimated_time_minutes, s.name
+            FROM tasks t LEFT JOIN life_spheres s ON s.id = t.life_sphere_id
+            WHERE t.user_id BETWEEN ? AND ? AND t.recurrence IS NULL
+            UNION ALL
+            SELECT a.user_id, TRUE, a.deadline, a.estimated_time_minutes, s.name
+            FROM archived_tasks a LEFT JOIN life_spheres s ON s.id = a.life_sphere_id
+            WHERE a.user_id BETWEEN ? AND ?
+            ORDER BY 1, 3
+            """;
+
+    private static final String USER_RANGE_SQL = "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM users";
+
+    private static final String DONE_PARTITIONS_SQL =
+            "SELECT DISTINCT shard, partition_from FROM global_stats_entries WHERE run_id = ? AND partition_from >= 0";
+
+    private static final String INSERT_ENTRY_SQL = """
+            INSERT INTO global_stats_entries (run_id, shard, partition_from, metric, dimension, metric_value)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String MERGE_TOTALS_SQL = """
+            INSERT INTO global_stats_entries (run_id, shard, partition_from, metric, dimension, metric_value)
+            SELECT run_id, -1, -1, metric, dimension, SUM(metric_value)
+            FROM global_stats_entries
+            WHERE run_id = ? AND partition_from >= 0
+            GROUP BY run_id, metric, dimension
+            """;
+
+    private static final int FETCH_SIZE = 1000;
+    private static final int STREAK_BUCKETS = 16;
+
+    // Отчет хранится в базе по умолчанию (шард 0)
+    private static final int REPORT_SHARD = 0;
+
+    private record Partition(int shard, long fromUserId, long toUserId) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final GlobalStatsRunRepository runRepository;
+    private final ShardingProperties shardingProperties;
+    private final ForkJoinPool pool;
+    private final long partitionSize;
+    private final ReentrantLock running = new ReentrantLock();
+
+    @Autowired
+    public GlobalStatsService(DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              GlobalStatsRunRepository runRepository,
+                              ShardingProperties shardingProperties,
+                              @Value("${lifestrat.global-stats.partition-size:10000}") long partitionSize,
+                              @Value("${lifestrat.global-stats.parallelism:4}") int parallelism) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.runRepository = runRepository;
+        this.shardingProperties = shardingProperties;
+        this.partitionSize = partitionSize;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    @Scheduled(cron = "${lifestrat.global-stats.cron:0 0 3 * * SUN}")
+    public void runScheduled() {
+        run();
+    }
+
+    // Продолжить запуск, прерванный остановкой приложения
+    @Scheduled(initialDelayString = "${lifestrat.global-stats.resume-check-ms:600000}",
+            fixedDelayString = "${lifestrat.global-stats.resume-check-ms:600000}")
+    public void resumeInterrupted() {
+        boolean interrupted = ShardContext.callOnShard(REPORT_SHARD,
+                () -> runRepository.findFirstByFinishedAtIsNullOrderByIdDesc().isPresent());
+        if (interrupted && !running.isLocked()) {
+            log.info("Resuming interrupted global stats run");
+            run();
+        }
+    }
+
+    // Посчитать статистику; возвращает число просмотренных задач (0, если расчет уже идет)
+    public long run() {
+        if (!running.tryLock()) {
+            log.warn("Global stats run is already in progress");
+            return 0;
+        }
+        try {
+            return ShardContext.callOnShard(REPORT_SHARD, this::runLocked);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private long runLocked() {
+        // Прерванный запуск продолжается со своей шириной диапазона, даже если настройка с тех пор изменилась:
+        // иначе он остался бы незавершенным и resumeInterrupted пересчитывал бы все заново при каждой проверке
+        GlobalStatsRun run = runRepository.findFirstByFinishedAtIsNullOrderByIdDesc()
+                .orElseGet(() -> runRepository.save(
+                        new GlobalStatsRun(null, partitionSize, LocalDateTime.now(), null)));
+        long runPartitionSize = run.getPartitionSize();
+
+        Set<String> done = new HashSet<>(jdbcTemplate.query(DONE_PARTITIONS_SQL,
+                (rs, rowNum) -> rs.getInt("shard") + ":" + rs.getLong("partition_from"), run.getId()));
+        List<Partition> pending = new ArrayList<>();
+        for (int shard : shardingProperties.shardIndexes()) {
+            Map<String, Object> range = ShardContext.callOnShard(shard, () -> jdbcTemplate.queryForMap(USER_RANGE_SQL));
+            if (range.get("min_id") == null) {
+                continue;
+            }
+            // Границы диапазонов кратны ширине диапазона запуска и не зависят от текущих MIN/MAX: при продолжении
+            // запуска после новых регистраций или удалений диапазоны совпадают с уже посчитанными
+            long minUserId = ((Number) range.get("min_id")).longValue();
+            long maxUserId = ((Number) range.get("max_id")).longValue();
+            for (long from = Math.floorDiv(minUserId, runPartitionSize) * runPartitionSize; from <= maxUserId;
+                 from += runPartitionSize) {
+                if (!done.contains(shard + ":" + from)) {
+                    pending.add(new Partition(shard, from, from + runPartitionSize - 1));
+                }
+            }
+        }
+        log.info("Global stats run ID: {} started. Partitions done: {}, pending: {}",
+                run.getId(), done.size(), pending.size());
+
+        long scanned = pending.isEmpty() ? 0 : pool.invoke(new PartitionTask(run.getId(), pending));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM global_stats_entries WHERE run_id = ? AND partition_from < 0", run.getId());
+            jdbcTemplate.update(MERGE_TOTALS_SQL, run.getId());
+            run.setFinishedAt(LocalDateTime.now());
+            runRepository.save(run);
+        });
+        log.info("Global stats run ID: {} finished. Tasks scanned: {}", run.getId(), scanned);
+        return scanned;
+    }
+
+    // Делит список диапазонов пополам, пока не останется один диапазон
+    private final class PartitionTask extends RecursiveTask<Long> {
+
+        private final long runId;
+        private final List<Partition> partitions;
+
+        PartitionTask(long runId, List<Partition> partitions) {
+            this.runId = runId;
+            this.partitions = partitions;
+        }
+
+        @Override
+        protected Long compute() {
+            if (partitions.size() == 1) {
+                return processPartition(runId, partitions.get(0));
+            }
+            int middle = partitions.size() / 2;
+            PartitionTask left = new PartitionTask(runId, partitions.subList(0, middle));
+            PartitionTask right = new PartitionTask(runId, partitions.subList(middle, partitions.size()));
+            left.fork();
+            return right.compute() + left.join();
+        }
+    }
+
+    private long processPartition(long runId, Partition partition) {
+        PartitionStats stats = new PartitionStats();
+        ShardContext.runOnShard(partition.shard(), () -> jdbcTemplate.query(SCAN_PARTITION_SQL, stats::accept,
+                partition.fromUserId(), partition.toUserId(), partition.fromUserId(), partition.toUserId()));
+        stats.finishUser();
+
+        // Счетчики диапазона записываются одной транзакцией: диапазон либо учтен целиком, либо будет пересчитан
+        List<Object[]> rows = stats.toRows(runId, partition);
+        ShardContext.runOnShard(REPORT_SHARD, () -> transactionTemplate.executeWithoutResult(
+                status -> jdbcTemplate.batchUpdate(INSERT_ENTRY_SQL, rows)));
+
+        log.debug("Global stats partition shard {} [{}, {}]: {} tasks of {} users",
+                partition.shard(), partition.fromUserId(), partition.toUserId(), stats.tasksTotal, stats.users);
+        return stats.tasksTotal;
+    }
+
+    // Примитивные счетчики одного диапазона; строки приходят упорядоченными по пользователю и дате
+    private static final class PartitionStats {
+
+        long users;
+        long tasksTotal;
+        long tasksCompleted;
+        long minutesPlanned;
+        long minutesCompleted;
+        final long[] maxStreakBuckets = new long[STREAK_BUCKETS];
+        final Map<String, long[]> sphereMinutes = new HashMap<>();
+
+        private long currentUserId = -1;
+        private long lastCompletedDay = Long.MIN_VALUE;
+        private long currentStreak;
+        private long maxStreak;
+
+        void accept(ResultSet rs) throws SQLException {
+            long userId = rs.getLong(1);
+            if (userId != currentUserId) {
+                finishUser();
+                currentUserId = userId;
+                users++;
+            }
+
+            int minutes = rs.getInt(4);
+            tasksTotal++;
+            minutesPlanned += minutes;
+            if (!rs.getBoolean(2)) {
+                return;
+            }
+
+            tasksCompleted++;
+            minutesCompleted += minutes;
+            String sphere = rs.getString(5);
+            sphereMinutes.computeIfAbsent(sphere != null ? sphere : "", name -> new long[1])[0] += minutes;
+
+            long day = rs.getDate(3).toLocalDate().toEpochDay();
+            if (day != lastCompletedDay) {
+                currentStreak = day == lastCompletedDay + 1 ? currentStreak + 1 : 1;
+                maxStreak = Math.max(maxStreak, currentStreak);
+                lastCompletedDay = day;
+            }
+        }
+
+        void finishUser() {
+            if (currentUserId != -1) {
+                maxStreakBuckets[Math.min(bucketOf(maxStreak), STREAK_BUCKETS - 1)]++;
+            }
+            lastCompletedDay = Long.MIN_VALUE;
+            currentStreak = 0;
+            maxStreak = 0;
+        }
+
+        List<Object[]> toRows(long runId, Partition partition) {
+            List<Object[]> rows = new ArrayList<>();
+            // users пишется всегда: по нему диапазон считается обработанным
+            rows.add(row(runId, partition, "users", "", users));
+            rows.add(row(runId, partition, "tasks_total", "", tasksTotal));
+            rows.add(row(runId, partition, "tasks_completed", "", tasksCompleted));
+            rows.add(row(runId, partition, "minutes_planned", "", minutesPlanned));
+            rows.add(row(runId, partition, "minutes_completed", "", minutesCompleted));
+            sphereMinutes.forEach((sphere, minutes) ->
+                    rows.add(row(runId, partition, "sphere_minutes_completed", sphere, minutes[0])));
+            for (int bucket = 0; bucket < STREAK_BUCKETS; bucket++) {
+                if (maxStreakBuckets[bucket] > 0) {
+                    rows.add(row(runId, partition, "max_streak_days", bucketLabel(bucket), maxStreakBuckets[bucket]));
+                }
+            }
+            return rows;
+        }
+
+        private static Object[] row(long runId, Partition partition, String metric, String dimension, long value) {
+            return new Object[]{runId, partition.shard(), partition.fromUserId(), metric, dimension, value};
+        }
+
+        // Корзины по степеням двойки: 0, 1, 2-3, 4-7, ...
+        private static int bucketOf(long streak) {
+            return 64 - Long.numberOfLeadingZeros(streak);
+        }
+
+        private static String bucketLabel(int bucket) {
+            if (bucket <= 1) {
+                return String.valueOf(bucket);
+            }
+            long from = 1L << (bucket - 1);
+            return bucket == STREAK_BUCKETS - 1 ? from + "+" : from + "-" + ((from << 1) - 1);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
\ No newline at end of file
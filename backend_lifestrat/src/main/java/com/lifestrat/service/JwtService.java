@@ -33,6 +33,11 @@ public class JwtService {
         return createToken(claims, username);
     }
 
+    // Время жизни выдаваемых токенов в миллисекундах
+    public long getExpirationTime() {
+        return expirationTime;
+    }
+
     // Создать токен с claims и subject
     private String createToken(Map<String, Object> claims, String subject) {
         Date now = new Date();
@@ -46,7 +51,7 @@ public class JwtService {
                 .signWith(getSignKey(), SignatureAlgorithm.HS256)
                 .compact();
 
-        log.info("JWT token generated successfully for subject: {}", subject);
+        log.atInfo().setMessage("JWT token generated").addKeyValue("subject", subject).log();
         return token;
     }
 
@@ -1,13 +1,24 @@
 package com.lifestrat.service;
 
+import com.lifestrat.dto.LifeSpherePatchRequest;
+import com.lifestrat.entity.EntityKind;
 import com.lifestrat.entity.LifeSphere;
 import com.lifestrat.entity.User;
+import com.lifestrat.event.DataChangedEvent;
 import com.lifestrat.repository.LifeSphereRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -18,10 +29,19 @@ import java.util.Optional;
 public class LifeSphereService {
 
     private final LifeSphereRepository lifeSphereRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EntityManager entityManager;
+    private final CascadeDeleteService cascadeDeleteService;
 
     @Autowired
-    public LifeSphereService(LifeSphereRepository lifeSphereRepository) {
+    public LifeSphereService(LifeSphereRepository lifeSphereRepository,
+                             ApplicationEventPublisher eventPublisher,
+                             EntityManager entityManager,
+                             CascadeDeleteService cascadeDeleteService) {
         this.lifeSphereRepository = lifeSphereRepository;
+        this.eventPublisher = eventPublisher;
+        this.entityManager = entityManager;
+        this.cascadeDeleteService = cascadeDeleteService;
     }
 
     // Получить все сферы жизни пользователя
@@ -59,7 +79,9 @@ public class LifeSphereService {
         }
 
         LifeSphere savedSphere = lifeSphereRepository.save(lifeSphere);
-        log.info("Life sphere created successfully with ID: {} for user ID: {}", savedSphere.getId(), userId);
+        publishChange(userId, savedSphere.getId());
+        log.atInfo().setMessage("Life sphere created").addKeyValue("sphereId", savedSphere.getId())
+                .addKeyValue("userId", userId).log();
         return savedSphere;
     }
 
@@ -67,20 +89,79 @@ public class LifeSphereService {
     public LifeSphere update(LifeSphere lifeSphereFromDb, LifeSphere lifeSphereFromRequest) {
         log.debug("Updating life sphere ID: {}", lifeSphereFromDb.getId());
 
+        // Без версии изменение другого клиента было бы молча перезаписано
+        if (lifeSphereFromRequest.getVersion() == null) {
+            throw new IllegalArgumentException("Life sphere version is required for update");
+        }
+
+        // Клиент редактировал устаревшую версию сферы
+        if (!lifeSphereFromRequest.getVersion().equals(lifeSphereFromDb.getVersion())) {
+            log.warn("Life sphere version conflict - Sphere ID: {}, expected version: {}, actual: {}",
+                    lifeSphereFromDb.getId(), lifeSphereFromRequest.getVersion(), lifeSphereFromDb.getVersion());
+            throw new ObjectOptimisticLockingFailureException(LifeSphere.class, lifeSphereFromDb.getId());
+        }
+
         // Копируем все поля из lifeSphereFromRequest в lifeSphereFromDb
         lifeSphereFromDb.setName(lifeSphereFromRequest.getName());
         lifeSphereFromDb.setColor(lifeSphereFromRequest.getColor());
 
         LifeSphere updatedSphere = lifeSphereRepository.save(lifeSphereFromDb);
-        log.info("Life sphere updated successfully with ID: {}", updatedSphere.getId());
+        publishChange(updatedSphere.getUser().getId(), updatedSphere.getId());
+        log.atInfo().setMessage("Life sphere updated").addKeyValue("sphereId", updatedSphere.getId()).log();
         return updatedSphere;
     }
 
-    // Удалить сферу жизни
+    // Частично обновить сферу одним условным UPDATE только по переданным полям
+    public LifeSphere patch(Long sphereId, Long userId, LifeSpherePatchRequest patch) {
+        log.debug("Patching life sphere ID: {} for user ID: {}, expected version: {}", sphereId, userId, patch.version());
+
+        if (patch.version() == null) {
+            throw new IllegalArgumentException("Life sphere version is required for partial update");
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<LifeSphere> update = cb.createCriteriaUpdate(LifeSphere.class);
+        Root<LifeSphere> root = update.from(LifeSphere.class);
+
+        if (patch.name() != null) {
+            update.set(root.get("name"), patch.name());
+        }
+        if (patch.color() != null) {
+            update.set(root.get("color"), patch.color());
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.<Long>get("version"), 1L));
+        update.set(root.get("updatedAt"), LocalDateTime.now());
+        update.where(cb.equal(root.get("id"), sphereId),
+                cb.equal(root.get("user").get("id"), userId),
+                cb.equal(root.get("version"), patch.version()));
+
+        entityManager.flush();
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+
+        if (updated == 0) {
+            if (!lifeSphereRepository.existsByIdAndUserId(sphereId, userId)) {
+                log.error("Life sphere not found or access denied - Sphere ID: {}, User ID: {}", sphereId, userId);
+                throw new RuntimeException("Life sphere not found or access denied");
+            }
+            log.warn("Life sphere version conflict - Sphere ID: {}, expected version: {}", sphereId, patch.version());
+            throw new ObjectOptimisticLockingFailureException(LifeSphere.class, sphereId);
+        }
+
+        LifeSphere patchedSphere = lifeSphereRepository.findById(sphereId).orElseThrow();
+        publishChange(userId, sphereId);
+        log.atInfo().setMessage("Life sphere patched").addKeyValue("sphereId", sphereId)
+                .addKeyValue("version", patchedSphere.getVersion()).log();
+        return patchedSphere;
+    }
+
+    // Удалить сферу жизни вместе с ее проектами и задачами; пачки удаления коммитятся по отдельности, поэтому без общей транзакции
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void delete(LifeSphere lifeSphere) {
         log.debug("Deleting life sphere ID: {}", lifeSphere.getId());
-        lifeSphereRepository.delete(lifeSphere);
-        log.info("Life sphere deleted successfully with ID: {}", lifeSphere.getId());
+        Long userId = lifeSphere.getUser().getId();
+        cascadeDeleteService.deleteLifeSphere(userId, lifeSphere.getId());
+        log.atInfo().setMessage("Life sphere deleted").addKeyValue("sphereId", lifeSphere.getId()).log();
     }
 
     // Создать стандартные сферы жизни для нового пользователя
@@ -97,7 +178,9 @@ public class LifeSphereService {
         );
 
         List<LifeSphere> savedSpheres = lifeSphereRepository.saveAll(defaultSpheres);
-        log.info("Created {} default life spheres for user ID: {}", savedSpheres.size(), user.getId());
+        savedSpheres.forEach(sphere -> publishChange(user.getId(), sphere.getId()));
+        log.atInfo().setMessage("Default life spheres created").addKeyValue("userId", user.getId())
+                .addKeyValue("spheres", savedSpheres.size()).log();
         return savedSpheres;
     }
 
@@ -117,4 +200,9 @@ public class LifeSphereService {
                 .filter(sphere -> sphere.getName().equalsIgnoreCase(name))
                 .findFirst();
     }
+
+    // Опубликовать событие об изменении сферы (обрабатывается после коммита)
+    private void publishChange(Long userId, Long sphereId) {
+        eventPublisher.publishEvent(new DataChangedEvent(userId, EntityKind.LIFE_SPHERE, sphereId, false));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardingProperties;
+import com.lifestrat.entity.JobWatermark;
+import com.lifestrat.repository.JobWatermarkRepository;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Ночной обход просроченных задач и проектов по индексу дедлайнов.
+ * Дни обходятся по конкретной дате дедлайна; строки дня отмечаются пачками по chunkSize в порядке ID,
+ * каждая пачка в своей транзакции, поэтому блокировки держатся только на пользователей одной пачки.
+ * После всех пачек дня сдвигается watermark, поэтому повторный запуск не трогает уже обработанные дни.
+ * Отмеченные строки получают новую версию и запись в журнале изменений, как при записи через сервисы,
+ * чтобы клиенты дельта-синхронизации узнали о просрочке.
+ */
+@Service
+@Slf4j
+public class OverdueSweepService {
+
+    static final String JOB_NAME = "overdue-sweep";
+
+    private static final String OVERDUE_TASKS_SCOPE =
+            "deadline = :deadline AND completed = FALSE AND overdue = FALSE AND recurrence IS NULL";
+
+    private static final String OVERDUE_PROJECTS_SCOPE = "deadline = :deadline AND overdue = FALSE";
+
+    private static final String CANDIDATES_SQL =
+            "SELECT id, user_id FROM %s WHERE %s AND id > :afterId ORDER BY id LIMIT :limit";
+
+    // Как в ChangeLogService.record: номера записей журнала должны расти в порядке коммитов.
+    // Пользователи блокируются раньше строк и по возрастанию ID — в том же порядке, что и при архивации
+    private static final String LOCK_USERS_SQL = "SELECT id FROM users WHERE id IN (:userIds) ORDER BY id FOR UPDATE";
+
+    private static final String MARK_OVERDUE_SQL =
+            "UPDATE %s SET overdue = TRUE, version = version + 1, updated_at = CURRENT_TIMESTAMP WHERE id IN (:ids)";
+
+    // Последняя запись журнала о сущности заменяется новой с большим номером
+    private static final String DELETE_CHANGES_SQL =
+            "DELETE FROM change_log WHERE entity_kind = :kind AND entity_id IN (:ids)";
+
+    private static final String RECORD_CHANGES_SQL = """
+            INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at)
+            SELECT e.user_id, :kind, e.id, FALSE, CURRENT_TIMESTAMP
+            FROM %s e
+            WHERE e.id IN (:ids)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TaskRepository taskRepository;
+    private final ProjectRepository projectRepository;
+    private final JobWatermarkRepository watermarkRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardingProperties shardingProperties;
+    private final int chunkSize;
+
+    @Autowired
+    public OverdueSweepService(NamedParameterJdbcTemplate jdbcTemplate,
+                               TaskRepository taskRepository,
+                               ProjectRepository projectRepository,
+                               JobWatermarkRepository watermarkRepository,
+                               PlatformTransactionManager transactionManager,
+                               ShardingProperties shardingProperties,
+                               @Value("${lifestrat.overdue.chunk-size:1000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.taskRepository = taskRepository;
+        this.projectRepository = projectRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardingProperties = shardingProperties;
+        this.chunkSize = chunkSize;
+    }
+
+    @Scheduled(cron = "${lifestrat.overdue.cron:0 10 0 * * *}")
+    public void sweepScheduled() {
+        sweep(LocalDate.now());
+    }
+
+    // Отметить просроченными все задачи и проекты с дедлайном раньше today
+    public synchronized long sweep(LocalDate today) {
+        long flagged = 0;
+        for (int shard : shardingProperties.shardIndexes()) {
+            flagged += ShardContext.callOnShard(shard, () -> sweepShard(today));
+        }
+
+        log.info("Overdue sweep finished up to {}. Newly flagged items: {}", today, flagged);
+        return flagged;
+    }
+
+    // У каждого шарда свой watermark
+    private long sweepShard(LocalDate today) {
+        LocalDate from = watermarkRepository.findById(JOB_NAME)
+                .map(watermark -> watermark.getLastProcessedDate().plusDays(1))
+                .or(this::findEarliestPendingDeadline)
+                .orElse(today);
+
+        long flagged = 0;
+        // Дни обходятся в порядке дедлайнов; watermark сдвигается только после всех пачек дня.
+        // Прерванный день обходится заново: уже отмеченные строки не попадают в условие
+        for (LocalDate day = from; day.isBefore(today); day = day.plusDays(1)) {
+            LocalDate deadline = day;
+            flagged += markOverdue("tasks", "TASK", OVERDUE_TASKS_SCOPE, deadline)
+                    + markOverdue("projects", "PROJECT", OVERDUE_PROJECTS_SCOPE, deadline);
+            transactionTemplate.executeWithoutResult(
+                    status -> watermarkRepository.save(new JobWatermark(JOB_NAME, deadline)));
+        }
+        return flagged;
+    }
+
+    // Отметить строки table с дедлайном deadline пачками по chunkSize в порядке ID
+    private int markOverdue(String table, String kind, String scope, LocalDate deadline) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("deadline", Date.valueOf(deadline))
+                .addValue("kind", kind)
+                .addValue("limit", chunkSize)
+                .addValue("afterId", 0L);
+        String candidatesSql = CANDIDATES_SQL.formatted(table, scope);
+
+        int flagged = 0;
+        List<long[]> candidates;
+        do {
+            candidates = jdbcTemplate.query(candidatesSql, params, OverdueSweepService::idAndUserId);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            List<long[]> chunk = candidates;
+            Integer count = transactionTemplate.execute(status -> markChunk(table, scope, chunk, params));
+            flagged += count != null ? count : 0;
+            params.addValue("afterId", chunk.get(chunk.size() - 1)[0]);
+        } while (candidates.size() == chunkSize);
+        return flagged;
+    }
+
+    // Отметить одну пачку и записать ее строки в журнал изменений
+    private int markChunk(String table, String scope, List<long[]> candidates, MapSqlParameterSource scopeParams) {
+        List<Long> userIds = candidates.stream()
+                .map(row -> row[1])
+                .distinct()
+                .toList();
+        jdbcTemplate.queryForList(LOCK_USERS_SQL, new MapSqlParameterSource("userIds", userIds), Long.class);
+
+        // Строка могла измениться между выбором кандидатов и блокировкой пользователей — условие проверяется повторно
+        MapSqlParameterSource params = new MapSqlParameterSource(scopeParams.getValues())
+                .addValue("ids", candidates.stream().map(row -> row[0]).toList());
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM " + table + " WHERE id IN (:ids) AND " + scope + " FOR UPDATE", params, Long.class);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        params.addValue("ids", ids);
+        jdbcTemplate.update(MARK_OVERDUE_SQL.formatted(table), params);
+        jdbcTemplate.update(DELETE_CHANGES_SQL, params);
+        jdbcTemplate.update(RECORD_CHANGES_SQL.formatted(table), params);
+        return ids.size();
+    }
+
+    private static long[] idAndUserId(ResultSet rs, int rowNum) throws SQLException {
+        return new long[]{rs.getLong("id"), rs.getLong("user_id")};
+    }
+
+    // Первый запуск начинается с самого раннего дедлайна среди еще не отмеченных записей
+    private Optional<LocalDate> findEarliestPendingDeadline() {
+        return Stream.of(taskRepository.findEarliestNotOverdueDeadline(),
+                        projectRepository.findEarliestNotOverdueDeadline())
+                .flatMap(Optional::stream)
+                .min(LocalDate::compareTo);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,295 @@
+package com.lifestrat.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Граф зависимостей шагов одного проекта для расчета критического пути.
+ * Вершины хранятся в массивах по внутреннему индексу, для них поддерживается
+ * топологический порядок (алгоритм Пирса–Келли) и самое раннее время окончания.
+ * Добавление ребра переупорядочивает только вершины между его концами и заодно находит цикл,
+ * а изменение длительности или ребра пересчитывает время окончания только у затронутых потомков.
+ * Класс не потокобезопасен: вызывающий синхронизируется на экземпляре графа.
+ */
+final class ProjectGraph {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int[] NO_EDGES = new int[0];
+
+    record Schedule(long remainingMinutes, List<Long> criticalPath) {
+    }
+
+    private final Map<Long, Integer> nodeByTask = new HashMap<>();
+    private long[] taskIds = new long[INITIAL_CAPACITY];
+    private int[] duration = new int[INITIAL_CAPACITY];
+    private long[] versions = new long[INITIAL_CAPACITY]; // Версия задачи, из которой взята длительность
+    private long[] finish = new long[INITIAL_CAPACITY]; // Самое раннее окончание с учетом предшественников
+    private int[] order = new int[INITIAL_CAPACITY]; // Позиция вершины в топологическом порядке
+    private int[][] successors = new int[INITIAL_CAPACITY][];
+    private int[] successorCount = new int[INITIAL_CAPACITY];
+    private int[][] predecessors = new int[INITIAL_CAPACITY][];
+    private int[] predecessorCount = new int[INITIAL_CAPACITY];
+    private int[] visitMark = new int[INITIAL_CAPACITY];
+    private int visitEpoch;
+    private int size;
+
+    boolean contains(Long taskId) {
+        return nodeByTask.containsKey(taskId);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Добавить шаг или обновить его длительность; выполненный шаг имеет нулевую длительность.
+    // Изменения применяются после коммита в произвольном порядке, поэтому более старая версия игнорируется
+    void putTask(Long taskId, int minutes, long version) {
+        Integer node = nodeByTask.get(taskId);
+        if (node != null) {
+            if (version < versions[node]) {
+                return;
+            }
+            versions[node] = version;
+            if (duration[node] != minutes) {
+                duration[node] = minutes;
+                propagateFrom(node);
+            }
+            return;
+        }
+
+        ensureCapacity(size + 1);
+        int added = size++;
+        nodeByTask.put(taskId, added);
+        taskIds[added] = taskId;
+        duration[added] = minutes;
+        versions[added] = version;
+        finish[added] = minutes;
+        order[added] = added; // Новая вершина без ребер встает в конец порядка
+        successors[added] = NO_EDGES;
+        predecessors[added] = NO_EDGES;
+    }
+
+    // Добавить ребро dependsOn -> task; false, если ребро замкнуло бы цикл
+    boolean addDependency(Long taskId, Long dependsOnId) {
+        int to = nodeByTask.get(taskId);
+        int from = nodeByTask.get(dependsOnId);
+        if (from == to) {
+            return false;
+        }
+        if (indexOf(successors[from], successorCount[from], to) >= 0) {
+            return true;
+        }
+
+        if (order[to] < order[from] && !reorder(from, to)) {
+            return false;
+        }
+
+        successors[from] = append(successors[from], successorCount[from]++, to);
+        predecessors[to] = append(predecessors[to], predecessorCount[to]++, from);
+        propagateFrom(to);
+        return true;
+    }
+
+    // Удалить ребро dependsOn -> task; топологический порядок при этом остается верным
+    void removeDependency(Long taskId, Long dependsOnId) {
+        Integer to = nodeByTask.get(taskId);
+        Integer from = nodeByTask.get(dependsOnId);
+        if (to == null || from == null) {
+            return;
+        }
+        if (remove(successors[from], successorCount[from], to)) {
+            successorCount[from]--;
+            remove(predecessors[to], predecessorCount[to]--, from);
+            propagateFrom(to);
+        }
+    }
+
+    // Оставшаяся длина критического пути и его невыполненные шаги от первого к последнему
+    Schedule schedule() {
+        int last = -1;
+        for (int node = 0; node < size; node++) {
+            if (last < 0 || finish[node] > finish[last]) {
+                last = node;
+            }
+        }
+        if (last < 0 || finish[last] == 0) {
+            return new Schedule(0, List.of());
+        }
+
+        List<Long> path = new ArrayList<>();
+        int node = last;
+        while (node >= 0) {
+            if (duration[node] > 0) {
+                path.add(taskIds[node]);
+            }
+            long start = finish[node] - duration[node];
+            int previous = -1;
+            if (start > 0) {
+                for (int i = 0; i < predecessorCount[node]; i++) {
+                    int candidate = predecessors[node][i];
+                    if (finish[candidate] == start) {
+                        previous = candidate;
+                        break;
+                    }
+                }
+            }
+            node = previous;
+        }
+        Collections.reverse(path);
+        return new Schedule(finish[last], path);
+    }
+
+    /*
+     * Ребро from -> to нарушает порядок (order[to] < order[from]). Ищем вперед от to вершины
+     * с позицией не дальше from (если среди них from — это цикл) и назад от from вершины
+     * с позицией не раньше to, затем раздаем их позиции: сначала предкам from, потом потомкам to.
+     */
+    private boolean reorder(int from, int to) {
+        int lowerBound = order[to];
+        int upperBound = order[from];
+
+        int forwardMark = ++visitEpoch;
+        int[] forward = collect(to, successors, successorCount, forwardMark, from, lowerBound, upperBound);
+        if (forward == null) {
+            return false;
+        }
+        int backwardMark = ++visitEpoch;
+        int[] backward = collect(from, predecessors, predecessorCount, backwardMark, -1, lowerBound, upperBound);
+
+        sortByOrder(forward);
+        sortByOrder(backward);
+        int[] positions = new int[forward.length + backward.length];
+        for (int i = 0; i < backward.length; i++) {
+            positions[i] = order[backward[i]];
+        }
+        for (int i = 0; i < forward.length; i++) {
+            positions[backward.length + i] = order[forward[i]];
+        }
+        Arrays.sort(positions);
+
+        for (int i = 0; i < backward.length; i++) {
+            order[backward[i]] = positions[i];
+        }
+        for (int i = 0; i < forward.length; i++) {
+            order[forward[i]] = positions[backward.length + i];
+        }
+        return true;
+    }
+
+    // Обход в глубину в пределах [lowerBound, upperBound]; null, если достигнута вершина cycleTarget
+    private int[] collect(int start, int[][] edges, int[] edgeCount, int mark,
+                          int cycleTarget, int lowerBound, int upperBound) {
+        int[] stack = new int[INITIAL_CAPACITY];
+        int[] visited = new int[INITIAL_CAPACITY];
+        int stackSize = 0;
+        int visitedCount = 0;
+
+        stack[stackSize++] = start;
+        visitMark[start] = mark;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            visited = append(visited, visitedCount++, node);
+            for (int i = 0; i < edgeCount[node]; i++) {
+                int next = edges[node][i];
+                if (next == cycleTarget) {
+                    return null;
+                }
+                if (visitMark[next] != mark && order[next] >= lowerBound && order[next] <= upperBound) {
+                    visitMark[next] = mark;
+                    stack = append(stack, stackSize++, next);
+                }
+            }
+        }
+        return Arrays.copyOf(visited, visitedCount);
+    }
+
+    // Пересчитать время окончания от вершины вниз по графу в топологическом порядке
+    private void propagateFrom(int start) {
+        int mark = ++visitEpoch;
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> Integer.compare(order[a], order[b]));
+        queue.add(start);
+        visitMark[start] = mark;
+
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            visitMark[node] = mark - 1; // Вершину можно снова поставить в очередь, если изменится ее предок
+            long earliestStart = 0;
+            for (int i = 0; i < predecessorCount[node]; i++) {
+                earliestStart = Math.max(earliestStart, finish[predecessors[node][i]]);
+            }
+            long updated = earliestStart + duration[node];
+            if (updated == finish[node] && node != start) {
+                continue;
+            }
+            finish[node] = updated;
+            for (int i = 0; i < successorCount[node]; i++) {
+                int next = successors[node][i];
+                if (visitMark[next] != mark) {
+                    visitMark[next] = mark;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    private void sortByOrder(int[] nodes) {
+        // Сортировка по позиции через упаковку (позиция, вершина) в long
+        long[] keyed = new long[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            keyed[i] = ((long) order[nodes[i]] << 32) | nodes[i];
+        }
+        Arrays.sort(keyed);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = (int) keyed[i];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= taskIds.length) {
+            return;
+        }
+        int grown = Math.max(capacity, taskIds.length * 2);
+        taskIds = Arrays.copyOf(taskIds, grown);
+        duration = Arrays.copyOf(duration, grown);
+        versions = Arrays.copyOf(versions, grown);
+        finish = Arrays.copyOf(finish, grown);
+        order = Arrays.copyOf(order, grown);
+        successors = Arrays.copyOf(successors, grown);
+        successorCount = Arrays.copyOf(successorCount, grown);
+        predecessors = Arrays.copyOf(predecessors, grown);
+        predecessorCount = Arrays.copyOf(predecessorCount, grown);
+        visitMark = Arrays.copyOf(visitMark, grown);
+    }
+
+    private static int[] append(int[] array, int length, int value) {
+        if (length == array.length) {
+            array = Arrays.copyOf(array, Math.max(4, length * 2));
+        }
+        array[length] = value;
+        return array;
+    }
+
+    private static int indexOf(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Удалить значение, переставив на его место последний элемент
+    private static boolean remove(int[] array, int length, int value) {
+        int index = indexOf(array, length, value);
+        if (index < 0) {
+            return false;
+        }
+        array[index] = array[length - 1];
+        return true;
+    }
+}
\ No newline at end of file
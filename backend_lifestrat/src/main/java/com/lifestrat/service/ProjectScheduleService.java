@@ -0,0 +1,192 @@
+package com.lifestrat.service;
+
+import com.lifestrat.dto.ProjectScheduleDto;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskDependency;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskDependencyRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+
+/**
+ * Зависимости между шагами проекта, критический путь и прогноз даты завершения.
+ * Графы недавно запрошенных проектов держатся в памяти и обновляются точечно:
+ * выполнение или изменение оценки шага пересчитывает только его потомков.
+ * Длительности меняются после коммита, а ребра добавляются внутри транзакции под блокировкой
+ * строки проекта, чтобы следующая вставка проверяла цикл уже с учетом предыдущей.
+ */
+@Service
+@Transactional
+@Slf4j
+public class ProjectScheduleService {
+
+    private final TaskRepository taskRepository;
+    private final ProjectRepository projectRepository;
+    private final TaskDependencyRepository dependencyRepository;
+    private final int workMinutesPerDay;
+    private final AfterCommitCache<Long, ProjectGraph> graphs; // Графы по ID проекта
+
+    @Autowired
+    public ProjectScheduleService(TaskRepository taskRepository,
+                                  ProjectRepository projectRepository,
+                                  TaskDependencyRepository dependencyRepository,
+                                  @Value("${lifestrat.projects.work-minutes-per-day:480}") int workMinutesPerDay,
+                                  @Value("${lifestrat.projects.max-cached-graphs:1000}") int maxCachedGraphs) {
+        this.taskRepository = taskRepository;
+        this.projectRepository = projectRepository;
+        this.dependencyRepository = dependencyRepository;
+        this.workMinutesPerDay = workMinutesPerDay;
+        this.graphs = AfterCommitCache.bySize(maxCachedGraphs);
+    }
+
+    // Добавить зависимость: задача taskId может начаться только после dependsOnId
+    public void addDependency(Long userId, Long taskId, Long dependsOnId) {
+        log.debug("Adding dependency of task ID: {} on task ID: {} for user ID: {}", taskId, dependsOnId, userId);
+
+        if (taskId.equals(dependsOnId)) {
+            throw new IllegalArgumentException("Task cannot depend on itself");
+        }
+        Task task = findStep(taskId, userId);
+        Task dependsOn = findStep(dependsOnId, userId);
+        Long projectId = task.getProject().getId();
+        if (!projectId.equals(dependsOn.getProject().getId())) {
+            throw new IllegalArgumentException("Dependent steps must belong to the same project");
+        }
+
+        dependencyRepository.lockProject(projectId);
+        if (dependencyRepository.existsByTaskIdAndDependsOnId(taskId, dependsOnId)) {
+            return;
+        }
+
+        ProjectGraph graph = graphs.getOrLoad(projectId, this::load);
+        if (!graph.contains(taskId) || !graph.contains(dependsOnId)) {
+            // Шаг создан, но его изменение еще не применено к графу — перечитываем граф под блокировкой
+            graph = load(projectId);
+            graphs.put(projectId, graph);
+        }
+        synchronized (graph) {
+            if (!graph.addDependency(taskId, dependsOnId)) {
+                log.warn("Dependency of task ID: {} on task ID: {} rejected: cycle", taskId, dependsOnId);
+                throw new IllegalArgumentException("Dependency would create a cycle");
+            }
+        }
+        graphs.invalidateOnRollback(projectId);
+
+        dependencyRepository.save(new TaskDependency(null, task, dependsOn, task.getProject(), task.getUser()));
+        log.info("Dependency added - Task ID: {} depends on task ID: {}", taskId, dependsOnId);
+    }
+
+    // Удалить зависимость задачи taskId от dependsOnId
+    public void removeDependency(Long userId, Long taskId, Long dependsOnId) {
+        log.debug("Removing dependency of task ID: {} on task ID: {} for user ID: {}", taskId, dependsOnId, userId);
+
+        Task task = findStep(taskId, userId);
+        Long projectId = task.getProject().getId();
+        dependencyRepository.lockProject(projectId);
+        if (dependencyRepository.deleteEdge(taskId, dependsOnId) > 0) {
+            AfterCommitCache.afterCommit(() ->
+                    graphs.update(projectId, graph -> graph.removeDependency(taskId, dependsOnId)));
+            log.info("Dependency removed - Task ID: {} no longer depends on task ID: {}", taskId, dependsOnId);
+        }
+    }
+
+    // Получить критический путь и прогноз завершения проекта пользователя
+    @Transactional(readOnly = true)
+    public ProjectScheduleDto getSchedule(Long userId, Long projectId) {
+        Project project = projectRepository.findById(projectId)
+                .filter(p -> p.getUser().getId().equals(userId))
+                .orElseThrow(() -> {
+                    log.error("Project not found or access denied - Project ID: {}, User ID: {}", projectId, userId);
+                    return new RuntimeException("Project not found or access denied");
+                });
+        return getSchedule(project);
+    }
+
+    // Получить критический путь и прогноз завершения уже загруженного проекта
+    @Transactional(readOnly = true)
+    public ProjectScheduleDto getSchedule(Project project) {
+        ProjectGraph graph = graphs.getOrLoad(project.getId(), this::load);
+        ProjectGraph.Schedule schedule;
+        synchronized (graph) {
+            schedule = graph.schedule();
+        }
+
+        long days = (schedule.remainingMinutes() + workMinutesPerDay - 1) / workMinutesPerDay;
+        LocalDate projectedFinish = LocalDate.now().plusDays(days);
+        return new ProjectScheduleDto(project.getId(), schedule.remainingMinutes(), projectedFinish,
+                project.getDeadline(), !projectedFinish.isAfter(project.getDeadline()), schedule.criticalPath());
+    }
+
+    // Учесть созданный или измененный шаг проекта после коммита
+    public void taskSaved(Task task) {
+        if (task.getProject() == null || task.getType() != TaskType.STEP) {
+            return;
+        }
+        Long projectId = task.getProject().getId();
+        Long taskId = task.getId();
+        int minutes = remainingMinutes(task.isCompleted(), task.getEstimatedTimeMinutes());
+        AfterCommitCache.afterCommit(() ->
+                graphs.update(projectId, graph -> graph.putTask(taskId, minutes, task.getVersion())));
+    }
+
+    // Удалить зависимости задачи перед ее удалением
+    public void taskDeleted(Task task) {
+        if (task.getProject() == null) {
+            return;
+        }
+        dependencyRepository.deleteAllByTask(task.getId());
+        invalidate(task.getProject().getId());
+    }
+
+    // Сбросить граф проекта; при следующем обращении он будет перечитан из БД
+    public void invalidate(Long projectId) {
+        AfterCommitCache.afterCommit(() -> graphs.invalidate(projectId));
+    }
+
+    // Сбросить все графы, например после массового удаления или архивации задач
+    public void evictAll() {
+        AfterCommitCache.afterCommit(graphs::invalidateAll);
+    }
+
+    private Task findStep(Long taskId, Long userId) {
+        Task task = taskRepository.findById(taskId)
+                .filter(t -> t.getUser().getId().equals(userId))
+                .orElseThrow(() -> {
+                    log.error("Task not found or access denied - Task ID: {}, User ID: {}", taskId, userId);
+                    return new RuntimeException("Task not found or access denied");
+                });
+        if (task.getType() != TaskType.STEP || task.getProject() == null) {
+            throw new IllegalArgumentException("Only project steps can have dependencies");
+        }
+        return task;
+    }
+
+    // Построить граф проекта из БД: все шаги и все ребра между ними
+    private ProjectGraph load(Long projectId) {
+        long start = System.nanoTime();
+        ProjectGraph graph = new ProjectGraph();
+        for (Object[] row : taskRepository.findStepDurationsByProjectId(projectId)) {
+            graph.putTask((Long) row[0], remainingMinutes((Boolean) row[2], (Integer) row[1]), (Long) row[3]);
+        }
+        for (Object[] row : dependencyRepository.findEdgesByProjectId(projectId)) {
+            if (!graph.addDependency((Long) row[1], (Long) row[0])) {
+                log.warn("Cyclic dependency of task ID: {} on task ID: {} ignored", row[1], row[0]);
+            }
+        }
+        log.debug("Dependency graph built for project ID: {}. Steps: {}, took {} ms",
+                projectId, graph.size(), (System.nanoTime() - start) / 1_000_000);
+        return graph;
+    }
+
+    private static int remainingMinutes(boolean completed, Integer estimatedTimeMinutes) {
+        return completed || estimatedTimeMinutes == null ? 0 : Math.max(estimatedTimeMinutes, 0);
+    }
+}
@@ -1,15 +1,35 @@
 package com.lifestrat.service;
 
+import com.lifestrat.entity.EntityKind;
+import com.lifestrat.entity.Priority;
 import com.lifestrat.entity.Project;
+import com.lifestrat.dto.ProjectPatchRequest;
+import com.lifestrat.dto.SearchResultDto;
 import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.event.DataChangedEvent;
 import com.lifestrat.repository.ProjectRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
@@ -17,10 +37,22 @@ import java.util.Optional;
 public class ProjectService {
 
     private final ProjectRepository projectRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SearchIndexService searchIndexService;
+    private final EntityManager entityManager;
+    private final CascadeDeleteService cascadeDeleteService;
 
     @Autowired
-    public ProjectService(ProjectRepository projectRepository) {
+    public ProjectService(ProjectRepository projectRepository,
+                          ApplicationEventPublisher eventPublisher,
+                          SearchIndexService searchIndexService,
+                          EntityManager entityManager,
+                          CascadeDeleteService cascadeDeleteService) {
         this.projectRepository = projectRepository;
+        this.eventPublisher = eventPublisher;
+        this.searchIndexService = searchIndexService;
+        this.entityManager = entityManager;
+        this.cascadeDeleteService = cascadeDeleteService;
     }
 
     // Получить все проекты пользователя
@@ -64,8 +96,12 @@ public class ProjectService {
             throw new IllegalArgumentException("Project with title '" + project.getTitle() + "' already exists");
         }
 
+        project.setOverdue(project.getDeadline().isBefore(LocalDate.now()));
         Project savedProject = projectRepository.save(project);
-        log.info("Project created successfully with ID: {} for user ID: {}", savedProject.getId(), userId);
+        publishChange(userId, savedProject.getId());
+        searchIndexService.index(savedProject, userId);
+        log.atInfo().setMessage("Project created").addKeyValue("projectId", savedProject.getId())
+                .addKeyValue("userId", userId).log();
         return savedProject;
     }
 
@@ -73,23 +109,94 @@ public class ProjectService {
     public Project update(Project projectFromDb, Project projectFromRequest) {
         log.debug("Updating project ID: {}", projectFromDb.getId());
 
+        // Без версии изменение другого клиента было бы молча перезаписано
+        if (projectFromRequest.getVersion() == null) {
+            throw new IllegalArgumentException("Project version is required for update");
+        }
+
+        // Клиент редактировал устаревшую версию проекта
+        if (!projectFromRequest.getVersion().equals(projectFromDb.getVersion())) {
+            log.warn("Project version conflict - Project ID: {}, expected version: {}, actual: {}",
+                    projectFromDb.getId(), projectFromRequest.getVersion(), projectFromDb.getVersion());
+            throw new ObjectOptimisticLockingFailureException(Project.class, projectFromDb.getId());
+        }
+
         // Копируем все поля из projectFromRequest в projectFromDb
         projectFromDb.setTitle(projectFromRequest.getTitle());
         projectFromDb.setDescription(projectFromRequest.getDescription());
         projectFromDb.setDeadline(projectFromRequest.getDeadline());
         projectFromDb.setPriority(projectFromRequest.getPriority());
         projectFromDb.setLifeSphere(projectFromRequest.getLifeSphere());
+        projectFromDb.setOverdue(projectFromDb.getDeadline().isBefore(LocalDate.now()));
 
         Project updatedProject = projectRepository.save(projectFromDb);
-        log.info("Project updated successfully with ID: {}", updatedProject.getId());
+        publishChange(updatedProject.getUser().getId(), updatedProject.getId());
+        searchIndexService.index(updatedProject, updatedProject.getUser().getId());
+        log.atInfo().setMessage("Project updated").addKeyValue("projectId", updatedProject.getId()).log();
         return updatedProject;
     }
 
-    // Удалить проект
+    // Частично обновить проект одним условным UPDATE только по переданным полям
+    public Project patch(Long projectId, Long userId, ProjectPatchRequest patch) {
+        log.debug("Patching project ID: {} for user ID: {}, expected version: {}", projectId, userId, patch.version());
+
+        if (patch.version() == null) {
+            throw new IllegalArgumentException("Project version is required for partial update");
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Project> update = cb.createCriteriaUpdate(Project.class);
+        Root<Project> root = update.from(Project.class);
+
+        if (patch.title() != null) {
+            update.set(root.get("title"), patch.title());
+        }
+        if (patch.description() != null) {
+            update.set(root.get("description"), patch.description());
+        }
+        if (patch.deadline() != null) {
+            update.set(root.get("deadline"), patch.deadline());
+            update.set(root.get("overdue"), patch.deadline().isBefore(LocalDate.now()));
+        }
+        if (patch.priority() != null) {
+            update.set(root.get("priority"), patch.priority());
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.<Long>get("version"), 1L));
+        update.set(root.get("updatedAt"), LocalDateTime.now());
+        update.where(cb.equal(root.get("id"), projectId),
+                cb.equal(root.get("user").get("id"), userId),
+                cb.equal(root.get("version"), patch.version()));
+
+        entityManager.flush();
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+
+        if (updated == 0) {
+            if (!projectRepository.existsByIdAndUserId(projectId, userId)) {
+                log.error("Project not found or access denied - Project ID: {}, User ID: {}", projectId, userId);
+                throw new RuntimeException("Project not found or access denied");
+            }
+            log.warn("Project version conflict - Project ID: {}, expected version: {}", projectId, patch.version());
+            throw new ObjectOptimisticLockingFailureException(Project.class, projectId);
+        }
+
+        Project patchedProject = projectRepository.findById(projectId).orElseThrow();
+        publishChange(userId, projectId);
+        if (patch.title() != null || patch.description() != null) {
+            searchIndexService.index(patchedProject, userId);
+        }
+        log.atInfo().setMessage("Project patched").addKeyValue("projectId", projectId)
+                .addKeyValue("version", patchedProject.getVersion()).log();
+        return patchedProject;
+    }
+
+    // Удалить проект вместе с его задачами; пачки удаления коммитятся по отдельности, поэтому без общей транзакции
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void delete(Project project) {
         log.debug("Deleting project ID: {}", project.getId());
-        projectRepository.delete(project);
-        log.info("Project deleted successfully with ID: {}", project.getId());
+        Long userId = project.getUser().getId();
+        cascadeDeleteService.deleteProject(userId, project.getId());
+        log.atInfo().setMessage("Project deleted").addKeyValue("projectId", project.getId()).log();
     }
 
     // Получить проекты пользователя по сфере жизни
@@ -102,29 +209,63 @@ public class ProjectService {
                 .toList();
     }
 
-    // Найти проекты по названию (поиск)
+    // Найти проекты, в названии которых есть строка title (без учета регистра)
     public List<Project> findByTitleContainingAndUserId(String title, Long userId) {
         log.debug("Searching projects by title: '{}' for user ID: {}", title, userId);
-        return findAllByUserId(userId).stream()
-                .filter(project -> project.getTitle().toLowerCase().contains(title.toLowerCase()))
+
+        // Индекс находит вхождение внутри слова только для запроса из одного слова от трех символов;
+        // короткие запросы и запросы с разделителями ищутся подстрокой в базе
+        List<String> tokens = UserSearchIndex.tokenize(title);
+        if (tokens.size() != 1 || tokens.get(0).length() < 3 || tokens.get(0).length() != title.length()) {
+            return projectRepository.findAllByUserIdAndTitleContainingIgnoreCase(userId, title);
+        }
+
+        List<Long> projectIds = searchIndexService
+                .search(userId, title, SearchIndexService.DocumentKind.PROJECT, Integer.MAX_VALUE).stream()
+                .map(SearchResultDto::id)
+                .toList();
+        if (projectIds.isEmpty()) {
+            return List.of();
+        }
+
+        // Индекс совпадает и по описанию: оставляем только проекты, в названии которых есть строка,
+        // в порядке ранжирования индекса
+        String needle = title.toLowerCase(Locale.ROOT);
+        Map<Long, Project> projects = projectRepository.findAllById(projectIds).stream()
+                .collect(Collectors.toMap(Project::getId, Function.identity()));
+        return projectIds.stream()
+                .map(projects::get)
+                .filter(Objects::nonNull)
+                .filter(project -> project.getTitle().toLowerCase(Locale.ROOT).contains(needle))
                 .toList();
     }
 
     // Получить просроченные проекты пользователя
     public List<Project> findOverdueProjectsByUserId(Long userId) {
         log.debug("Getting overdue projects for user ID: {}", userId);
-        java.time.LocalDate today = java.time.LocalDate.now();
-        return findAllByUserId(userId).stream()
-                .filter(project -> project.getDeadline().isBefore(today))
-                .toList();
+        return projectRepository.findAllByUserIdAndDeadlineBeforeOrderByDeadline(userId, LocalDate.now());
+    }
+
+    // Получить проекты пользователя с дедлайном в диапазоне дат
+    public List<Project> findAllByUserIdAndDeadlineBetween(Long userId, LocalDate from, LocalDate to) {
+        log.debug("Getting projects for user ID: {} with deadline between {} and {}", userId, from, to);
+        return projectRepository.findAllByUserIdAndDeadlineBetweenOrderByDeadline(userId, from, to);
+    }
+
+    // Количество просроченных проектов (флаг, выставленный при записи и ночным обходом)
+    public long countOverdueByUserId(Long userId) {
+        log.debug("Counting overdue projects for user ID: {}", userId);
+        return projectRepository.countByUserIdAndOverdueTrue(userId);
     }
 
     // Получить проекты с высоким приоритетом
     public List<Project> findHighPriorityProjectsByUserId(Long userId) {
         log.debug("Getting high priority projects for user ID: {}", userId);
-        return findAllByUserId(userId).stream()
-                .filter(project -> project.getPriority().toString().equals("HIGH") ||
-                        project.getPriority().toString().equals("CRITICAL"))
-                .toList();
+        return projectRepository.findAllByUserIdAndPriorityIn(userId, EnumSet.of(Priority.HIGH, Priority.CRITICAL));
+    }
+
+    // Опубликовать событие об изменении проекта (обрабатывается после коммита)
+    private void publishChange(Long userId, Long projectId) {
+        eventPublisher.publishEvent(new DataChangedEvent(userId, EntityKind.PROJECT, projectId, false));
     }
 }
\ No newline at end of file
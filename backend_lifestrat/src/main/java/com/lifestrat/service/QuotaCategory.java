@@ -0,0 +1,8 @@
+package com.lifestrat.service;
+
+// Категории запросов с отдельными бюджетами квот
+public enum QuotaCategory {
+    CRUD,       // Обычные чтения и изменения данных пользователя
+    ANALYTICS,  // Полные пересчеты аналитики и выгрузки
+    AUTH        // Вход и регистрация: BCrypt, считается по IP клиента
+}
\ No newline at end of file
@@ -0,0 +1,186 @@
+package com.lifestrat.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Квоты запросов по корзинам токенов: отдельный бюджет на каждую пару (категория, субъект),
+ * где субъект — имя пользователя или IP для входа и регистрации.
+ * Корзины лежат в ConcurrentHashMap и меняются без блокировок. Заполнившиеся (простаивающие) корзины
+ * удаляются периодической очисткой; если таблица все же достигла предела, новые субъекты
+ * делят между собой фиксированный набор резервных корзин по хешу, так что память ограничена.
+ */
+@Service
+@Slf4j
+public class RequestQuotaService {
+
+    private static final int OVERFLOW_STRIPES = 256;
+    private static final long MIN_INLINE_SWEEP_INTERVAL_MS = 1000;
+
+    private record Budget(int capacity, int refillPerMinute) {
+    }
+
+    private record BucketKey(QuotaCategory category, String subject) {
+    }
+
+    private final boolean enabled;
+    private final int maxBuckets;
+    private final Map<QuotaCategory, Budget> budgets = new EnumMap<>(QuotaCategory.class);
+    private final Map<BucketKey, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final AtomicInteger bucketCount = new AtomicInteger();
+    private final Map<QuotaCategory, TokenBucket[]> overflow = new EnumMap<>(QuotaCategory.class);
+    private final Map<QuotaCategory, LongAdder> throttled = new EnumMap<>(QuotaCategory.class);
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private final long startNanos = System.nanoTime();
+    private volatile long lastSweepMs;
+
+    @Autowired
+    public RequestQuotaService(@Value("${lifestrat.quota.enabled:true}") boolean enabled,
+                               @Value("${lifestrat.quota.max-buckets:100000}") int maxBuckets,
+                               @Value("${lifestrat.quota.crud.capacity:120}") int crudCapacity,
+                               @Value("${lifestrat.quota.crud.refill-per-minute:600}") int crudRefill,
+                               @Value("${lifestrat.quota.analytics.capacity:20}") int analyticsCapacity,
+                               @Value("${lifestrat.quota.analytics.refill-per-minute:60}") int analyticsRefill,
+                               @Value("${lifestrat.quota.auth.capacity:10}") int authCapacity,
+                               @Value("${lifestrat.quota.auth.refill-per-minute:10}") int authRefill,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.maxBuckets = maxBuckets;
+        budgets.put(QuotaCategory.CRUD, budget(crudCapacity, crudRefill));
+        budgets.put(QuotaCategory.ANALYTICS, budget(analyticsCapacity, analyticsRefill));
+        budgets.put(QuotaCategory.AUTH, budget(authCapacity, authRefill));
+
+        long now = nowMillis();
+        budgets.forEach((category, budget) -> {
+            TokenBucket[] stripes = new TokenBucket[OVERFLOW_STRIPES];
+            for (int i = 0; i < stripes.length; i++) {
+                stripes[i] = new TokenBucket(budget.capacity(), budget.refillPerMinute(), now);
+            }
+            overflow.put(category, stripes);
+            throttled.put(category, new LongAdder());
+        });
+        meterRegistry.ifAvailable(this::registerMetrics);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Списать токен; 0 — запрос разрешен, иначе через сколько миллисекунд стоит повторить
+    public long tryAcquire(QuotaCategory category, String subject) {
+        if (!enabled) {
+            return 0;
+        }
+        BucketKey key = new BucketKey(category, subject);
+        long now = nowMillis();
+        while (true) {
+            TokenBucket bucket = bucketFor(key, now);
+            long waitMs = bucket.tryAcquire(now);
+            if (waitMs == TokenBucket.EVICTED) {
+                // Корзину пометила очистка между поиском и списанием — берем новую.
+                // Счетчик уменьшает тот, чье удаление из карты прошло, как и в очистке
+                if (buckets.remove(key, bucket)) {
+                    bucketCount.decrementAndGet();
+                }
+                continue;
+            }
+            if (waitMs > 0) {
+                throttled.get(category).increment();
+                log.debug("Request quota exceeded - Category: {}, subject: {}, retry in {} ms", category, subject, waitMs);
+            }
+            return waitMs;
+        }
+    }
+
+    // Удалить заполнившиеся корзины: их состояние совпадает с состоянием новой корзины
+    @Scheduled(fixedDelayString = "${lifestrat.quota.sweep-interval-ms:60000}")
+    public void sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = nowMillis();
+            int removed = 0;
+            for (Map.Entry<BucketKey, TokenBucket> entry : buckets.entrySet()) {
+                if (entry.getValue().tryEvict(now) && buckets.remove(entry.getKey(), entry.getValue())) {
+                    bucketCount.decrementAndGet();
+                    removed++;
+                }
+            }
+            lastSweepMs = now;
+            log.debug("Request quota sweep removed {} idle buckets, {} remain", removed, bucketCount.get());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    private TokenBucket bucketFor(BucketKey key, long now) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (bucketCount.get() >= maxBuckets) {
+            // Внеочередная очистка не чаще раза в секунду, чтобы поток новых субъектов не вызывал полный обход на каждый запрос
+            if (now - lastSweepMs >= MIN_INLINE_SWEEP_INTERVAL_MS) {
+                sweep();
+            }
+            if (bucketCount.get() >= maxBuckets) {
+                return overflow.get(key.category())[Math.floorMod(key.hashCode(), OVERFLOW_STRIPES)];
+            }
+        }
+        Budget budget = budgets.get(key.category());
+        TokenBucket created = new TokenBucket(budget.capacity(), budget.refillPerMinute(), now);
+        TokenBucket existing = buckets.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        bucketCount.incrementAndGet();
+        return created;
+    }
+
+    // Корзина субъекта из таблицы, без создания; для тестов пакета
+    TokenBucket existingBucket(QuotaCategory category, String subject) {
+        return buckets.get(new BucketKey(category, subject));
+    }
+
+    long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static Budget budget(int capacity, int refillPerMinute) {
+        if (capacity <= 0 || refillPerMinute <= 0) {
+            throw new IllegalArgumentException("Quota capacity and refill rate must be positive");
+        }
+        if (capacity > TokenBucket.MAX_UNITS / TokenBucket.UNITS_PER_TOKEN) {
+            throw new IllegalArgumentException("Quota capacity must not exceed "
+                    + TokenBucket.MAX_UNITS / TokenBucket.UNITS_PER_TOKEN);
+        }
+        return new Budget(capacity, refillPerMinute);
+    }
+
+    private void registerMetrics(MeterRegistry registry) {
+        throttled.forEach((category, counter) ->
+                FunctionCounter.builder("lifestrat.quota.throttled", counter, LongAdder::sum)
+                        .tag("category", category.name().toLowerCase())
+                        .description("Requests rejected because the quota bucket was empty")
+                        .register(registry));
+        Gauge.builder("lifestrat.quota.buckets", bucketCount, AtomicInteger::get)
+                .description("Quota buckets currently tracked")
+                .register(registry);
+    }
+}
\ No newline at end of file
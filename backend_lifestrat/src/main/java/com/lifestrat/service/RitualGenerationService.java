@@ -0,0 +1,244 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardingProperties;
+import com.lifestrat.entity.EntityKind;
+import com.lifestrat.entity.JobWatermark;
+import com.lifestrat.entity.RecurrenceRule;
+import com.lifestrat.event.DataChangedEvent;
+import com.lifestrat.repository.JobWatermarkRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Ежедневная генерация экземпляров ритуалов по шаблонам с правилом повторения.
+ * Пользователи разбиваются на диапазоны ID, которые обрабатываются параллельно,
+ * каждый диапазон — одним INSERT ... SELECT в отдельной транзакции.
+ * Повторный запуск за тот же день ничего не создает (уникальность source_task_id + deadline),
+ * а watermark позволяет догнать пропущенные дни.
+ * Дедлайн шаблона — дата начала повторений: до нее экземпляры не создаются.
+ * Выполненный шаблон считается выведенным из оборота и экземпляров больше не порождает.
+ * Экземпляры за прошедшие дни при догоне сразу помечаются просроченными: ночная проверка
+ * просрочки могла уже пройти эти дни. Повторяются только шаблоны типа RITUAL.
+ */
+@Service
+@Slf4j
+public class RitualGenerationService {
+
+    static final String JOB_NAME = "ritual-generation";
+
+    private static final String INSERT_INSTANCES_SQL = """
+            INSERT INTO tasks (title, description, completed, overdue, deadline, priority, estimated_time_minutes,
+                               energy_cost, type, project_id, life_sphere_id, user_id, source_task_id, version, updated_at)
+            SELECT t.title, t.description, FALSE, ? < CURRENT_DATE, ?, t.priority, t.estimated_time_minutes,
+                   t.energy_cost, t.type, t.project_id, t.life_sphere_id, t.user_id, t.id, 0, CURRENT_TIMESTAMP
+            FROM tasks t
+            WHERE t.recurrence IN (%s)
+              AND t.type = 'RITUAL'
+              AND t.user_id BETWEEN ? AND ?
+              AND t.completed = FALSE
+              AND t.deadline <= ?
+              AND NOT EXISTS (SELECT 1 FROM tasks i WHERE i.source_task_id = t.id AND i.deadline = ?)
+            """;
+
+    // Те же блокировки строк пользователей, что и в ChangeLogService.record: номера записей журнала
+    // должны расти в порядке коммитов, иначе курсор клиента перескочит через экземпляры ритуалов.
+    // Блокируем по возрастанию ID, чтобы параллельные диапазоны и одиночные записи не взаимоблокировались
+    private static final String LOCK_USERS_SQL = """
+            SELECT u.id
+            FROM users u
+            WHERE u.id BETWEEN ? AND ?
+              AND u.id IN (SELECT i.user_id FROM tasks i
+                           WHERE i.deadline = ? AND i.source_task_id IS NOT NULL AND i.user_id BETWEEN ? AND ?)
+            ORDER BY u.id
+            FOR UPDATE
+            """;
+
+    // Созданные экземпляры попадают в журнал изменений для дельта-синхронизации клиентов
+    private static final String RECORD_CHANGES_SQL = """
+            INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at)
+            SELECT i.user_id, 'TASK', i.id, FALSE, CURRENT_TIMESTAMP
+            FROM tasks i
+            WHERE i.deadline = ?
+              AND i.source_task_id IS NOT NULL
+              AND i.user_id BETWEEN ? AND ?
+              AND NOT EXISTS (SELECT 1 FROM change_log c WHERE c.entity_kind = 'TASK' AND c.entity_id = i.id)
+            """;
+
+    // Последний новый экземпляр каждого пользователя диапазона: по нему публикуется событие об изменении данных
+    private static final String NEWEST_UNRECORDED_SQL = """
+            SELECT i.user_id, MAX(i.id)
+            FROM tasks i
+            WHERE i.deadline = ?
+              AND i.source_task_id IS NOT NULL
+              AND i.user_id BETWEEN ? AND ?
+              AND NOT EXISTS (SELECT 1 FROM change_log c WHERE c.entity_kind = 'TASK' AND c.entity_id = i.id)
+            GROUP BY i.user_id
+            """;
+
+    private static final String USER_RANGE_SQL =
+            "SELECT MIN(user_id) AS min_id, MAX(user_id) AS max_id FROM tasks WHERE recurrence IS NOT NULL AND type = 'RITUAL'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final JobWatermarkRepository watermarkRepository;
+    private final ShardingProperties shardingProperties;
+    private final TaskSnapshotService taskSnapshotService;
+    private final SearchIndexService searchIndexService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ExecutorService executor;
+    private final long partitionSize;
+    private final int maxCatchUpDays;
+
+    @Autowired
+    public RitualGenerationService(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   JobWatermarkRepository watermarkRepository,
+                                   ShardingProperties shardingProperties,
+                                   TaskSnapshotService taskSnapshotService,
+                                   SearchIndexService searchIndexService,
+                                   ApplicationEventPublisher eventPublisher,
+                                   @Value("${lifestrat.rituals.partition-size:10000}") long partitionSize,
+                                   @Value("${lifestrat.rituals.parallelism:4}") int parallelism,
+                                   @Value("${lifestrat.rituals.max-catch-up-days:31}") int maxCatchUpDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.watermarkRepository = watermarkRepository;
+        this.shardingProperties = shardingProperties;
+        this.taskSnapshotService = taskSnapshotService;
+        this.searchIndexService = searchIndexService;
+        this.eventPublisher = eventPublisher;
+        this.partitionSize = partitionSize;
+        this.maxCatchUpDays = maxCatchUpDays;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "ritual-generation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Ночной запуск: догнать все дни с последнего обработанного до сегодняшнего
+    @Scheduled(cron = "${lifestrat.rituals.cron:0 5 0 * * *}")
+    public void generateScheduled() {
+        generateUpTo(LocalDate.now());
+    }
+
+    // Создать экземпляры ритуалов за все необработанные дни до targetDay включительно
+    public synchronized long generateUpTo(LocalDate targetDay) {
+        long total = 0;
+        for (int shard : shardingProperties.shardIndexes()) {
+            total += ShardContext.callOnShard(shard, () -> generateShardUpTo(targetDay));
+        }
+        return total;
+    }
+
+    // У каждого шарда свой watermark
+    private long generateShardUpTo(LocalDate targetDay) {
+        LocalDate lastProcessed = watermarkRepository.findById(JOB_NAME)
+                .map(JobWatermark::getLastProcessedDate)
+                .orElse(targetDay.minusDays(1));
+
+        LocalDate earliest = targetDay.minusDays(maxCatchUpDays);
+        if (lastProcessed.isBefore(earliest)) {
+            log.warn("Ritual generation is {} days behind, catching up from {} only", maxCatchUpDays, earliest);
+            lastProcessed = earliest.minusDays(1);
+        }
+
+        long total = 0;
+        for (LocalDate day = lastProcessed.plusDays(1); !day.isAfter(targetDay); day = day.plusDays(1)) {
+            total += generateForDay(day);
+            watermarkRepository.save(new JobWatermark(JOB_NAME, day));
+        }
+        return total;
+    }
+
+    // Создать экземпляры ритуалов за один день по всем пользователям
+    public long generateForDay(LocalDate day) {
+        List<String> rules = Arrays.stream(RecurrenceRule.values())
+                .filter(rule -> rule.appliesTo(day))
+                .map(rule -> "'" + rule.name() + "'")
+                .toList();
+
+        Map<String, Object> range = jdbcTemplate.queryForMap(USER_RANGE_SQL);
+        if (rules.isEmpty() || range.get("min_id") == null) {
+            log.debug("No ritual templates to generate for day: {}", day);
+            return 0;
+        }
+
+        long minUserId = ((Number) range.get("min_id")).longValue();
+        long maxUserId = ((Number) range.get("max_id")).longValue();
+        String sql = INSERT_INSTANCES_SQL.formatted(String.join(", ", rules));
+
+        List<CompletableFuture<Integer>> partitions = new ArrayList<>();
+        for (long from = minUserId; from <= maxUserId; from += partitionSize) {
+            long to = Math.min(from + partitionSize - 1, maxUserId);
+            long rangeFrom = from;
+            partitions.add(CompletableFuture.supplyAsync(
+                    ShardContext.propagate(() -> generatePartition(sql, day, rangeFrom, to)), executor));
+        }
+
+        // Ошибка любого диапазона прерывает день, и watermark не сдвигается
+        long created = partitions.stream()
+                .collect(Collectors.summingLong(CompletableFuture::join));
+
+        if (created > 0) {
+            // Экземпляры вставлены SQL-запросом в обход TaskService
+            taskSnapshotService.evictAll();
+            searchIndexService.evictAll();
+        }
+        log.info("Ritual instances generated for day: {}. Partitions: {}, created: {}",
+                day, partitions.size(), created);
+        return created;
+    }
+
+    private int generatePartition(String sql, LocalDate day, long fromUserId, long toUserId) {
+        Date sqlDay = Date.valueOf(day);
+        Integer created = transactionTemplate.execute(status -> {
+            int inserted = jdbcTemplate.update(sql, sqlDay, sqlDay, fromUserId, toUserId, sqlDay, sqlDay);
+            if (inserted > 0) {
+                jdbcTemplate.queryForList(LOCK_USERS_SQL, Long.class,
+                        fromUserId, toUserId, sqlDay, fromUserId, toUserId);
+                Map<Long, Long> newestByUser = new LinkedHashMap<>();
+                jdbcTemplate.query(NEWEST_UNRECORDED_SQL, rs -> {
+                    newestByUser.put(rs.getLong(1), rs.getLong(2));
+                }, sqlDay, fromUserId, toUserId);
+                jdbcTemplate.update(RECORD_CHANGES_SQL, sqlDay, fromUserId, toUserId);
+                // Одно событие на пользователя: слушатели после коммита (аналитика, push-уведомления)
+                // узнают об экземплярах, вставленных в обход TaskService. Журнал по этому событию лишь
+                // переставляет запись последнего экземпляра в конец, остальные уже записаны выше
+                newestByUser.forEach((userId, instanceId) ->
+                        eventPublisher.publishEvent(new DataChangedEvent(userId, EntityKind.TASK, instanceId, false)));
+            }
+            return inserted;
+        });
+        log.debug("Ritual partition [{}, {}] for day {}: {} instances", fromUserId, toUserId, day, created);
+        return created != null ? created : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
\ No newline at end of file
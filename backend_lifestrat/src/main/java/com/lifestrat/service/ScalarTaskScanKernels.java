@@ -0,0 +1,40 @@
+package com.lifestrat.service;
+
+final class ScalarTaskScanKernels implements TaskScanKernels {
+
+    @Override
+    public long[] sumCompletedMinutesBySphere(TaskColumns columns, int fromDay, int toDay, long[] counts) {
+        long[] sums = new long[columns.sphereCount];
+        for (int i = 0; i < columns.size; i++) {
+            int day = columns.deadlineDays[i];
+            if (day >= fromDay && day <= toDay && columns.isCompleted(i)) {
+                int slot = columns.sphereSlots[i];
+                sums[slot] += columns.minutes[i];
+                counts[slot]++;
+            }
+        }
+        return sums;
+    }
+
+    @Override
+    public long[] sumMinutes(TaskColumns columns) {
+        long total = 0;
+        long completed = 0;
+        for (int i = 0; i < columns.size; i++) {
+            total += columns.minutes[i];
+            if (columns.isCompleted(i)) {
+                completed += columns.minutes[i];
+            }
+        }
+        return new long[]{total, completed};
+    }
+
+    @Override
+    public long[] countByCode(byte[] codes, int size, int codeCount) {
+        long[] counts = new long[codeCount];
+        for (int i = 0; i < size; i++) {
+            counts[codes[i]]++;
+        }
+        return counts;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.lifestrat.service;
+
+import com.lifestrat.dto.SearchResultDto;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Полнотекстовый поиск по проектам и задачам пользователя через индекс в памяти.
+ * Индекс строится из БД при первом обращении и затем обновляется из методов записи сервисов
+ * после коммита транзакции. Хранятся индексы только недавно активных пользователей.
+ */
+@Service
+@Slf4j
+public class SearchIndexService {
+
+    public enum DocumentKind {
+        PROJECT,
+        TASK
+    }
+
+    private final TaskRepository taskRepository;
+    private final ProjectRepository projectRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final AfterCommitCache<Long, UserSearchIndex> indexes; // Индексы по ID пользователя
+
+    @Autowired
+    public SearchIndexService(TaskRepository taskRepository,
+                              ProjectRepository projectRepository,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${lifestrat.search.max-indexed-users:10000}") int maxIndexedUsers) {
+        this.taskRepository = taskRepository;
+        this.projectRepository = projectRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.indexes = AfterCommitCache.bySize(maxIndexedUsers);
+    }
+
+    // Найти проекты и задачи пользователя по тексту; kind == null — искать среди всех
+    public List<SearchResultDto> search(Long userId, String query, DocumentKind kind, int limit) {
+        log.debug("Searching '{}' for user ID: {}", query, userId);
+
+        UserSearchIndex index = indexFor(userId);
+        index.ready().join();
+        return index.search(query, kind, limit).stream()
+                .map(hit -> new SearchResultDto(hit.key().kind().name().toLowerCase(Locale.ROOT),
+                        hit.key().id(), hit.title(), hit.score()))
+                .toList();
+    }
+
+    // Добавить или обновить задачу в индексе
+    public void index(Task task, Long userId) {
+        UserSearchIndex.Document document = new UserSearchIndex.Document(
+                new UserSearchIndex.DocKey(DocumentKind.TASK, task.getId()), task.getTitle(), task.getDescription());
+        AfterCommitCache.afterCommit(() -> indexes.update(userId, index -> index.upsert(document)));
+    }
+
+    // Добавить или обновить проект в индексе
+    public void index(Project project, Long userId) {
+        UserSearchIndex.Document document = new UserSearchIndex.Document(
+                new UserSearchIndex.DocKey(DocumentKind.PROJECT, project.getId()),
+                project.getTitle(), project.getDescription());
+        AfterCommitCache.afterCommit(() -> indexes.update(userId, index -> index.upsert(document)));
+    }
+
+    // Удалить документ из индекса
+    public void remove(DocumentKind kind, Long id, Long userId) {
+        UserSearchIndex.DocKey key = new UserSearchIndex.DocKey(kind, id);
+        AfterCommitCache.afterCommit(() -> indexes.update(userId, index -> index.remove(key)));
+    }
+
+    // Сбросить индекс пользователя; при следующем поиске он будет перестроен из БД
+    public void evict(Long userId) {
+        AfterCommitCache.afterCommit(() -> indexes.invalidate(userId));
+    }
+
+    // Сбросить все индексы после массовой вставки задач в обход сервисов, например экземпляров ритуалов
+    public void evictAll() {
+        AfterCommitCache.afterCommit(indexes::invalidateAll);
+    }
+
+    private UserSearchIndex indexFor(Long userId) {
+        UserSearchIndex index = indexes.get(userId);
+        if (index != null) {
+            return index;
+        }
+        UserSearchIndex created = new UserSearchIndex();
+        index = indexes.putIfAbsent(userId, created);
+        if (index != null) {
+            return index;
+        }
+        load(userId, created);
+        return created;
+    }
+
+    // Построить индекс из БД; изменения, пришедшие во время чтения, применятся после загрузки
+    private void load(Long userId, UserSearchIndex index) {
+        long start = System.nanoTime();
+        try {
+            List<UserSearchIndex.Document> documents = readOnlyTransaction.execute(status -> {
+                List<UserSearchIndex.Document> loaded = new ArrayList<>();
+                for (Object[] row : projectRepository.findSearchableByUserId(userId)) {
+                    loaded.add(toDocument(DocumentKind.PROJECT, row));
+                }
+                for (Object[] row : taskRepository.findSearchableByUserId(userId)) {
+                    loaded.add(toDocument(DocumentKind.TASK, row));
+                }
+                return loaded;
+            });
+            index.load(documents);
+            log.info("Search index built for user ID: {}. Documents: {}, took {} ms",
+                    userId, documents.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            indexes.remove(userId, index);
+            index.fail(e);
+            log.error("Error building search index for user ID: {}. Error: {}", userId, e.getMessage());
+            throw e;
+        }
+    }
+
+    private static UserSearchIndex.Document toDocument(DocumentKind kind, Object[] row) {
+        return new UserSearchIndex.Document(
+                new UserSearchIndex.DocKey(kind, (Long) row[0]), (String) row[1], (String) row[2]);
+    }
+}
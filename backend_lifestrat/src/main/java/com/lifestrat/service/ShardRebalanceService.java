@@ -0,0 +1,179 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardRoutingDataSource;
+import com.lifestrat.config.ShardingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Перенос пользователей между шардами после изменения их числа.
+ * Пользователи, чей шард по кольцу не совпадает с записанным в справочнике, помечаются как переносимые
+ * (их запросы получают 503), и после того как все экземпляры увидели пометку, их строки копируются
+ * на новый шард без перенумерации (кроме журнала изменений), справочник переключается, а старые строки удаляются.
+ * Запускается при старте с lifestrat.sharding.rebalance-on-startup=true или вызовом rebalance().
+ */
+@Service
+@ConditionalOnProperty(prefix = "lifestrat.sharding", name = "enabled", havingValue = "true")
+@Slf4j
+public class ShardRebalanceService implements ApplicationRunner {
+
+    // renumbered — строки получают новые ID из диапазона целевого шарда в порядке исходных
+    private record CopyStep(String table, String query, boolean renumbered) {
+    }
+
+    // Порядок зависимостей: шаблоны ритуалов копируются раньше экземпляров.
+    // ID записей журнала служат курсорами синхронизации и должны расти вместе с новыми записями целевого шарда,
+    // поэтому журнал перенумеровывается; курсор, выданный старым шардом, ChangeLogService распознает по диапазону
+    private static final List<CopyStep> COPY_STEPS = List.of(
+            new CopyStep("users", "SELECT * FROM users WHERE id = ?", false),
+            new CopyStep("life_spheres", "SELECT * FROM life_spheres WHERE user_id = ?", false),
+            new CopyStep("projects", "SELECT * FROM projects WHERE user_id = ?", false),
+            new CopyStep("tasks", "SELECT * FROM tasks WHERE user_id = ? "
+                    + "ORDER BY CASE WHEN source_task_id IS NULL THEN 0 ELSE 1 END, id", false),
+            new CopyStep("task_dependencies", "SELECT * FROM task_dependencies WHERE user_id = ?", false),
+            new CopyStep("archived_tasks", "SELECT * FROM archived_tasks WHERE user_id = ?", false),
+            new CopyStep("change_log", "SELECT * FROM change_log WHERE user_id = ? ORDER BY id", true));
+
+    private static final int MOVE_BATCH_SIZE = 100;
+    private static final int INSERT_BATCH_SIZE = 500;
+
+    private final UserDirectoryService directory;
+    private final ShardRoutingDataSource dataSource;
+    private final CascadeDeleteService cascadeDeleteService;
+    private final ShardingProperties properties;
+
+    @Autowired
+    public ShardRebalanceService(UserDirectoryService directory,
+                                 ShardRoutingDataSource dataSource,
+                                 CascadeDeleteService cascadeDeleteService,
+                                 ShardingProperties properties) {
+        this.directory = directory;
+        this.dataSource = dataSource;
+        this.cascadeDeleteService = cascadeDeleteService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (properties.rebalanceOnStartup()) {
+            rebalance();
+        }
+    }
+
+    // Перенести всех пользователей, оказавшихся не на своем шарде
+    public synchronized long rebalance() {
+        List<UserDirectoryService.Misplacement> misplaced = directory.findMisplaced();
+        log.info("Shard rebalance started. Users to move: {}", misplaced.size());
+
+        long moved = 0;
+        for (int from = 0; from < misplaced.size(); from += MOVE_BATCH_SIZE) {
+            List<UserDirectoryService.Misplacement> batch =
+                    misplaced.subList(from, Math.min(from + MOVE_BATCH_SIZE, misplaced.size()));
+            moved += moveBatch(batch);
+        }
+
+        log.info("Shard rebalance finished. Users moved: {}", moved);
+        return moved;
+    }
+
+    private int moveBatch(List<UserDirectoryService.Misplacement> batch) {
+        batch.forEach(user -> directory.setMoving(user.userId(), true));
+        // Ждем, пока кеш справочника истечет на всех экземплярах и начатые транзакции завершатся
+        sleep(directory.getCacheTtlMs());
+
+        int moved = 0;
+        for (UserDirectoryService.Misplacement user : batch) {
+            try {
+                moveUser(user);
+                moved++;
+            } catch (RuntimeException e) {
+                log.error("Failed to move user ID: {} from shard {} to {}. Error: {}",
+                        user.userId(), user.currentShard(), user.targetShard(), e.getMessage());
+                directory.setMoving(user.userId(), false);
+            }
+        }
+        return moved;
+    }
+
+    private void moveUser(UserDirectoryService.Misplacement user) {
+        long userId = user.userId();
+        // Остатки прерванного прошлого переноса
+        ShardContext.runOnShard(user.targetShard(), () -> cascadeDeleteService.deleteUser(userId));
+
+        DataSource target = dataSource.getShard(user.targetShard());
+        JdbcTemplate sourceJdbc = new JdbcTemplate(dataSource.getShard(user.currentShard()));
+        JdbcTemplate targetJdbc = new JdbcTemplate(target);
+        Long rows = new TransactionTemplate(new DataSourceTransactionManager(target)).execute(status -> {
+            long copied = 0;
+            for (CopyStep step : COPY_STEPS) {
+                copied += copyRows(sourceJdbc, targetJdbc, step, userId);
+            }
+            return copied;
+        });
+
+        directory.assign(userId, user.targetShard());
+        ShardContext.runOnShard(user.currentShard(), () -> cascadeDeleteService.deleteUser(userId));
+        log.info("Moved user ID: {} from shard {} to {}. Rows: {}",
+                userId, user.currentShard(), user.targetShard(), rows);
+    }
+
+    // Скопировать строки как есть: ID сущностей уникальны между шардами
+    private long copyRows(JdbcTemplate source, JdbcTemplate target, CopyStep step, long userId) {
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        String[] insertSql = new String[1];
+        List<Integer> copiedColumns = new ArrayList<>();
+        long[] copied = new long[1];
+
+        source.query(step.query(), rs -> {
+            if (insertSql[0] == null) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                List<String> names = new ArrayList<>();
+                for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                    if (!step.renumbered() || !metaData.getColumnLabel(i).equalsIgnoreCase("id")) {
+                        names.add(metaData.getColumnLabel(i));
+                        copiedColumns.add(i);
+                    }
+                }
+                insertSql[0] = "INSERT INTO " + step.table() + " (" + String.join(", ", names) + ") VALUES ("
+                        + String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+            }
+            Object[] row = new Object[copiedColumns.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = rs.getObject(copiedColumns.get(i));
+            }
+            batch.add(row);
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                copied[0] += target.batchUpdate(insertSql[0], batch).length;
+                batch.clear();
+            }
+        }, userId);
+
+        if (!batch.isEmpty()) {
+            copied[0] += target.batchUpdate(insertSql[0], batch).length;
+        }
+        return copied[0];
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Shard rebalance interrupted", e);
+        }
+    }
+}
\ No newline at end of file
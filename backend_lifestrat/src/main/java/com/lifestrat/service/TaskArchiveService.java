@@ -0,0 +1,196 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Перенос старых завершенных задач из живой таблицы tasks в архив archived_tasks.
+ * Задачи переносятся пачками, каждая — в своей короткой транзакции: блокируются только
+ * сами архивируемые строки, открытые задачи пользователя не затрагиваются.
+ * Шаблоны ритуалов не архивируются — на них ссылаются экземпляры.
+ * Зависимости архивируемых шагов удаляются: выполненный шаг не удлиняет критический путь проекта.
+ * Для клиентов дельта-синхронизации архивация выглядит как удаление: в журнал изменений пишется tombstone.
+ */
+@Service
+@Slf4j
+public class TaskArchiveService {
+
+    private static final String ARCHIVABLE_SCOPE = "completed = TRUE AND recurrence IS NULL AND updated_at < :cutoff";
+
+    private static final String SELECT_CANDIDATES_SQL =
+            "SELECT id, user_id FROM tasks WHERE " + ARCHIVABLE_SCOPE + " LIMIT :limit";
+
+    // Как в ChangeLogService.record: номера записей журнала должны расти в порядке коммитов.
+    // Пользователи блокируются раньше задач и по возрастанию ID — в том же порядке, что и при удалении
+    private static final String LOCK_USERS_SQL = "SELECT id FROM users WHERE id IN (:userIds) ORDER BY id FOR UPDATE";
+
+    // Задача могла измениться между выбором кандидатов и блокировкой — условие проверяется повторно
+    private static final String SELECT_BATCH_SQL =
+            "SELECT id, user_id FROM tasks WHERE id IN (:ids) AND " + ARCHIVABLE_SCOPE + " FOR UPDATE";
+
+    private static final String COPY_BATCH_SQL = """
+            INSERT INTO archived_tasks (id, user_id, life_sphere_id, project_id, title, description, deadline,
+                                        priority, estimated_time_minutes, energy_cost, type, completed_at, archived_at)
+            SELECT t.id, t.user_id, t.life_sphere_id, t.project_id, t.title, t.description, t.deadline,
+                   t.priority, t.estimated_time_minutes, t.energy_cost, t.type, t.updated_at, :now
+            FROM tasks t
+            WHERE t.id IN (:ids)
+            """;
+
+    // Последняя запись журнала о задаче заменяется tombstone, чтобы клиенты убрали ее при синхронизации
+    private static final String DELETE_CHANGES_SQL =
+            "DELETE FROM change_log WHERE entity_kind = 'TASK' AND entity_id IN (:ids)";
+
+    private static final String RECORD_TOMBSTONES_SQL = """
+            INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at)
+            SELECT t.user_id, 'TASK', t.id, TRUE, :now
+            FROM tasks t
+            WHERE t.id IN (:ids)
+            """;
+
+    private static final String DELETE_DEPENDENCIES_SQL =
+            "DELETE FROM task_dependencies WHERE task_id IN (:ids) OR depends_on_task_id IN (:ids)";
+
+    // Выполненный бывший шаблон (повторение снято через stopRecurrence) архивируется, но его экземпляры остаются у пользователя
+    // обычными задачами, как при удалении шаблона; иначе удаление упадет на внешнем ключе source_task_id.
+    // Оставшиеся экземпляры меняются, поэтому получают новую версию и запись в журнале, как при записи через сервисы
+    private static final String SELECT_INSTANCES_SQL =
+            "SELECT id FROM tasks WHERE source_task_id IN (:ids) AND id NOT IN (:ids)";
+
+    private static final String DETACH_INSTANCES_SQL = "UPDATE tasks SET source_task_id = NULL, version = version + 1, "
+            + "updated_at = CURRENT_TIMESTAMP WHERE source_task_id IN (:ids)";
+
+    private static final String DELETE_INSTANCE_CHANGES_SQL =
+            "DELETE FROM change_log WHERE entity_kind = 'TASK' AND entity_id IN (:instanceIds)";
+
+    private static final String RECORD_INSTANCE_CHANGES_SQL = """
+            INSERT INTO change_log (user_id, entity_kind, entity_id, deleted, changed_at)
+            SELECT t.user_id, 'TASK', t.id, FALSE, :now
+            FROM tasks t
+            WHERE t.id IN (:instanceIds)
+            """;
+
+    private static final String DELETE_BATCH_SQL = "DELETE FROM tasks WHERE id IN (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final SearchIndexService searchIndexService;
+    private final ProjectScheduleService projectScheduleService;
+    private final TaskSnapshotService taskSnapshotService;
+    private final ShardingProperties shardingProperties;
+    private final int minAgeDays;
+    private final int batchSize;
+
+    @Autowired
+    public TaskArchiveService(NamedParameterJdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              SearchIndexService searchIndexService,
+                              ProjectScheduleService projectScheduleService,
+                              TaskSnapshotService taskSnapshotService,
+                              ShardingProperties shardingProperties,
+                              @Value("${lifestrat.archive.min-age-days:90}") int minAgeDays,
+                              @Value("${lifestrat.archive.batch-size:1000}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.searchIndexService = searchIndexService;
+        this.projectScheduleService = projectScheduleService;
+        this.taskSnapshotService = taskSnapshotService;
+        this.shardingProperties = shardingProperties;
+        this.minAgeDays = minAgeDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${lifestrat.archive.cron:0 30 1 * * *}")
+    public void archiveScheduled() {
+        archive(LocalDateTime.now().minusDays(minAgeDays));
+    }
+
+    // Перенести в архив все задачи, завершенные (последний раз измененные) раньше cutoff
+    public synchronized long archive(LocalDateTime cutoff) {
+        long archived = 0;
+        for (int shard : shardingProperties.shardIndexes()) {
+            archived += ShardContext.callOnShard(shard, () -> archiveShard(cutoff));
+        }
+        if (archived > 0) {
+            projectScheduleService.evictAll();
+            taskSnapshotService.evictAll();
+        }
+
+        log.info("Task archive finished for tasks completed before {}. Archived tasks: {}", cutoff, archived);
+        return archived;
+    }
+
+    private long archiveShard(LocalDateTime cutoff) {
+        long archived = 0;
+        int moved;
+        do {
+            Integer count = transactionTemplate.execute(status -> archiveBatch(cutoff));
+            moved = count != null ? count : 0;
+            archived += moved;
+        } while (moved == batchSize);
+        return archived;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("cutoff", Timestamp.valueOf(cutoff))
+                .addValue("limit", batchSize);
+        List<long[]> candidates = jdbcTemplate.query(SELECT_CANDIDATES_SQL, params, TaskArchiveService::idAndUserId);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        params.addValue("userIds", candidates.stream().map(row -> row[1]).distinct().toList())
+                .addValue("ids", candidates.stream().map(row -> row[0]).toList());
+        jdbcTemplate.queryForList(LOCK_USERS_SQL, params, Long.class);
+        List<long[]> batch = jdbcTemplate.query(SELECT_BATCH_SQL, params, TaskArchiveService::idAndUserId);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        params.addValue("ids", batch.stream().map(row -> row[0]).toList())
+                .addValue("now", Timestamp.valueOf(LocalDateTime.now()));
+        jdbcTemplate.update(COPY_BATCH_SQL, params);
+        jdbcTemplate.update(DELETE_CHANGES_SQL, params);
+        jdbcTemplate.update(RECORD_TOMBSTONES_SQL, params);
+        jdbcTemplate.update(DELETE_DEPENDENCIES_SQL, params);
+        detachInstances(params);
+        jdbcTemplate.update(DELETE_BATCH_SQL, params);
+
+        for (long[] row : batch) {
+            searchIndexService.remove(SearchIndexService.DocumentKind.TASK, row[0], row[1]);
+        }
+        log.debug("Archived batch of {} tasks", batch.size());
+        return batch.size();
+    }
+
+    // Экземпляры принадлежат тем же пользователям, что и шаблоны, поэтому уже заблокированы вместе с пачкой
+    private void detachInstances(MapSqlParameterSource params) {
+        List<Long> instanceIds = jdbcTemplate.queryForList(SELECT_INSTANCES_SQL, params, Long.class);
+        jdbcTemplate.update(DETACH_INSTANCES_SQL, params);
+        if (!instanceIds.isEmpty()) {
+            params.addValue("instanceIds", instanceIds);
+            jdbcTemplate.update(DELETE_INSTANCE_CHANGES_SQL, params);
+            jdbcTemplate.update(RECORD_INSTANCE_CHANGES_SQL, params);
+        }
+    }
+
+    private static long[] idAndUserId(ResultSet rs, int rowNum) throws SQLException {
+        return new long[]{rs.getLong("id"), rs.getLong("user_id")};
+    }
+}
\ No newline at end of file
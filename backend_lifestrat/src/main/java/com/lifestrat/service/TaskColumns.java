@@ -0,0 +1,129 @@
+package com.lifestrat.service;
+
+import java.util.Arrays;
+
+/**
+ * Колоночный снимок задач одного пользователя в примитивных массивах, упорядоченных по ID задачи.
+ * Перечисления хранятся кодами (ordinal) в byte[], признак выполнения — битовой маской,
+ * сфера — номером слота в таблице sphereIds, чтобы сканы группировали по маленьким int.
+ * Оценка времени ограничивается MAX_MINUTES, чтобы суммы в полосах int не переполнялись.
+ * Вместе со строками хранятся агрегаты архивных задач пользователя (archive), прочитанные при построении снимка.
+ * Класс не потокобезопасен: вызывающий синхронизируется на экземпляре.
+ */
+final class TaskColumns {
+
+    static final int MAX_MINUTES = 1 << 20;
+
+    private static final int INITIAL_CAPACITY = 64;
+    // ID, версия, дата, минуты, слот сферы, три кода и бит выполнения
+    private static final double BYTES_PER_TASK = 2 * Long.BYTES + 3 * Integer.BYTES + 3 + 1.0 / Long.SIZE;
+
+    record Row(long id, long version, int deadlineDay, int minutes, byte priority, byte type, byte energyCost,
+               boolean completed, long sphereId) {
+    }
+
+    long[] ids = new long[INITIAL_CAPACITY];
+    long[] versions = new long[INITIAL_CAPACITY];
+    int[] deadlineDays = new int[INITIAL_CAPACITY];
+    int[] minutes = new int[INITIAL_CAPACITY];
+    int[] sphereSlots = new int[INITIAL_CAPACITY];
+    byte[] priorities = new byte[INITIAL_CAPACITY];
+    byte[] types = new byte[INITIAL_CAPACITY];
+    byte[] energyCosts = new byte[INITIAL_CAPACITY];
+    long[] completed = new long[INITIAL_CAPACITY / Long.SIZE];
+    long[] sphereIds = new long[8];
+    int sphereCount;
+    int size;
+    ArchiveTotals archive = ArchiveTotals.EMPTY;
+
+    // Добавить или заменить строку; новые задачи обычно имеют наибольший ID и дописываются в конец.
+    // Изменения применяются после коммита в произвольном порядке, поэтому более старая версия строки игнорируется
+    void upsert(Row row) {
+        int index = size > 0 && row.id() > ids[size - 1] ? -(size + 1) : Arrays.binarySearch(ids, 0, size, row.id());
+        if (index >= 0 && row.version() < versions[index]) {
+            return;
+        }
+        if (index < 0) {
+            index = -(index + 1);
+            ensureCapacity(size + 1);
+            shiftUp(index);
+            size++;
+        }
+        ids[index] = row.id();
+        versions[index] = row.version();
+        deadlineDays[index] = row.deadlineDay();
+        minutes[index] = Math.min(Math.max(row.minutes(), 0), MAX_MINUTES);
+        sphereSlots[index] = slotOf(row.sphereId());
+        priorities[index] = row.priority();
+        types[index] = row.type();
+        energyCosts[index] = row.energyCost();
+        setCompleted(index, row.completed());
+    }
+
+    boolean isCompleted(int index) {
+        return (completed[index >>> 6] & (1L << index)) != 0;
+    }
+
+    long memoryBytes() {
+        return (long) (ids.length * BYTES_PER_TASK) + (long) sphereIds.length * Long.BYTES + archive.memoryBytes();
+    }
+
+    private int slotOf(long sphereId) {
+        for (int slot = 0; slot < sphereCount; slot++) {
+            if (sphereIds[slot] == sphereId) {
+                return slot;
+            }
+        }
+        if (sphereCount == sphereIds.length) {
+            sphereIds = Arrays.copyOf(sphereIds, sphereCount * 2);
+        }
+        sphereIds[sphereCount] = sphereId;
+        return sphereCount++;
+    }
+
+    private void setCompleted(int index, boolean value) {
+        if (value) {
+            completed[index >>> 6] |= 1L << index;
+        } else {
+            completed[index >>> 6] &= ~(1L << index);
+        }
+    }
+
+    // Освободить позицию index, сдвинув строки после нее на одну вперед
+    private void shiftUp(int index) {
+        int tail = size - index;
+        System.arraycopy(ids, index, ids, index + 1, tail);
+        System.arraycopy(versions, index, versions, index + 1, tail);
+        System.arraycopy(deadlineDays, index, deadlineDays, index + 1, tail);
+        System.arraycopy(minutes, index, minutes, index + 1, tail);
+        System.arraycopy(sphereSlots, index, sphereSlots, index + 1, tail);
+        System.arraycopy(priorities, index, priorities, index + 1, tail);
+        System.arraycopy(types, index, types, index + 1, tail);
+        System.arraycopy(energyCosts, index, energyCosts, index + 1, tail);
+
+        int word = index >>> 6;
+        for (int k = size >>> 6; k > word; k--) {
+            completed[k] = (completed[k] << 1) | (completed[k - 1] >>> 63);
+        }
+        long lowMask = (1L << index) - 1;
+        completed[word] = (completed[word] & lowMask) | ((completed[word] << 1) & ~lowMask);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length + (ids.length >> 1));
+        // Емкость кратна 64, чтобы маска выполнения читалась целыми словами
+        grown = (grown + Long.SIZE - 1) & -Long.SIZE;
+        ids = Arrays.copyOf(ids, grown);
+        versions = Arrays.copyOf(versions, grown);
+        deadlineDays = Arrays.copyOf(deadlineDays, grown);
+        minutes = Arrays.copyOf(minutes, grown);
+        sphereSlots = Arrays.copyOf(sphereSlots, grown);
+        priorities = Arrays.copyOf(priorities, grown);
+        types = Arrays.copyOf(types, grown);
+        energyCosts = Arrays.copyOf(energyCosts, grown);
+        completed = Arrays.copyOf(completed, grown / Long.SIZE);
+    }
+}
\ No newline at end of file
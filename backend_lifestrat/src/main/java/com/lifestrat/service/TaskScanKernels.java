@@ -0,0 +1,17 @@
+package com.lifestrat.service;
+
+/**
+ * Агрегирующие сканы по колонкам TaskColumns. Реализации: векторная на Vector API
+ * и скалярная, которая используется, если модуль jdk.incubator.vector не подключен.
+ */
+interface TaskScanKernels {
+
+    // Суммы минут выполненных задач с дедлайном в [fromDay, toDay] по слотам сфер; counts — число таких задач
+    long[] sumCompletedMinutesBySphere(TaskColumns columns, int fromDay, int toDay, long[] counts);
+
+    // Суммы минут: [0] — всех задач, [1] — выполненных
+    long[] sumMinutes(TaskColumns columns);
+
+    // Число задач с каждым кодом от 0 до codeCount - 1
+    long[] countByCode(byte[] codes, int size, int codeCount);
+}
\ No newline at end of file
@@ -1,13 +1,27 @@
 package com.lifestrat.service;
 
+import com.lifestrat.dto.TaskPatchRequest;
+import com.lifestrat.entity.EntityKind;
+import com.lifestrat.entity.Priority;
 import com.lifestrat.entity.Task;
 import com.lifestrat.entity.TaskType;
+import com.lifestrat.event.DataChangedEvent;
 import com.lifestrat.repository.TaskRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,10 +31,25 @@ import java.util.Optional;
 public class TaskService {
 
     private final TaskRepository taskRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SearchIndexService searchIndexService;
+    private final ProjectScheduleService projectScheduleService;
+    private final TaskSnapshotService taskSnapshotService;
+    private final EntityManager entityManager;
 
     @Autowired
-    public TaskService(TaskRepository taskRepository) {
+    public TaskService(TaskRepository taskRepository,
+                       ApplicationEventPublisher eventPublisher,
+                       SearchIndexService searchIndexService,
+                       ProjectScheduleService projectScheduleService,
+                       TaskSnapshotService taskSnapshotService,
+                       EntityManager entityManager) {
         this.taskRepository = taskRepository;
+        this.eventPublisher = eventPublisher;
+        this.searchIndexService = searchIndexService;
+        this.projectScheduleService = projectScheduleService;
+        this.taskSnapshotService = taskSnapshotService;
+        this.entityManager = entityManager;
     }
 
     // Получить все задачи пользователя
@@ -54,8 +83,14 @@ public class TaskService {
             throw new IllegalArgumentException("Task must be associated with the correct user");
         }
 
+        task.setOverdue(isOverdue(task));
         Task savedTask = taskRepository.save(task);
-        log.info("Task created successfully with ID: {} for user ID: {}", savedTask.getId(), userId);
+        publishChange(userId, savedTask.getId());
+        searchIndexService.index(savedTask, userId);
+        projectScheduleService.taskSaved(savedTask);
+        taskSnapshotService.taskSaved(savedTask);
+        log.atInfo().setMessage("Task created").addKeyValue("taskId", savedTask.getId())
+                .addKeyValue("userId", userId).log();
         return savedTask;
     }
 
@@ -63,6 +98,18 @@ public class TaskService {
     public Task update(Task taskFromDb, Task taskFromRequest) {
         log.debug("Updating task ID: {}", taskFromDb.getId());
 
+        // Без версии изменение другого клиента было бы молча перезаписано
+        if (taskFromRequest.getVersion() == null) {
+            throw new IllegalArgumentException("Task version is required for update");
+        }
+
+        // Клиент редактировал устаревшую версию задачи
+        if (!taskFromRequest.getVersion().equals(taskFromDb.getVersion())) {
+            log.warn("Task version conflict - Task ID: {}, expected version: {}, actual: {}",
+                    taskFromDb.getId(), taskFromRequest.getVersion(), taskFromDb.getVersion());
+            throw new ObjectOptimisticLockingFailureException(Task.class, taskFromDb.getId());
+        }
+
         // Копируем все поля из taskFromRequest в taskFromDb
         taskFromDb.setTitle(taskFromRequest.getTitle());
         taskFromDb.setDescription(taskFromRequest.getDescription());
@@ -71,32 +118,191 @@ public class TaskService {
         taskFromDb.setEstimatedTimeMinutes(taskFromRequest.getEstimatedTimeMinutes());
         taskFromDb.setEnergyCost(taskFromRequest.getEnergyCost());
         taskFromDb.setCompleted(taskFromRequest.isCompleted());
+        // Повторение не передается вместе с остальными полями: шаблон ритуала снимается только через stopRecurrence
+        if (taskFromRequest.getRecurrence() != null) {
+            taskFromDb.setRecurrence(taskFromRequest.getRecurrence());
+        }
+        taskFromDb.setOverdue(isOverdue(taskFromDb));
 
         Task updatedTask = taskRepository.save(taskFromDb);
-        log.info("Task updated successfully with ID: {}", updatedTask.getId());
+        publishChange(updatedTask.getUser().getId(), updatedTask.getId());
+        searchIndexService.index(updatedTask, updatedTask.getUser().getId());
+        projectScheduleService.taskSaved(updatedTask);
+        taskSnapshotService.taskSaved(updatedTask);
+        log.atInfo().setMessage("Task updated").addKeyValue("taskId", updatedTask.getId()).log();
         return updatedTask;
     }
 
     // Удалить задачу
     public void delete(Task task) {
         log.debug("Deleting task ID: {}", task.getId());
+        projectScheduleService.taskDeleted(task);
+        // Экземпляры остаются у пользователя обычными задачами, как и при каскадном удалении
+        List<Long> instanceIds = taskRepository.findInstanceIds(task.getId());
+        taskRepository.detachInstances(task.getId());
+        instanceIds.forEach(instanceId -> publishChange(task.getUser().getId(), instanceId));
         taskRepository.delete(task);
-        log.info("Task deleted successfully with ID: {}", task.getId());
+        taskSnapshotService.taskDeleted(task);
+        publishDeletion(task.getUser().getId(), task.getId());
+        searchIndexService.remove(SearchIndexService.DocumentKind.TASK, task.getId(), task.getUser().getId());
+        log.atInfo().setMessage("Task deleted").addKeyValue("taskId", task.getId()).log();
     }
 
     // Отметить задачу как выполненную
     public Task markAsCompleted(Long taskId, Long userId) {
         log.debug("Marking task as completed - Task ID: {}, User ID: {}", taskId, userId);
 
-        Task task = findByIdAndUserId(taskId, userId)
+        // Один UPDATE по ключу вместо загрузки всех задач пользователя и полной перезаписи строки
+        if (taskRepository.markCompleted(taskId, userId) == 0) {
+            log.error("Task not found or access denied - Task ID: {}, User ID: {}", taskId, userId);
+            throw new RuntimeException("Task not found or access denied");
+        }
+
+        Task completedTask = taskRepository.findById(taskId).orElseThrow();
+        publishChange(userId, taskId);
+        projectScheduleService.taskSaved(completedTask);
+        taskSnapshotService.taskSaved(completedTask);
+        log.atInfo().setMessage("Task completed").addKeyValue("taskId", taskId)
+                .addKeyValue("userId", userId).log();
+        return completedTask;
+    }
+
+    // Прекратить повторение ритуала: шаблон становится обычной задачей, созданные экземпляры остаются
+    public Task stopRecurrence(Long taskId, Long userId) {
+        log.debug("Stopping recurrence - Task ID: {}, User ID: {}", taskId, userId);
+
+        Task task = taskRepository.findById(taskId)
+                .filter(found -> found.getUser().getId().equals(userId))
                 .orElseThrow(() -> {
                     log.error("Task not found or access denied - Task ID: {}, User ID: {}", taskId, userId);
                     return new RuntimeException("Task not found or access denied");
                 });
+        task.setRecurrence(null);
+        task.setOverdue(isOverdue(task));
 
-        task.setCompleted(true);
-        Task completedTask = taskRepository.save(task);
-        log.info("Task marked as completed - Task ID: {}, User ID: {}", taskId, userId);
-        return completedTask;
+        Task updatedTask = taskRepository.save(task);
+        publishChange(userId, taskId);
+        taskSnapshotService.taskSaved(updatedTask);
+        log.atInfo().setMessage("Task recurrence stopped").addKeyValue("taskId", taskId)
+                .addKeyValue("userId", userId).log();
+        return updatedTask;
+    }
+
+    // Частично обновить задачу одним условным UPDATE только по переданным полям
+    public Task patch(Long taskId, Long userId, TaskPatchRequest patch) {
+        log.debug("Patching task ID: {} for user ID: {}, expected version: {}", taskId, userId, patch.version());
+
+        if (patch.version() == null) {
+            throw new IllegalArgumentException("Task version is required for partial update");
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Task> update = cb.createCriteriaUpdate(Task.class);
+        Root<Task> root = update.from(Task.class);
+
+        if (patch.title() != null) {
+            update.set(root.get("title"), patch.title());
+        }
+        if (patch.description() != null) {
+            update.set(root.get("description"), patch.description());
+        }
+        if (patch.deadline() != null) {
+            update.set(root.get("deadline"), patch.deadline());
+        }
+        if (patch.priority() != null) {
+            update.set(root.get("priority"), patch.priority());
+        }
+        if (patch.estimatedTimeMinutes() != null) {
+            update.set(root.get("estimatedTimeMinutes"), patch.estimatedTimeMinutes());
+        }
+        if (patch.energyCost() != null) {
+            update.set(root.get("energyCost"), patch.energyCost());
+        }
+        if (patch.completed() != null) {
+            update.set(root.get("completed"), patch.completed());
+        }
+        if (patch.deadline() != null || patch.completed() != null) {
+            // Флаг просрочки пересчитывается в том же UPDATE по новым значениям полей
+            Expression<Boolean> completed = patch.completed() != null
+                    ? cb.literal(patch.completed()) : root.get("completed");
+            Expression<LocalDate> deadline = patch.deadline() != null
+                    ? cb.literal(patch.deadline()) : root.get("deadline");
+            Expression<Boolean> overdue = cb.<Boolean>selectCase()
+                    .when(cb.and(cb.isFalse(completed),
+                            cb.lessThan(deadline, LocalDate.now()),
+                            cb.isNull(root.get("recurrence"))), true)
+                    .otherwise(false);
+            update.set(root.<Boolean>get("overdue"), overdue);
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.<Long>get("version"), 1L));
+        update.set(root.get("updatedAt"), LocalDateTime.now());
+        update.where(cb.equal(root.get("id"), taskId),
+                cb.equal(root.get("user").get("id"), userId),
+                cb.equal(root.get("version"), patch.version()));
+
+        entityManager.flush();
+        int updated = entityManager.createQuery(update).executeUpdate();
+        entityManager.clear();
+
+        if (updated == 0) {
+            if (!taskRepository.existsByIdAndUserId(taskId, userId)) {
+                log.error("Task not found or access denied - Task ID: {}, User ID: {}", taskId, userId);
+                throw new RuntimeException("Task not found or access denied");
+            }
+            log.warn("Task version conflict - Task ID: {}, expected version: {}", taskId, patch.version());
+            throw new ObjectOptimisticLockingFailureException(Task.class, taskId);
+        }
+
+        Task patchedTask = taskRepository.findById(taskId).orElseThrow();
+        publishChange(userId, taskId);
+        if (patch.title() != null || patch.description() != null) {
+            searchIndexService.index(patchedTask, userId);
+        }
+        if (patch.estimatedTimeMinutes() != null || patch.completed() != null) {
+            projectScheduleService.taskSaved(patchedTask);
+        }
+        taskSnapshotService.taskSaved(patchedTask);
+        log.atInfo().setMessage("Task patched").addKeyValue("taskId", taskId)
+                .addKeyValue("version", patchedTask.getVersion()).log();
+        return patchedTask;
+    }
+
+    // Получить невыполненные задачи пользователя с истекшим дедлайном
+    public List<Task> findOverdueByUserId(Long userId) {
+        log.debug("Getting overdue tasks for user ID: {}", userId);
+        return taskRepository.findAllByUserIdAndCompletedFalseAndDeadlineBeforeOrderByDeadline(userId, LocalDate.now());
+    }
+
+    // Получить задачи пользователя с дедлайном в диапазоне дат
+    public List<Task> findAllByUserIdAndDeadlineBetween(Long userId, LocalDate from, LocalDate to) {
+        log.debug("Getting tasks for user ID: {} with deadline between {} and {}", userId, from, to);
+        return taskRepository.findAllByUserIdAndDeadlineBetweenOrderByDeadline(userId, from, to);
+    }
+
+    // Получить задачи с высоким приоритетом
+    public List<Task> findHighPriorityByUserId(Long userId) {
+        log.debug("Getting high priority tasks for user ID: {}", userId);
+        return taskRepository.findAllByUserIdAndPriorityIn(userId, EnumSet.of(Priority.HIGH, Priority.CRITICAL));
+    }
+
+    // Количество просроченных задач (флаг, выставленный при записи и ночным обходом)
+    public long countOverdueByUserId(Long userId) {
+        log.debug("Counting overdue tasks for user ID: {}", userId);
+        return taskRepository.countByUserIdAndOverdueTrue(userId);
+    }
+
+    // Шаблоны ритуалов не просрочиваются: их дедлайн — дата начала повторений
+    private static boolean isOverdue(Task task) {
+        return !task.isCompleted() && task.getRecurrence() == null && task.getDeadline().isBefore(LocalDate.now());
+    }
+
+    // Опубликовать событие об изменении задачи (обрабатывается после коммита)
+    private void publishChange(Long userId, Long taskId) {
+        eventPublisher.publishEvent(new DataChangedEvent(userId, EntityKind.TASK, taskId, false));
+    }
+
+    // Опубликовать событие об удалении задачи
+    private void publishDeletion(Long userId, Long taskId) {
+        eventPublisher.publishEvent(new DataChangedEvent(userId, EntityKind.TASK, taskId, true));
     }
 }
\ No newline at end of file
@@ -0,0 +1,227 @@
+package com.lifestrat.service;
+
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.repository.ArchivedTaskRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Колоночные снимки задач пользователей для аналитики без создания объектов на каждую строку.
+ * Снимок строится из БД при первом обращении, затем обновляется изменениями из TaskService
+ * после коммита; массовые операции (ритуалы, архивация, каскадное удаление) сбрасывают снимки.
+ * В снимке хранятся и агрегаты архива: архив меняют только архивация и каскадное удаление,
+ * поэтому после сброса снимка они перечитываются вместе с ним, а не на каждый запрос аналитики.
+ * Снимки вытесняются по LRU, когда их суммарный объем превышает бюджет памяти.
+ */
+@Service
+@Slf4j
+public class TaskSnapshotService {
+
+    record TimeTotals(long plannedMinutes, long completedMinutes, long tasks, long completedTasks) {
+    }
+
+    private final TaskRepository taskRepository;
+    private final ArchivedTaskRepository archivedTaskRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final boolean enabled;
+    private final TaskScanKernels kernels;
+    private final AfterCommitCache<Long, TaskColumns> snapshots; // Снимки по ID пользователя, вес — объем в байтах
+
+    @Autowired
+    public TaskSnapshotService(TaskRepository taskRepository,
+                               ArchivedTaskRepository archivedTaskRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${lifestrat.snapshot.enabled:true}") boolean enabled,
+                               @Value("${lifestrat.snapshot.memory-budget-mb:256}") long memoryBudgetMb,
+                               @Value("${lifestrat.snapshot.vector-enabled:true}") boolean vectorEnabled) {
+        this.taskRepository = taskRepository;
+        this.archivedTaskRepository = archivedTaskRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.enabled = enabled;
+        this.snapshots = new AfterCommitCache<>(memoryBudgetMb * 1024 * 1024, TaskColumns::memoryBytes);
+        this.kernels = vectorEnabled ? loadVectorKernels() : new ScalarTaskScanKernels();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Минуты выполненных задач с дедлайном не раньше from по ID сфер; сферы без таких задач не попадают
+    public Map<Long, Long> completedMinutesBySphere(Long userId, LocalDate from) {
+        return read(userId, columns -> {
+            long[] counts = new long[columns.sphereCount];
+            long[] sums = kernels.sumCompletedMinutesBySphere(columns, (int) from.toEpochDay(), Integer.MAX_VALUE, counts);
+            Map<Long, Long> result = new HashMap<>();
+            for (int slot = 0; slot < sums.length; slot++) {
+                if (counts[slot] > 0) {
+                    result.put(columns.sphereIds[slot], sums[slot]);
+                }
+            }
+            return result;
+        });
+    }
+
+    public TimeTotals timeTotals(Long userId) {
+        return read(userId, columns -> {
+            long[] minutes = kernels.sumMinutes(columns);
+            long completedTasks = 0;
+            for (int word = 0; word < (columns.size + Long.SIZE - 1) / Long.SIZE; word++) {
+                completedTasks += Long.bitCount(columns.completed[word]);
+            }
+            return new TimeTotals(minutes[0], minutes[1], columns.size, completedTasks);
+        });
+    }
+
+    public Map<Priority, Long> priorityDistribution(Long userId) {
+        return read(userId, columns -> {
+            Priority[] priorities = Priority.values();
+            long[] counts = kernels.countByCode(columns.priorities, columns.size, priorities.length);
+            Map<Priority, Long> result = new EnumMap<>(Priority.class);
+            for (Priority priority : priorities) {
+                if (counts[priority.ordinal()] > 0) {
+                    result.put(priority, counts[priority.ordinal()]);
+                }
+            }
+            return result;
+        });
+    }
+
+    // Различные даты дедлайнов выполненных задач по возрастанию
+    public List<LocalDate> completedDays(Long userId) {
+        return read(userId, columns -> {
+            int minDay = Integer.MAX_VALUE;
+            for (int i = 0; i < columns.size; i++) {
+                if (columns.isCompleted(i)) {
+                    minDay = Math.min(minDay, columns.deadlineDays[i]);
+                }
+            }
+            BitSet days = new BitSet();
+            for (int i = 0; i < columns.size; i++) {
+                if (columns.isCompleted(i)) {
+                    days.set(columns.deadlineDays[i] - minDay);
+                }
+            }
+            List<LocalDate> result = new ArrayList<>(days.cardinality());
+            for (int day = days.nextSetBit(0); day >= 0; day = days.nextSetBit(day + 1)) {
+                result.add(LocalDate.ofEpochDay((long) minDay + day));
+            }
+            return result;
+        });
+    }
+
+    // Агрегаты архивных задач; без снимков читаются из БД при каждом вызове
+    ArchiveTotals archiveTotals(Long userId) {
+        if (!enabled) {
+            return readOnlyTransaction.execute(status -> loadArchive(userId));
+        }
+        return read(userId, columns -> columns.archive);
+    }
+
+    // Применить созданную или измененную задачу к снимку после коммита
+    public void taskSaved(Task task) {
+        if (!enabled) {
+            return;
+        }
+        Long userId = task.getUser().getId();
+        AfterCommitCache.afterCommit(() -> {
+            TaskColumns.Row row = new TaskColumns.Row(
+                    task.getId(),
+                    task.getVersion(),
+                    (int) task.getDeadline().toEpochDay(),
+                    task.getEstimatedTimeMinutes(),
+                    (byte) task.getPriority().ordinal(),
+                    (byte) task.getType().ordinal(),
+                    (byte) task.getEnergyCost().ordinal(),
+                    task.isCompleted(),
+                    task.getLifeSphere().getId());
+            snapshots.update(userId, columns -> columns.upsert(row));
+        });
+    }
+
+    // Удаление сбрасывает снимок: запоздавшее изменение удаленной задачи иначе вернуло бы ее в снимок
+    public void taskDeleted(Task task) {
+        if (!enabled) {
+            return;
+        }
+        evict(task.getUser().getId());
+    }
+
+    // Сбросить снимок пользователя; при следующем обращении он будет перечитан из БД
+    public void evict(Long userId) {
+        AfterCommitCache.afterCommit(() -> snapshots.invalidate(userId));
+    }
+
+    // Сбросить все снимки после массовых изменений задач в обход TaskService
+    public void evictAll() {
+        AfterCommitCache.afterCommit(snapshots::invalidateAll);
+    }
+
+    private <T> T read(Long userId, Function<TaskColumns, T> scan) {
+        TaskColumns columns = snapshots.getOrLoad(userId, this::load);
+        synchronized (columns) {
+            return scan.apply(columns);
+        }
+    }
+
+    private TaskColumns load(Long userId) {
+        long start = System.nanoTime();
+        TaskColumns columns = new TaskColumns();
+        readOnlyTransaction.executeWithoutResult(status -> {
+            for (Object[] row : taskRepository.findColumnsByUserId(userId)) {
+                columns.upsert(new TaskColumns.Row(
+                        (Long) row[0],
+                        (Long) row[8],
+                        (int) ((LocalDate) row[1]).toEpochDay(),
+                        (Integer) row[2],
+                        (byte) ((Priority) row[3]).ordinal(),
+                        (byte) ((TaskType) row[4]).ordinal(),
+                        (byte) ((EnergyCost) row[5]).ordinal(),
+                        (Boolean) row[6],
+                        (Long) row[7]));
+            }
+            columns.archive = loadArchive(userId);
+        });
+        log.debug("Task snapshot built for user ID: {}. Tasks: {}, archived: {}, took {} ms",
+                userId, columns.size, columns.archive.tasks(), (System.nanoTime() - start) / 1_000_000);
+        return columns;
+    }
+
+    private ArchiveTotals loadArchive(Long userId) {
+        return new ArchiveTotals(archivedTaskRepository.sumBySphereAndDay(userId),
+                archivedTaskRepository.countByPriority(userId),
+                archivedTaskRepository.countStepsByProject(userId));
+    }
+
+    // Векторные сканы доступны, только если JVM запущена с --add-modules jdk.incubator.vector
+    private static TaskScanKernels loadVectorKernels() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            log.info("jdk.incubator.vector is not available, task snapshots use scalar scans");
+            return new ScalarTaskScanKernels();
+        }
+        try {
+            return (TaskScanKernels) Class.forName("com.lifestrat.service.VectorTaskScanKernels")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            log.warn("Vector scans unavailable, task snapshots use scalar scans. Error: {}", e.getMessage());
+            return new ScalarTaskScanKernels();
+        }
+    }
+}
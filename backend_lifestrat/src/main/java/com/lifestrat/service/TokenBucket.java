@@ -0,0 +1,84 @@
+package com.lifestrat.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Корзина токенов без блокировок: остаток и время последнего пополнения упакованы в один long
+ * и меняются одним compareAndSet. Остаток хранится в долях токена (UNITS_PER_TOKEN на токен),
+ * чтобы пополнение на refillPerMinute токенов в минуту было целым числом долей за миллисекунду.
+ * Время — миллисекунды монотонных часов по модулю 2^TIME_BITS (около 4 лет), разность берется по модулю.
+ * Полная корзина неотличима от новой, поэтому ее можно удалить без потери состояния;
+ * удаленная корзина помечается EVICTED, и вызывающий берет из таблицы новую.
+ */
+final class TokenBucket {
+
+    static final long UNITS_PER_TOKEN = 60_000;
+    static final long MAX_UNITS = (1L << (Long.SIZE - 37)) - 1;
+    static final long EVICTED = -1L;
+
+    private static final int TIME_BITS = 37;
+    private static final long TIME_MASK = (1L << TIME_BITS) - 1;
+
+    private final AtomicLong state;
+    private final long capacityUnits;
+    private final long refillUnitsPerMs;
+
+    TokenBucket(int capacity, int refillPerMinute, long nowMs) {
+        this.capacityUnits = capacity * UNITS_PER_TOKEN;
+        this.refillUnitsPerMs = refillPerMinute;
+        this.state = new AtomicLong(pack(capacityUnits, nowMs));
+    }
+
+    // 0 — токен выдан; больше 0 — через сколько миллисекунд появится токен; EVICTED — корзина удалена
+    long tryAcquire(long nowMs) {
+        while (true) {
+            long current = state.get();
+            if (current == EVICTED) {
+                return EVICTED;
+            }
+            long units = refilled(current, nowMs);
+            if (units < UNITS_PER_TOKEN) {
+                // Отказ не меняет состояние: пополнение досчитается при следующем обращении
+                return (UNITS_PER_TOKEN - units + refillUnitsPerMs - 1) / refillUnitsPerMs;
+            }
+            if (state.compareAndSet(current, pack(units - UNITS_PER_TOKEN, latest(current, nowMs)))) {
+                return 0;
+            }
+        }
+    }
+
+    // Пометить корзину удаленной, если она успела заполниться; true, если корзина удалена
+    boolean tryEvict(long nowMs) {
+        while (true) {
+            long current = state.get();
+            if (current == EVICTED) {
+                return true;
+            }
+            if (refilled(current, nowMs) < capacityUnits) {
+                return false;
+            }
+            if (state.compareAndSet(current, EVICTED)) {
+                return true;
+            }
+        }
+    }
+
+    private long refilled(long packed, long nowMs) {
+        long units = packed >>> TIME_BITS;
+        return Math.min(capacityUnits, units + elapsed(packed, nowMs) * refillUnitsPerMs);
+    }
+
+    // Поток мог прочитать часы раньше, чем другой записал свое время; такое «отрицательное» время считается нулем
+    private static long elapsed(long packed, long nowMs) {
+        long elapsed = (nowMs - packed) & TIME_MASK;
+        return elapsed > TIME_MASK >>> 1 ? 0 : elapsed;
+    }
+
+    private static long latest(long packed, long nowMs) {
+        return elapsed(packed, nowMs) == 0 ? packed & TIME_MASK : nowMs;
+    }
+
+    private static long pack(long units, long nowMs) {
+        return units << TIME_BITS | nowMs & TIME_MASK;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,240 @@
+package com.lifestrat.service;
+
+import com.lifestrat.config.ShardUnavailableException;
+import com.lifestrat.config.ShardingProperties;
+import com.lifestrat.util.ConsistentHashRing;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Глобальный справочник пользователей при шардировании.
+ * Хранит уникальные username и email, выдает глобальные ID пользователей и помнит,
+ * на каком шарде лежат данные каждого. Новый пользователь размещается по кольцу
+ * консистентного хеширования; при ребалансировке шард в справочнике меняется после переноса данных.
+ */
+@Service
+@ConditionalOnProperty(prefix = "lifestrat.sharding", name = "enabled", havingValue = "true")
+@Slf4j
+public class UserDirectoryService {
+
+    // Шард и признак переноса; хранится в кеше ограниченное время
+    private record Placement(int shard, boolean moving, long expiresAt) {
+    }
+
+    // Пользователь, чей шард в справочнике не совпадает с шардом по кольцу
+    public record Misplacement(long userId, int currentShard, int targetShard) {
+    }
+
+    // Пользователь, уже лежащий на шарде; нужен для заполнения справочника
+    public record ExistingUser(long userId, String username, String email) {
+    }
+
+    private static final int MAX_CACHED_PLACEMENTS = 100_000;
+
+    private static final String SHARD_BY_USERNAME_SQL = "SELECT shard, moving FROM user_directory WHERE username = ?";
+
+    private static final String BACKFILL_SQL = """
+            INSERT INTO user_directory (user_id, username, email, shard)
+            SELECT ?, ?, ?, ?
+            WHERE NOT EXISTS (SELECT 1 FROM user_directory WHERE user_id = ?)
+            """;
+
+    private static final String CREATE_TABLE_SQL = """
+            CREATE TABLE IF NOT EXISTS user_directory (
+                user_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                username VARCHAR(50) NOT NULL UNIQUE,
+                email VARCHAR(100) NOT NULL UNIQUE,
+                shard INT NOT NULL,
+                moving BOOLEAN DEFAULT FALSE NOT NULL
+            )
+            """;
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConsistentHashRing ring;
+    private final long cacheTtlMs;
+    private final Map<Object, Placement> placements = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UserDirectoryService(ShardingProperties properties) {
+        if (properties.shardUrls().isEmpty() || properties.directoryUrl() == null) {
+            throw new IllegalStateException("Sharding requires lifestrat.sharding.shard-urls and directory-url");
+        }
+        this.dataSource = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(properties.directoryUrl())
+                .username(properties.username())
+                .password(properties.password())
+                .build();
+        this.dataSource.setPoolName("user-directory");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.ring = new ConsistentHashRing(properties.shardUrls().size(), properties.virtualNodes());
+        this.cacheTtlMs = properties.directoryCacheTtlMs();
+        jdbcTemplate.execute(CREATE_TABLE_SQL);
+    }
+
+    // Зарезервировать username и email и выдать ID и шард нового пользователя
+    public long allocate(String username, String email) {
+        try {
+            Long userId = transactionTemplate.execute(status -> {
+                GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+                jdbcTemplate.update(connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            "INSERT INTO user_directory (username, email, shard) VALUES (?, ?, -1)",
+                            new String[]{"user_id"});
+                    statement.setString(1, username);
+                    statement.setString(2, email);
+                    return statement;
+                }, keyHolder);
+                long id = keyHolder.getKey().longValue();
+                jdbcTemplate.update("UPDATE user_directory SET shard = ? WHERE user_id = ?", ring.shardFor(id), id);
+                return id;
+            });
+            log.info("Allocated user ID: {} for username: {} on shard: {}", userId, username, ring.shardFor(userId));
+            return userId;
+        } catch (DuplicateKeyException e) {
+            if (existsByUsername(username)) {
+                throw new IllegalArgumentException("User with username '" + username + "' already exists");
+            }
+            throw new IllegalArgumentException("User with email '" + email + "' already exists");
+        }
+    }
+
+    // Записать в справочник пользователей, созданных на шарде до включения шардирования.
+    // Уже известные справочнику пропускаются; новые ID выдаются после наибольшего записанного
+    public int backfill(int shard, List<ExistingUser> users) {
+        if (users.isEmpty()) {
+            return 0;
+        }
+        Integer added = transactionTemplate.execute(status -> {
+            int[] counts = jdbcTemplate.batchUpdate(BACKFILL_SQL, users, users.size(), (statement, user) -> {
+                statement.setLong(1, user.userId());
+                statement.setString(2, user.username());
+                statement.setString(3, user.email());
+                statement.setInt(4, shard);
+                statement.setLong(5, user.userId());
+            })[0];
+            int inserted = Arrays.stream(counts).sum();
+            if (inserted > 0) {
+                Long maxId = jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM user_directory", Long.class);
+                jdbcTemplate.execute("ALTER TABLE user_directory ALTER COLUMN user_id RESTART WITH " + (maxId + 1));
+            }
+            return inserted;
+        });
+        placements.clear();
+        return added != null ? added : 0;
+    }
+
+    // Освободить username и email удаленного пользователя
+    public void release(long userId) {
+        jdbcTemplate.update("DELETE FROM user_directory WHERE user_id = ?", userId);
+        placements.clear();
+        log.info("Released directory entry for user ID: {}", userId);
+    }
+
+    public boolean existsByUsername(String username) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) > 0 FROM user_directory WHERE username = ?", Boolean.class, username));
+    }
+
+    public boolean existsByEmail(String email) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) > 0 FROM user_directory WHERE email = ?", Boolean.class, email));
+    }
+
+    // Шард пользователя по ID
+    public int shardOf(Long userId) {
+        return resolve(userId, "SELECT shard, moving FROM user_directory WHERE user_id = ?");
+    }
+
+    // Шард пользователя по имени (вход и запросы с JWT, где известно только имя)
+    public int shardOfUsername(String username) {
+        return resolve(username, SHARD_BY_USERNAME_SQL);
+    }
+
+    // Есть ли пользователь в справочнике; положительный ответ берется из того же кеша, что и маршрутизация
+    public boolean isRegistered(String username) {
+        return lookup(username, SHARD_BY_USERNAME_SQL) != null;
+    }
+
+    // Пользователи, которых нужно перенести после изменения числа шардов
+    public List<Misplacement> findMisplaced() {
+        return jdbcTemplate.query("SELECT user_id, shard FROM user_directory ORDER BY user_id",
+                        (rs, rowNum) -> new Misplacement(rs.getLong("user_id"), rs.getInt("shard"),
+                                ring.shardFor(rs.getLong("user_id"))))
+                .stream()
+                .filter(misplacement -> misplacement.currentShard() != misplacement.targetShard())
+                .toList();
+    }
+
+    // Пока пользователь переносится, его запросы отклоняются
+    public void setMoving(long userId, boolean moving) {
+        jdbcTemplate.update("UPDATE user_directory SET moving = ? WHERE user_id = ?", moving, userId);
+        placements.clear();
+    }
+
+    // Переключить пользователя на новый шард и снять признак переноса
+    public void assign(long userId, int shard) {
+        jdbcTemplate.update("UPDATE user_directory SET shard = ?, moving = FALSE WHERE user_id = ?", shard, userId);
+        placements.clear();
+    }
+
+    // Время, за которое все экземпляры приложения увидят изменение справочника
+    public long getCacheTtlMs() {
+        return cacheTtlMs;
+    }
+
+    private int resolve(Object key, String sql) {
+        Placement placement = lookup(key, sql);
+        if (placement == null) {
+            throw new IllegalArgumentException("User " + key + " is not registered in the directory");
+        }
+        if (placement.moving()) {
+            throw new ShardUnavailableException("User data is being moved to another shard, retry later");
+        }
+        return placement.shard();
+    }
+
+    // Размещение пользователя из кеша или справочника; null, если пользователя нет
+    private Placement lookup(Object key, String sql) {
+        long now = System.currentTimeMillis();
+        Placement placement = placements.get(key);
+        if (placement == null || placement.expiresAt() < now) {
+            List<Placement> found = jdbcTemplate.query(sql,
+                    (rs, rowNum) -> new Placement(rs.getInt("shard"), rs.getBoolean("moving"), now + cacheTtlMs),
+                    key);
+            if (found.isEmpty()) {
+                return null;
+            }
+            placement = found.get(0);
+            if (placements.size() >= MAX_CACHED_PLACEMENTS) {
+                placements.values().removeIf(cached -> cached.expiresAt() < now);
+            }
+            placements.put(key, placement);
+        }
+        return placement;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dataSource.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,276 @@
+package com.lifestrat.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Инвертированный индекс по названиям и описаниям проектов и задач одного пользователя.
+ * Словарь термов хранится в отсортированном виде для поиска по префиксу,
+ * а триграммы термов позволяют находить совпадения внутри слова.
+ * Пока индекс строится из БД, изменения копятся в очереди и применяются после загрузки.
+ */
+final class UserSearchIndex {
+
+    private static final int TITLE_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    private static final double EXACT_BOOST = 3.0;
+    private static final double PREFIX_BOOST = 2.0;
+    private static final double INFIX_BOOST = 1.0;
+
+    record DocKey(SearchIndexService.DocumentKind kind, Long id) {
+    }
+
+    record Document(DocKey key, String title, String description) {
+    }
+
+    record Hit(DocKey key, String title, double score) {
+    }
+
+    // В индексе хранится только название и термы документа с весами, без исходного описания
+    private record Stored(String title, String[] terms, int[] weights) {
+    }
+
+    private final Map<DocKey, Stored> documents = new HashMap<>();
+    private final NavigableMap<String, Map<DocKey, Integer>> postings = new TreeMap<>();
+    private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+    private final List<Runnable> pending = new ArrayList<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    // Загрузить документы из БД и применить изменения, накопленные за время загрузки
+    synchronized void load(List<Document> loaded) {
+        loaded.forEach(this::put);
+        pending.forEach(Runnable::run);
+        pending.clear();
+        ready.complete(null);
+    }
+
+    synchronized void fail(Throwable error) {
+        ready.completeExceptionally(error);
+    }
+
+    CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    synchronized void upsert(Document document) {
+        apply(() -> put(document));
+    }
+
+    synchronized void remove(DocKey key) {
+        apply(() -> delete(key));
+    }
+
+    synchronized List<Hit> search(String query, SearchIndexService.DocumentKind kind, int limit) {
+        List<String> queryTokens = new ArrayList<>(tokenize(query));
+        if (queryTokens.isEmpty()) {
+            return List.of();
+        }
+
+        // Кандидатов дает самый избирательный токен,
+        // остальные токены проверяются только по термам найденных документов
+        String driver = queryTokens.get(0);
+        long driverCost = estimateCost(driver, Long.MAX_VALUE);
+        for (String token : queryTokens.subList(1, queryTokens.size())) {
+            long cost = estimateCost(token, driverCost);
+            if (cost < driverCost) {
+                driver = token;
+                driverCost = cost;
+            }
+        }
+        queryTokens.remove(driver);
+
+        Map<DocKey, Double> scores = scoreToken(driver);
+        for (String token : queryTokens) {
+            scores.replaceAll((key, score) -> {
+                double match = matchDocument(documents.get(key), token);
+                return match > 0 ? score + match : 0;
+            });
+            scores.values().removeIf(score -> score == 0);
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        return scores.entrySet().stream()
+                .filter(entry -> kind == null || entry.getKey().kind() == kind)
+                .map(entry -> new Hit(entry.getKey(), documents.get(entry.getKey()).title(), entry.getValue()))
+                .sorted((a, b) -> {
+                    int byScore = Double.compare(b.score(), a.score());
+                    return byScore != 0 ? byScore : a.title().compareToIgnoreCase(b.title());
+                })
+                .limit(limit)
+                .toList();
+    }
+
+    private void apply(Runnable change) {
+        if (ready.isDone()) {
+            change.run();
+        } else {
+            pending.add(change);
+        }
+    }
+
+    // Для каждого документа берется лучшее совпадение токена: точное, по префиксу или внутри слова
+    private Map<DocKey, Double> scoreToken(String token) {
+        Map<DocKey, Double> result = new HashMap<>();
+
+        Map<DocKey, Integer> exact = postings.get(token);
+        if (exact != null) {
+            exact.forEach((key, weight) -> result.merge(key, weight * EXACT_BOOST, Math::max));
+        }
+
+        for (Map.Entry<String, Map<DocKey, Integer>> entry
+                : postings.subMap(token, false, token + Character.MAX_VALUE, false).entrySet()) {
+            entry.getValue().forEach((key, weight) -> result.merge(key, weight * PREFIX_BOOST, Math::max));
+        }
+
+        if (token.length() >= 3) {
+            for (String term : termsContaining(token)) {
+                if (!term.startsWith(token)) {
+                    postings.get(term).forEach((key, weight) -> result.merge(key, weight * INFIX_BOOST, Math::max));
+                }
+            }
+        }
+        return result;
+    }
+
+    // Оценка числа документов по точному совпадению и префиксу; считаем не дальше limit
+    private long estimateCost(String token, long limit) {
+        long cost = 0;
+        for (Map<DocKey, Integer> termPostings : postings.tailMap(token, true).headMap(token + Character.MAX_VALUE).values()) {
+            cost += termPostings.size();
+            if (cost >= limit) {
+                break;
+            }
+        }
+        return cost;
+    }
+
+    // Лучшее совпадение токена среди термов одного документа
+    private static double matchDocument(Stored stored, String token) {
+        double best = 0;
+        for (int i = 0; i < stored.terms().length; i++) {
+            String term = stored.terms()[i];
+            double boost;
+            if (term.equals(token)) {
+                boost = EXACT_BOOST;
+            } else if (term.startsWith(token)) {
+                boost = PREFIX_BOOST;
+            } else if (token.length() >= 3 && term.contains(token)) {
+                boost = INFIX_BOOST;
+            } else {
+                continue;
+            }
+            best = Math.max(best, stored.weights()[i] * boost);
+        }
+        return best;
+    }
+
+    // Кандидаты берутся из самой редкой триграммы токена и проверяются на вхождение
+    private List<String> termsContaining(String token) {
+        Set<String> rarest = null;
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            Set<String> terms = trigrams.get(token.substring(i, i + 3));
+            if (terms == null) {
+                return List.of();
+            }
+            if (rarest == null || terms.size() < rarest.size()) {
+                rarest = terms;
+            }
+        }
+        List<String> matches = new ArrayList<>();
+        for (String term : rarest) {
+            if (term.contains(token)) {
+                matches.add(term);
+            }
+        }
+        return matches;
+    }
+
+    private void put(Document document) {
+        delete(document.key());
+
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(document.title()).forEach(term -> weights.merge(term, TITLE_WEIGHT, Integer::sum));
+        tokenize(document.description()).forEach(term -> weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum));
+        String[] terms = weights.keySet().toArray(String[]::new);
+        int[] termWeights = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termWeights[i] = weights.get(terms[i]);
+        }
+        documents.put(document.key(), new Stored(document.title(), terms, termWeights));
+        weights.forEach((term, weight) -> {
+            Map<DocKey, Integer> termPostings = postings.computeIfAbsent(term, t -> {
+                addTrigrams(t);
+                return new HashMap<>();
+            });
+            termPostings.put(document.key(), weight);
+        });
+    }
+
+    private void delete(DocKey key) {
+        Stored previous = documents.remove(key);
+        if (previous == null) {
+            return;
+        }
+        for (String term : previous.terms()) {
+            Map<DocKey, Integer> termPostings = postings.get(term);
+            if (termPostings == null) {
+                continue;
+            }
+            termPostings.remove(key);
+            if (termPostings.isEmpty()) {
+                postings.remove(term);
+                removeTrigrams(term);
+            }
+        }
+    }
+
+    private void addTrigrams(String term) {
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            trigrams.computeIfAbsent(term.substring(i, i + 3), t -> new HashSet<>()).add(term);
+        }
+    }
+
+    private void removeTrigrams(String term) {
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            String trigram = term.substring(i, i + 3);
+            Set<String> terms = trigrams.get(trigram);
+            if (terms != null) {
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+
+    // Разбить текст на термы: нижний регистр, «ё» приводится к «е», разделители — все кроме букв и цифр
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
\ No newline at end of file
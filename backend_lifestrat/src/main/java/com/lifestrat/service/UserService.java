@@ -1,27 +1,54 @@
 package com.lifestrat.service;
 
+import com.lifestrat.config.ShardContext;
 import com.lifestrat.entity.User;
 import com.lifestrat.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Transactional
 @Slf4j
 public class UserService {
 
+    // Хеш той же стоимости, что и у настоящих паролей: по нему проверяется пароль при входе под неизвестным именем
+    private static final String DUMMY_PASSWORD_HASH = "$2a$10$bnEzL4fYXWXd47LJwo0ndOHpULWc7DvlybeAZFH9vbV1Iz1QfXde.";
+
+    private static final int MAX_CACHED_REGISTERED = 100_000;
+
     private final UserRepository userRepository;
+    private final CascadeDeleteService cascadeDeleteService;
+    private final UserDirectoryService userDirectory; // null, если шардирование выключено
     private final BCryptPasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Long> registeredUntil = new ConcurrentHashMap<>(); // Имя -> до какого времени верить
+    private final long registeredCacheTtlMs;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository,
+                       CascadeDeleteService cascadeDeleteService,
+                       ObjectProvider<UserDirectoryService> userDirectory,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${lifestrat.security.registered-cache-ttl-ms:5000}") long registeredCacheTtlMs) {
         this.userRepository = userRepository;
+        this.cascadeDeleteService = cascadeDeleteService;
+        this.userDirectory = userDirectory.getIfAvailable();
         this.passwordEncoder = new BCryptPasswordEncoder();
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.registeredCacheTtlMs = registeredCacheTtlMs;
     }
 
     // Найти пользователя по ID
@@ -36,6 +63,12 @@ public class UserService {
         return userRepository.findByUsername(username);
     }
 
+    // Получить ID пользователя по имени, не загружая сущность целиком
+    public Optional<Long> findIdByUsername(String username) {
+        log.debug("Finding user ID by username: {}", username);
+        return userRepository.findIdByUsername(username);
+    }
+
     // Найти пользователя по email
     public Optional<User> findByEmail(String email) {
         log.debug("Finding user by email: {}", email);
@@ -45,12 +78,41 @@ public class UserService {
     // Проверить существование пользователя по имени
     public Boolean existsByUsername(String username) {
         log.debug("Checking if user exists by username: {}", username);
+        if (userDirectory != null) {
+            return userDirectory.existsByUsername(username);
+        }
         return userRepository.existsByUsername(username);
     }
 
+    // Проверка имени из JWT на каждом запросе. Положительный ответ кешируется на короткое время:
+    // при шардировании — в кеше размещений справочника, иначе — здесь. Удаление на этом экземпляре
+    // сбрасывает кеш сразу, на остальных токен удаленного пользователя перестает действовать за время TTL
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public boolean isRegistered(String username) {
+        if (userDirectory != null) {
+            return userDirectory.isRegistered(username);
+        }
+        long now = System.currentTimeMillis();
+        Long until = registeredUntil.get(username);
+        if (until != null && until >= now) {
+            return true;
+        }
+        if (!userRepository.existsByUsername(username)) {
+            return false;
+        }
+        if (registeredUntil.size() >= MAX_CACHED_REGISTERED) {
+            registeredUntil.values().removeIf(expiresAt -> expiresAt < now);
+        }
+        registeredUntil.put(username, now + registeredCacheTtlMs);
+        return true;
+    }
+
     // Проверить существование пользователя по email
     public Boolean existsByEmail(String email) {
         log.debug("Checking if user exists by email: {}", email);
+        if (userDirectory != null) {
+            return userDirectory.existsByEmail(email);
+        }
         return userRepository.existsByEmail(email);
     }
 
@@ -58,15 +120,44 @@ public class UserService {
     public User save(User user) {
         log.debug("Saving user with username: {}", user.getUsername());
         User savedUser = userRepository.save(user);
-        log.info("User saved successfully with ID: {}", savedUser.getId());
+        log.atInfo().setMessage("User saved").addKeyValue("userId", savedUser.getId()).log();
         return savedUser;
     }
 
-    // Создать нового пользователя с хешированием пароля
+    // Создать нового пользователя с хешированием пароля.
+    // Без общей транзакции: при шардировании базу выбирает справочник уже после резервирования имени
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User createUser(String username, String email, String password) {
         log.debug("Creating new user with username: {}", username);
 
-        // Проверяем, не существует ли уже пользователь с таким username или email
+        if (userDirectory != null) {
+            checkAvailable(username, email);
+            return createShardedUser(username, email, passwordEncoder.encode(password));
+        }
+
+        // Хешируем пароль до транзакции, чтобы не держать соединение на время BCrypt
+        String encodedPassword = passwordEncoder.encode(password);
+
+        // Проверки и вставка в одной транзакции: вне транзакции запросы проверок держали бы свое соединение
+        // до конца метода, а вставка брала бы второе, и одновременные регистрации исчерпывали бы пул
+        return transactionTemplate.execute(status -> {
+            checkAvailable(username, email);
+
+            // Создаем нового пользователя
+            User user = new User();
+            user.setUsername(username);
+            user.setEmail(email);
+            user.setPassword(encodedPassword);
+
+            User savedUser = save(user);
+            log.atInfo().setMessage("User created").addKeyValue("userId", savedUser.getId())
+                    .addKeyValue("username", username).log();
+            return savedUser;
+        });
+    }
+
+    // Проверяем, не существует ли уже пользователь с таким username или email
+    private void checkAvailable(String username, String email) {
         if (existsByUsername(username)) {
             log.warn("User with username '{}' already exists", username);
             throw new IllegalArgumentException("User with username '" + username + "' already exists");
@@ -76,26 +167,35 @@ public class UserService {
             log.warn("User with email '{}' already exists", email);
             throw new IllegalArgumentException("User with email '" + email + "' already exists");
         }
+    }
 
-        // Хешируем пароль
-        String encodedPassword = passwordEncoder.encode(password);
-
-        // Создаем нового пользователя
-        User user = new User();
-        user.setUsername(username);
-        user.setEmail(email);
-        user.setPassword(encodedPassword);
-
-        User savedUser = save(user);
-        log.info("User created successfully with ID: {} and username: {}", savedUser.getId(), username);
-        return savedUser;
+    // Справочник резервирует имя и email и назначает ID и шард; сама запись создается на этом шарде
+    private User createShardedUser(String username, String email, String encodedPassword) {
+        long userId = userDirectory.allocate(username, email);
+        try {
+            User savedUser = ShardContext.callAsUser(userId, () -> {
+                userRepository.insertWithId(userId, username, email, encodedPassword, LocalDateTime.now());
+                return userRepository.findById(userId).orElseThrow();
+            });
+            log.atInfo().setMessage("User created").addKeyValue("userId", userId)
+                    .addKeyValue("username", username).log();
+            return savedUser;
+        } catch (RuntimeException e) {
+            userDirectory.release(userId);
+            throw e;
+        }
     }
 
-    // Удалить пользователя
+    // Удалить пользователя со всеми данными; пачки удаления коммитятся по отдельности, поэтому без общей транзакции
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void delete(User user) {
         log.debug("Deleting user with ID: {} and username: {}", user.getId(), user.getUsername());
-        userRepository.delete(user);
-        log.info("User deleted successfully with ID: {}", user.getId());
+        ShardContext.runAsUser(user.getId(), () -> cascadeDeleteService.deleteUser(user.getId()));
+        if (userDirectory != null) {
+            userDirectory.release(user.getId());
+        }
+        registeredUntil.remove(user.getUsername());
+        log.atInfo().setMessage("User deleted").addKeyValue("userId", user.getId()).log();
     }
 
     // Проверить пароль
@@ -103,6 +203,13 @@ public class UserService {
         return passwordEncoder.matches(rawPassword, encodedPassword);
     }
 
+    // Проверить пароль при входе под неизвестным именем: всегда отказ, но за то же время, что и настоящая проверка,
+    // иначе по времени ответа можно было бы перебирать существующие имена
+    public boolean checkPasswordOfUnknownUser(String rawPassword) {
+        passwordEncoder.matches(rawPassword, DUMMY_PASSWORD_HASH);
+        return false;
+    }
+
     // Хешировать пароль
     public String encodePassword(String rawPassword) {
         return passwordEncoder.encode(rawPassword);
@@ -0,0 +1,130 @@
+package com.lifestrat.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Сканы на Vector API (jdk.incubator.vector). Условия считаются масками по полосам,
+ * маска выполнения берется прямо из слова битовой маски: число полос — степень двойки не больше 64,
+ * поэтому полосы одной итерации всегда лежат в одном слове. Суммы копятся в полосах int
+ * и сбрасываются в long каждые FLUSH_INTERVAL итераций. Хвост массива обрабатывается скалярно.
+ */
+final class VectorTaskScanKernels implements TaskScanKernels {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+    // reduceLanesToLong складывает полосы в int и только потом расширяет до long, поэтому между сбросами
+    // не должна переполняться сумма всех полос: MAX_MINUTES * FLUSH_INTERVAL * число полос < 2^31
+    static final int FLUSH_INTERVAL = Integer.MAX_VALUE / TaskColumns.MAX_MINUTES / INTS.length();
+
+    @Override
+    public long[] sumCompletedMinutesBySphere(TaskColumns columns, int fromDay, int toDay, long[] counts) {
+        int slots = columns.sphereCount;
+        long[] sums = new long[slots];
+        IntVector[] accumulators = new IntVector[slots];
+        IntVector zero = IntVector.zero(INTS);
+        Arrays.fill(accumulators, zero);
+
+        int lanes = INTS.length();
+        int bound = INTS.loopBound(columns.size);
+        int iterations = 0;
+        for (int i = 0; i < bound; i += lanes) {
+            IntVector days = IntVector.fromArray(INTS, columns.deadlineDays, i);
+            VectorMask<Integer> matched = days.compare(VectorOperators.GE, fromDay)
+                    .and(days.compare(VectorOperators.LE, toDay))
+                    .and(completedMask(columns, i));
+            if (matched.anyTrue()) {
+                IntVector minutes = IntVector.fromArray(INTS, columns.minutes, i);
+                IntVector sphereSlots = IntVector.fromArray(INTS, columns.sphereSlots, i);
+                for (int slot = 0; slot < slots; slot++) {
+                    VectorMask<Integer> inSlot = matched.and(sphereSlots.compare(VectorOperators.EQ, slot));
+                    accumulators[slot] = accumulators[slot].add(minutes, inSlot);
+                    counts[slot] += inSlot.trueCount();
+                }
+            }
+            if (++iterations == FLUSH_INTERVAL) {
+                flush(accumulators, sums, zero);
+                iterations = 0;
+            }
+        }
+        flush(accumulators, sums, zero);
+
+        for (int i = bound; i < columns.size; i++) {
+            int day = columns.deadlineDays[i];
+            if (day >= fromDay && day <= toDay && columns.isCompleted(i)) {
+                int slot = columns.sphereSlots[i];
+                sums[slot] += columns.minutes[i];
+                counts[slot]++;
+            }
+        }
+        return sums;
+    }
+
+    @Override
+    public long[] sumMinutes(TaskColumns columns) {
+        long total = 0;
+        long completed = 0;
+        IntVector totalLanes = IntVector.zero(INTS);
+        IntVector completedLanes = IntVector.zero(INTS);
+
+        int lanes = INTS.length();
+        int bound = INTS.loopBound(columns.size);
+        int iterations = 0;
+        for (int i = 0; i < bound; i += lanes) {
+            IntVector minutes = IntVector.fromArray(INTS, columns.minutes, i);
+            totalLanes = totalLanes.add(minutes);
+            completedLanes = completedLanes.add(minutes, completedMask(columns, i));
+            if (++iterations == FLUSH_INTERVAL) {
+                total += totalLanes.reduceLanesToLong(VectorOperators.ADD);
+                completed += completedLanes.reduceLanesToLong(VectorOperators.ADD);
+                totalLanes = IntVector.zero(INTS);
+                completedLanes = IntVector.zero(INTS);
+                iterations = 0;
+            }
+        }
+        total += totalLanes.reduceLanesToLong(VectorOperators.ADD);
+        completed += completedLanes.reduceLanesToLong(VectorOperators.ADD);
+
+        for (int i = bound; i < columns.size; i++) {
+            total += columns.minutes[i];
+            if (columns.isCompleted(i)) {
+                completed += columns.minutes[i];
+            }
+        }
+        return new long[]{total, completed};
+    }
+
+    @Override
+    public long[] countByCode(byte[] codes, int size, int codeCount) {
+        long[] counts = new long[codeCount];
+        int lanes = BYTES.length();
+        int bound = BYTES.loopBound(size);
+        for (int i = 0; i < bound; i += lanes) {
+            ByteVector chunk = ByteVector.fromArray(BYTES, codes, i);
+            for (int code = 0; code < codeCount; code++) {
+                counts[code] += chunk.compare(VectorOperators.EQ, (byte) code).trueCount();
+            }
+        }
+
+        for (int i = bound; i < size; i++) {
+            counts[codes[i]]++;
+        }
+        return counts;
+    }
+
+    private static VectorMask<Integer> completedMask(TaskColumns columns, int index) {
+        return VectorMask.fromLong(INTS, columns.completed[index >>> 6] >>> (index & 63));
+    }
+
+    private static void flush(IntVector[] accumulators, long[] sums, IntVector zero) {
+        for (int slot = 0; slot < accumulators.length; slot++) {
+            sums[slot] += accumulators[slot].reduceLanesToLong(VectorOperators.ADD);
+            accumulators[slot] = zero;
+        }
+    }
+}
\ No newline at end of file
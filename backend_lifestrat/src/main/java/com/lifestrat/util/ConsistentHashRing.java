@@ -0,0 +1,46 @@
+package com.lifestrat.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Кольцо консистентного хеширования ID пользователей на шарды.
+ * Каждый шард представлен на кольце virtualNodes точками, поэтому при добавлении
+ * шарда на него переезжает только примерно 1/N пользователей.
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final int shardCount;
+
+    public ConsistentHashRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1 || virtualNodes < 1) {
+            throw new IllegalArgumentException("Shard count and virtual nodes must be positive");
+        }
+        this.shardCount = shardCount;
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                // Двойное перемешивание, чтобы точки шардов не совпадали с хешами небольших ID пользователей
+                ring.put(mix64(mix64(((long) shard << 32) | node)), shard);
+            }
+        }
+    }
+
+    // Шард, которому принадлежит пользователь
+    public int shardFor(long userId) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(mix64(userId));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    // Финализатор SplitMix64: близкие ID равномерно разлетаются по кольцу
+    private static long mix64(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package com.lifestrat.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import ch.qos.logback.core.spi.FilterReply;
+import ch.qos.logback.core.status.Status;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выборка INFO-событий: в выбранной категории записывается в среднем одно событие из N,
+ * остальные уровни и категории проходят без потерь, неверные настройки игнорируются с ошибкой в статусе.
+ */
+class SamplingTurboFilterTest {
+
+    private static final String SAMPLED = "com.lifestrat.service.SampledService";
+    private static final int RATE = 10;
+    private static final int EVENTS = 100_000;
+
+    private final LoggerContext context = new LoggerContext();
+    private final SamplingTurboFilter filter = new SamplingTurboFilter();
+
+    @BeforeEach
+    void configure() {
+        filter.setContext(context);
+        filter.addSample(SAMPLED + ":" + RATE);
+    }
+
+    @Test
+    void keepsOneInfoEventOfRate() {
+        filter.start();
+        Logger logger = context.getLogger(SAMPLED);
+
+        int kept = 0;
+        for (int i = 0; i < EVENTS; i++) {
+            if (filter.decide(null, logger, Level.INFO, "event", null, null) == FilterReply.NEUTRAL) {
+                kept++;
+            }
+        }
+        // Ожидается EVENTS / RATE = 10 000 при стандартном отклонении около 95
+        assertThat(kept).isBetween(EVENTS / RATE - 1000, EVENTS / RATE + 1000);
+    }
+
+    @Test
+    void passesOtherLevelsAndCategories() {
+        filter.start();
+        Logger sampled = context.getLogger(SAMPLED);
+        Logger other = context.getLogger("com.lifestrat.service.OtherService");
+
+        for (int i = 0; i < 1000; i++) {
+            for (Level level : new Level[]{Level.TRACE, Level.DEBUG, Level.WARN, Level.ERROR}) {
+                assertThat(filter.decide(null, sampled, level, "event", null, null)).isEqualTo(FilterReply.NEUTRAL);
+            }
+            assertThat(filter.decide(null, other, Level.INFO, "event", null, null)).isEqualTo(FilterReply.NEUTRAL);
+        }
+    }
+
+    @Test
+    void warnAndErrorAreLosslessThroughLogger() {
+        filter.start();
+        context.addTurboFilter(filter);
+        Logger logger = context.getLogger(SAMPLED);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.setContext(context);
+        appender.start();
+        logger.addAppender(appender);
+
+        for (int i = 0; i < 10_000; i++) {
+            logger.info("info {}", i);
+            if (i % 100 == 0) {
+                logger.warn("warn {}", i);
+                logger.error("error {}", i);
+            }
+        }
+
+        assertThat(appender.list).filteredOn(event -> event.getLevel() == Level.WARN).hasSize(100);
+        assertThat(appender.list).filteredOn(event -> event.getLevel() == Level.ERROR).hasSize(100);
+        assertThat(appender.list).filteredOn(event -> event.getLevel() == Level.INFO).hasSizeBetween(700, 1300);
+    }
+
+    @Test
+    void notStartedOrMisconfiguredFilterDropsNothing() {
+        Logger logger = context.getLogger(SAMPLED);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.decide(null, logger, Level.INFO, "event", null, null)).isEqualTo(FilterReply.NEUTRAL);
+        }
+
+        SamplingTurboFilter misconfigured = new SamplingTurboFilter();
+        misconfigured.setContext(context);
+        misconfigured.addSample(SAMPLED);
+        misconfigured.addSample(SAMPLED + ":often");
+        misconfigured.addSample(SAMPLED + ":1");
+        misconfigured.start();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(misconfigured.decide(null, logger, Level.INFO, "event", null, null))
+                    .isEqualTo(FilterReply.NEUTRAL);
+        }
+        assertThat(context.getStatusManager().getCopyOfStatusList())
+                .filteredOn(status -> status.getLevel() == Status.ERROR)
+                .hasSize(2);
+    }
+}
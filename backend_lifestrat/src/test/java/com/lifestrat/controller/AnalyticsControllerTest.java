@@ -0,0 +1,132 @@
+package com.lifestrat.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.service.AnalyticsService;
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.LifeSphereService;
+import com.lifestrat.service.TaskService;
+import com.lifestrat.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Подписка на аналитику: подписчик сначала получает полный снимок, а серия изменений внутри окна склейки
+ * приходит одной дельтой с итоговыми значениями только изменившихся разделов.
+ */
+@SpringBootTest(classes = LifestratApplication.class,
+        properties = "lifestrat.analytics.push.coalesce-window-ms=" + AnalyticsControllerTest.COALESCE_WINDOW_MS)
+@AutoConfigureMockMvc
+class AnalyticsControllerTest {
+
+    static final long COALESCE_WINDOW_MS = 1000;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private AnalyticsService analyticsService;
+
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "analytics-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void burstOfChangesIsPushedAsOneDelta() throws Exception {
+        MockHttpServletResponse stream = mockMvc.perform(get("/api/analytics/stream").header(HttpHeaders.AUTHORIZATION,
+                        "Bearer " + jwtService.generateToken(user.getUsername())))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+        List<JsonNode> events = awaitEvents(stream, 1);
+        assertThat(events.get(0).has("projectsProgress")).isTrue();
+        assertThat(events.get(0).has("priorityDistribution")).isTrue();
+
+        for (Priority priority : new Priority[]{Priority.LOW, Priority.HIGH, Priority.HIGH}) {
+            taskService.create(task(priority), user.getId());
+        }
+
+        events = awaitEvents(stream, 2);
+        // Окно склейки давно закрыто: других дельт после этой нет
+        Thread.sleep(2 * COALESCE_WINDOW_MS);
+        assertThat(events(stream)).hasSize(2);
+        JsonNode delta = events.get(1);
+        assertThat(delta.has("projectsProgress")).isFalse();
+        assertThat(delta.get("priorityDistribution").toString())
+                .isEqualTo(objectMapper.writeValueAsString(analyticsService.getPriorityDistribution(user.getId())));
+        assertThat(delta.get("priorityDistribution").get("HIGH").asLong()).isEqualTo(2);
+    }
+
+    private List<JsonNode> awaitEvents(MockHttpServletResponse stream, int count) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        List<JsonNode> events = events(stream);
+        while (events.size() < count) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(20);
+            events = events(stream);
+        }
+        return events;
+    }
+
+    // Данные дописанных до конца событий "analytics" из потока SSE; комментарии heartbeat пропускаются
+    private List<JsonNode> events(MockHttpServletResponse stream) throws Exception {
+        String content = stream.getContentAsString();
+        List<JsonNode> events = new ArrayList<>();
+        for (String block : content.substring(0, Math.max(content.lastIndexOf("\n\n"), 0)).split("\n\n")) {
+            if (block.startsWith("event:analytics\n")) {
+                events.add(objectMapper.readTree(block.substring(block.indexOf("data:") + "data:".length())));
+            }
+        }
+        return events;
+    }
+
+    private Task task(Priority priority) {
+        Task task = new Task();
+        task.setTitle("Pushed task");
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(priority);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,116 @@
+package com.lifestrat.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Регистрация, вход и отказ 401: неверный пароль и неизвестное имя неразличимы,
+ * запрос без токена, с токеном неизвестного и с токеном удаленного пользователя не проходит.
+ */
+@SpringBootTest(classes = LifestratApplication.class)
+@AutoConfigureMockMvc
+class AuthControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private UserService userService;
+
+    private String username;
+
+    @BeforeEach
+    void chooseUsername() {
+        username = "auth-" + UUID.randomUUID();
+    }
+
+    @Test
+    void registerAndLoginIssueWorkingTokens() throws Exception {
+        String registered = token(postJson("/api/auth/register", username, username + "@example.com", "password")
+                .andExpect(status().isCreated()));
+        String loggedIn = token(postJson("/api/auth/login", username, null, "password")
+                .andExpect(status().isOk()));
+
+        for (String token : new String[]{registered, loggedIn}) {
+            assertThat(jwtService.extractUsername(token)).isEqualTo(username);
+            mockMvc.perform(get("/api/tasks").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                    .andExpect(status().isOk());
+        }
+        postJson("/api/auth/register", username, "other-" + username + "@example.com", "password")
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void wrongPasswordAndUnknownUserAreUnauthorized() throws Exception {
+        postJson("/api/auth/register", username, username + "@example.com", "password")
+                .andExpect(status().isCreated());
+
+        JsonNode wrongPassword = body(postJson("/api/auth/login", username, null, "wrong")
+                .andExpect(status().isUnauthorized()));
+        JsonNode unknownUser = body(postJson("/api/auth/login", "unknown-" + username, null, "password")
+                .andExpect(status().isUnauthorized()));
+        assertThat(unknownUser.get("message")).isEqualTo(wrongPassword.get("message"));
+        postJson("/api/auth/login", username, null, "").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void requestsWithoutValidUserAreUnauthorized() throws Exception {
+        String token = token(postJson("/api/auth/register", username, username + "@example.com", "password")
+                .andExpect(status().isCreated()));
+
+        mockMvc.perform(get("/api/tasks")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.AUTHORIZATION, "Bearer not-a-jwt"))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/tasks")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtService.generateToken("unknown-" + username)))
+                .andExpect(status().isUnauthorized());
+
+        // Положительный ответ проверки имени закеширован; удаление на этом экземпляре сбрасывает его сразу
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+        userService.delete(userService.findByUsername(username).orElseThrow());
+        mockMvc.perform(get("/api/tasks").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isUnauthorized());
+    }
+
+    private ResultActions postJson(String path, String username, String email, String password) throws Exception {
+        String body = objectMapper.createObjectNode()
+                .put("username", username)
+                .put("email", email)
+                .put("password", password)
+                .toString();
+        return mockMvc.perform(post(path)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+
+    private String token(ResultActions result) throws Exception {
+        return body(result).get("token").asText();
+    }
+
+    private JsonNode body(ResultActions result) throws Exception {
+        return objectMapper.readTree(result.andReturn().getResponse().getContentAsString());
+    }
+}
@@ -0,0 +1,153 @@
+package com.lifestrat.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.AnalyticsDto;
+import com.lifestrat.dto.ProjectDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.dto.TaskPatchRequest;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.service.JwtService;
+import com.lifestrat.service.LifeSphereService;
+import com.lifestrat.service.ProjectService;
+import com.lifestrat.service.TaskService;
+import com.lifestrat.service.UserService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Ответы в CBOR по заголовку Accept: задачи, проекты и аналитика читаются обратно в те же DTO, что и JSON,
+ * при этом CBOR заметно компактнее; тело запроса тоже можно передать в CBOR.
+ */
+@SpringBootTest(classes = LifestratApplication.class)
+@AutoConfigureMockMvc
+class CborResponseTest {
+
+    private static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+    private static final int TASKS = 50;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private TaskService taskService;
+
+    private User user;
+    private Project project;
+
+    @BeforeEach
+    void createData() {
+        String name = "cbor-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        LifeSphere sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+        project = new Project();
+        project.setTitle("Binary project");
+        project.setDescription("Проект для проверки CBOR");
+        project.setDeadline(LocalDate.now().plusDays(30));
+        project.setPriority(Priority.HIGH);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        project = projectService.create(project, user.getId());
+        Priority[] priorities = Priority.values();
+        for (int i = 0; i < TASKS; i++) {
+            Task task = new Task();
+            task.setTitle("Задача " + i);
+            task.setDescription(i % 2 == 0 ? "Описание " + i : null);
+            task.setDeadline(LocalDate.now().plusDays(i % 10));
+            task.setPriority(priorities[i % priorities.length]);
+            task.setEstimatedTimeMinutes(15 + i);
+            task.setEnergyCost(EnergyCost.values()[i % EnergyCost.values().length]);
+            task.setType(i % 3 == 0 ? TaskType.STEP : TaskType.ACTION);
+            task.setProject(i % 3 == 0 ? project : null);
+            task.setCompleted(i % 4 == 0);
+            task.setLifeSphere(sphere);
+            task.setUser(user);
+            taskService.create(task, user.getId());
+        }
+    }
+
+    @Test
+    void listsAndAnalyticsRoundTripThroughCbor() throws Exception {
+        MockHttpServletResponse jsonTasks = perform(get("/api/tasks"), MediaType.APPLICATION_JSON);
+        MockHttpServletResponse cborTasks = perform(get("/api/tasks"), CBOR);
+        TaskDto[] fromCbor = cbor(cborTasks, TaskDto[].class);
+        assertThat(fromCbor).hasSize(TASKS).containsExactly(json(jsonTasks, TaskDto[].class));
+        assertThat(cborTasks.getContentAsByteArray().length).isLessThan(jsonTasks.getContentAsByteArray().length / 2);
+
+        assertThat(cbor(perform(get("/api/projects"), CBOR), ProjectDto[].class))
+                .containsExactly(json(perform(get("/api/projects"), MediaType.APPLICATION_JSON), ProjectDto[].class));
+
+        AnalyticsDto analytics = cbor(perform(get("/api/analytics"), CBOR), AnalyticsDto.class);
+        assertThat(analytics).isEqualTo(json(perform(get("/api/analytics"), MediaType.APPLICATION_JSON),
+                AnalyticsDto.class));
+        assertThat(analytics.priorityDistribution()).containsOnlyKeys(Priority.values());
+        assertThat(analytics.timeStatistics().tasksCount()).isEqualTo(TASKS);
+    }
+
+    @Test
+    void acceptsCborRequestBody() throws Exception {
+        TaskDto task = cbor(perform(get("/api/tasks"), CBOR), TaskDto[].class)[0];
+        TaskPatchRequest request = new TaskPatchRequest(task.version(), "Переименовано", null, null,
+                Priority.CRITICAL, null, null, null);
+
+        TaskDto patched = cbor(perform(patch("/api/tasks/" + task.id())
+                .contentType(CBOR)
+                .content(cborConverter.getObjectMapper().writeValueAsBytes(request)), CBOR), TaskDto.class);
+
+        assertThat(patched.title()).isEqualTo("Переименовано");
+        assertThat(patched.priority()).isEqualTo(Priority.CRITICAL);
+        assertThat(patched.version()).isEqualTo(task.version() + 1);
+    }
+
+    private MockHttpServletResponse perform(MockHttpServletRequestBuilder request, MediaType accept) throws Exception {
+        MockHttpServletResponse response = mockMvc.perform(request
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + jwtService.generateToken(user.getUsername()))
+                        .accept(accept))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        assertThat(MediaType.parseMediaType(response.getContentType()).isCompatibleWith(accept)).isTrue();
+        return response;
+    }
+
+    private <T> T cbor(MockHttpServletResponse response, Class<T> type) throws Exception {
+        return cborConverter.getObjectMapper().readValue(response.getContentAsByteArray(), type);
+    }
+
+    private <T> T json(MockHttpServletResponse response, Class<T> type) throws Exception {
+        return objectMapper.readValue(response.getContentAsByteArray(), type);
+    }
+}
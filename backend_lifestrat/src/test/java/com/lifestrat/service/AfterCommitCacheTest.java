@@ -0,0 +1,77 @@
+package com.lifestrat.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общий вес кеша при одновременных изменениях значений, их замене, удалении и вытеснении
+ * должен совпадать с суммой весов лежащих в кеше значений.
+ */
+class AfterCommitCacheTest {
+
+    private static final int THREADS = 8;
+    private static final int KEYS = 16;
+
+    // Значение, вес которого меняется при изменении
+    private static final class Sized {
+        long size = 1;
+    }
+
+    @Test
+    void weightMatchesValuesUnderConcurrentChanges() throws Exception {
+        AfterCommitCache<Integer, Sized> cache = new AfterCommitCache<>(KEYS * 40L, value -> value.size);
+        for (int key = 0; key < KEYS; key++) {
+            cache.putIfAbsent(key, new Sized());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        int key = random.nextInt(KEYS);
+                        switch (random.nextInt(10)) {
+                            case 0 -> cache.put(key, new Sized());
+                            case 1 -> cache.invalidate(key);
+                            case 2 -> cache.putIfAbsent(key, new Sized());
+                            default -> {
+                                long delta = random.nextInt(-5, 6);
+                                cache.update(key, value -> value.size = Math.max(0, value.size + delta));
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long expected = 0;
+        for (int key = 0; key < KEYS; key++) {
+            Sized value = cache.get(key);
+            expected += value != null ? value.size : 0;
+        }
+        assertThat(cache.weight()).isEqualTo(expected);
+
+        cache.invalidateAll();
+        assertThat(cache.weight()).isZero();
+    }
+}
@@ -0,0 +1,198 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Склейка одновременных запросов аналитики: параллельные вызовы с одним ключом получают результат
+ * одного расчета, запись удаляется после успеха и после ошибки, закоммиченное изменение данных
+ * пользователя отцепляет идущий расчет (а откаченное — нет), счетчики сходятся с числом вызовов.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class AnalyticsCoalescerTest {
+
+    private static final int CALLERS = 8;
+    private static final String METHOD = "coalescer-test";
+
+    @Autowired
+    private AnalyticsCoalescer coalescer;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private User user;
+
+    @BeforeEach
+    void createUser() {
+        String name = "coalesced-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+    }
+
+    @AfterEach
+    void stopCallers() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneComputation() throws Exception {
+        long computedBefore = coalescer.getComputedCount();
+        long deduplicatedBefore = coalescer.getDeduplicatedCount();
+        AtomicInteger runs = new AtomicInteger();
+
+        List<Future<Object>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> coalescer.coalesce(user.getId(), METHOD, () -> {
+                runs.incrementAndGet();
+                awaitRelease();
+                return new Object();
+            })));
+        }
+        // Расчет отпускается, только когда все остальные вызовы уже присоединились к нему
+        waitUntil(() -> coalescer.getDeduplicatedCount() - deduplicatedBefore == CALLERS - 1);
+        assertThat(inFlight()).isEqualTo(1);
+        release.countDown();
+
+        Object shared = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<Object> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isSameAs(shared);
+        }
+        assertThat(runs).hasValue(1);
+        assertThat(coalescer.getComputedCount() - computedBefore).isEqualTo(1);
+        assertThat(coalescer.getDeduplicatedCount() - deduplicatedBefore).isEqualTo(CALLERS - 1);
+        assertThat(counter("computed")).isEqualTo(coalescer.getComputedCount());
+        assertThat(counter("deduplicated")).isEqualTo(coalescer.getDeduplicatedCount());
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void entryIsRemovedAfterSuccessAndAfterFailure() throws Exception {
+        assertThat(coalescer.coalesce(user.getId(), METHOD, () -> "first")).isEqualTo("first");
+        assertThat(coalescer.coalesce(user.getId(), METHOD, () -> "second")).isEqualTo("second");
+
+        long deduplicatedBefore = coalescer.getDeduplicatedCount();
+        Future<Object> failing = executor.submit(() -> coalescer.coalesce(user.getId(), METHOD, () -> {
+            awaitRelease();
+            throw new IllegalStateException("computation failed");
+        }));
+        waitUntil(() -> inFlight() == 1);
+        Future<Object> joined = executor.submit(() -> coalescer.coalesce(user.getId(), METHOD, () -> "never"));
+        waitUntil(() -> coalescer.getDeduplicatedCount() > deduplicatedBefore);
+        release.countDown();
+
+        // Присоединившийся вызов получает ту же ошибку, а следующий начинает новый расчет
+        for (Future<Object> result : List.of(failing, joined)) {
+            assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+        assertThat(inFlight()).isZero();
+        assertThat(coalescer.coalesce(user.getId(), METHOD, () -> "after failure")).isEqualTo("after failure");
+    }
+
+    @Test
+    void committedChangeDetachesRunningComputation() throws Exception {
+        LifeSphere sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+        Task task = taskService.create(task(sphere), user.getId());
+
+        Future<Object> stale = executor.submit(() -> coalescer.coalesce(user.getId(), METHOD, () -> {
+            awaitRelease();
+            return "before change";
+        }));
+        waitUntil(() -> inFlight() == 1);
+
+        // Откаченное изменение не отцепляет расчет
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            taskService.markAsCompleted(task.getId(), user.getId());
+            status.setRollbackOnly();
+        });
+        assertThat(inFlight()).isEqualTo(1);
+
+        taskService.markAsCompleted(task.getId(), user.getId());
+        assertThat(inFlight()).isZero();
+        long computedBefore = coalescer.getComputedCount();
+        assertThat(coalescer.coalesce(user.getId(), METHOD, () -> "after change")).isEqualTo("after change");
+        assertThat(coalescer.getComputedCount() - computedBefore).isEqualTo(1);
+
+        release.countDown();
+        assertThat(stale.get(10, TimeUnit.SECONDS)).isEqualTo("before change");
+        assertThat(inFlight()).isZero();
+    }
+
+    private void awaitRelease() {
+        try {
+            assertThat(release.await(10, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private long counter(String result) {
+        return (long) meterRegistry.get("lifestrat.analytics.calls").tag("result", result).functionCounter().count();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("lifestrat.analytics.in-flight").gauge().value();
+    }
+
+    private Task task(LifeSphere sphere) {
+        Task task = new Task();
+        task.setTitle("Coalesced task");
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,217 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.dto.SyncTombstoneDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.RecurrenceRule;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Каскадное удаление аккаунта, сферы жизни и проекта: порядок удаления не оставляет зависимостей шагов,
+ * экземпляров ритуалов и архивных задач, ссылающихся на удаленные строки. Экземпляры ритуалов, которые остаются
+ * у пользователя после удаления сферы или самого шаблона, становятся обычными задачами с новой версией
+ * и записью в журнале изменений.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class CascadeDeleteServiceTest {
+
+    @Autowired
+    private CascadeDeleteService cascadeDeleteService;
+    @Autowired
+    private RitualGenerationService ritualGenerationService;
+    @Autowired
+    private ChangeLogService changeLogService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private ProjectScheduleService projectScheduleService;
+    @Autowired
+    private TaskArchiveService taskArchiveService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+    private List<LifeSphere> spheres;
+
+    @BeforeEach
+    void createUser() {
+        String name = "cascade-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        spheres = lifeSphereService.createDefaultLifeSpheres(user);
+    }
+
+    @Test
+    void deletesLeaveNoOrphans() {
+        LifeSphere deleted = spheres.get(0);
+        LifeSphere kept = spheres.get(1);
+        // Проект удаляемой сферы с шагом в другой сфере и проект другой сферы с шагом в удаляемой
+        Project inDeleted = project("Project in deleted sphere", deleted);
+        Task first = step("First", deleted, inDeleted);
+        Task second = step("Second", kept, inDeleted);
+        projectScheduleService.addDependency(user.getId(), second.getId(), first.getId());
+        Project inKept = project("Project in kept sphere", kept);
+        Task keptStep = step("Kept step", kept, inKept);
+        Task movedStep = step("Moved step", deleted, inKept);
+        projectScheduleService.addDependency(user.getId(), keptStep.getId(), movedStep.getId());
+        Task otherKeptStep = step("Other kept step", kept, inKept);
+        projectScheduleService.addDependency(user.getId(), otherKeptStep.getId(), keptStep.getId());
+        Task template = taskService.create(ritual("Daily reading", deleted), user.getId());
+        ritualGenerationService.generateForDay(LocalDate.now().plusDays(1));
+        Task archived = taskService.create(ritual("Archived", deleted), user.getId());
+        taskService.stopRecurrence(archived.getId(), user.getId());
+        taskService.markAsCompleted(archived.getId(), user.getId());
+        taskArchiveService.archive(LocalDateTime.now().plusMinutes(1));
+        assertThat(count("archived_tasks", "id = ?", archived.getId())).isEqualTo(1);
+
+        cascadeDeleteService.deleteLifeSphere(user.getId(), deleted.getId());
+
+        assertThat(orphans()).isZero();
+        assertThat(count("tasks", "life_sphere_id = ? OR project_id = ?", deleted.getId(), inDeleted.getId())).isZero();
+        assertThat(count("tasks", "id IN (?, ?, ?)", template.getId(), movedStep.getId(), second.getId())).isZero();
+        assertThat(count("archived_tasks", "life_sphere_id = ?", deleted.getId())).isZero();
+        assertThat(count("projects", "id = ?", inDeleted.getId())).isZero();
+        assertThat(count("task_dependencies", "project_id = ?", inKept.getId())).isEqualTo(1);
+        assertThat(count("tasks", "id IN (?, ?)", keptStep.getId(), otherKeptStep.getId())).isEqualTo(2);
+
+        cascadeDeleteService.deleteProject(user.getId(), inKept.getId());
+        assertThat(orphans()).isZero();
+        assertThat(count("tasks", "project_id = ?", inKept.getId())).isZero();
+
+        taskService.create(ritual("Another ritual", kept), user.getId());
+        ritualGenerationService.generateForDay(LocalDate.now().plusDays(1));
+        cascadeDeleteService.deleteUser(user.getId());
+        for (String table : new String[]{"change_log", "archived_tasks", "task_dependencies", "tasks", "projects",
+                "life_spheres"}) {
+            assertThat(count(table, "user_id = ?", user.getId())).as(table).isZero();
+        }
+        assertThat(count("users", "id = ?", user.getId())).isZero();
+    }
+
+    @Test
+    void detachedInstancesGetNewVersionAndChangeLogEntry() {
+        LifeSphere deleted = spheres.get(0);
+        LifeSphere kept = spheres.get(1);
+        Task template = taskService.create(ritual("Daily walk", deleted), user.getId());
+        ritualGenerationService.generateForDay(LocalDate.now().plusDays(1));
+        Long instanceId = jdbcTemplate.queryForObject(
+                "SELECT id FROM tasks WHERE source_task_id = ?", Long.class, template.getId());
+        // Экземпляр перенесен в другую сферу и при удалении сферы шаблона остается у пользователя
+        jdbcTemplate.update("UPDATE tasks SET life_sphere_id = ? WHERE id = ?", kept.getId(), instanceId);
+
+        Map<String, Object> before = instance(instanceId);
+        long cursor = changeLogService.sync(user.getId(), 0, 500).cursor();
+
+        cascadeDeleteService.deleteLifeSphere(user.getId(), deleted.getId());
+
+        Map<String, Object> after = instance(instanceId);
+        assertThat(after.get("source_task_id")).isNull();
+        assertThat(((Number) after.get("version")).longValue())
+                .isEqualTo(((Number) before.get("version")).longValue() + 1);
+        SyncResponseDto delta = changeLogService.sync(user.getId(), cursor, 500);
+        assertThat(delta.tasks()).extracting(TaskDto::id).containsExactly(instanceId);
+        assertThat(delta.deleted()).extracting(SyncTombstoneDto::id).contains(template.getId());
+    }
+
+    @Test
+    void deletingTemplateVersionsAndLogsItsInstances() {
+        Task template = taskService.create(ritual("Daily journal", spheres.get(0)), user.getId());
+        ritualGenerationService.generateForDay(LocalDate.now().plusDays(1));
+        Long instanceId = jdbcTemplate.queryForObject(
+                "SELECT id FROM tasks WHERE source_task_id = ?", Long.class, template.getId());
+        Map<String, Object> before = instance(instanceId);
+        long cursor = changeLogService.sync(user.getId(), 0, 500).cursor();
+
+        taskService.delete(taskService.findByIdAndUserId(template.getId(), user.getId()).orElseThrow());
+
+        Map<String, Object> after = instance(instanceId);
+        assertThat(after.get("source_task_id")).isNull();
+        assertThat(((Number) after.get("version")).longValue())
+                .isEqualTo(((Number) before.get("version")).longValue() + 1);
+        SyncResponseDto delta = changeLogService.sync(user.getId(), cursor, 500);
+        assertThat(delta.tasks()).extracting(TaskDto::id).containsExactly(instanceId);
+        assertThat(delta.deleted()).extracting(SyncTombstoneDto::id).containsExactly(template.getId());
+    }
+
+    // Строки пользователя, ссылающиеся на удаленные задачи, проекты или сферы
+    private long orphans() {
+        return jdbcTemplate.queryForObject("""
+                SELECT (SELECT COUNT(*) FROM task_dependencies d WHERE d.user_id = ?
+                           AND (NOT EXISTS (SELECT 1 FROM tasks t WHERE t.id = d.task_id)
+                             OR NOT EXISTS (SELECT 1 FROM tasks t WHERE t.id = d.depends_on_task_id)
+                             OR NOT EXISTS (SELECT 1 FROM projects p WHERE p.id = d.project_id)))
+                     + (SELECT COUNT(*) FROM tasks i WHERE i.user_id = ? AND i.source_task_id IS NOT NULL
+                           AND NOT EXISTS (SELECT 1 FROM tasks t WHERE t.id = i.source_task_id))
+                     + (SELECT COUNT(*) FROM archived_tasks a WHERE a.user_id = ?
+                           AND (NOT EXISTS (SELECT 1 FROM life_spheres s WHERE s.id = a.life_sphere_id)
+                             OR a.project_id IS NOT NULL
+                                AND NOT EXISTS (SELECT 1 FROM projects p WHERE p.id = a.project_id)))
+                """, Long.class, user.getId(), user.getId(), user.getId());
+    }
+
+    private long count(String table, String condition, Object... args) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE " + condition, Long.class, args);
+    }
+
+    private Project project(String title, LifeSphere sphere) {
+        Project project = new Project();
+        project.setTitle(title);
+        project.setDeadline(LocalDate.now().plusDays(30));
+        project.setPriority(Priority.MEDIUM);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        return projectService.create(project, user.getId());
+    }
+
+    private Task step(String title, LifeSphere sphere, Project project) {
+        Task task = ritual(title, sphere);
+        task.setType(TaskType.STEP);
+        task.setRecurrence(null);
+        task.setDeadline(LocalDate.now().plusDays(7));
+        task.setProject(project);
+        return taskService.create(task, user.getId());
+    }
+
+    private Map<String, Object> instance(Long id) {
+        return jdbcTemplate.queryForMap("SELECT source_task_id, version FROM tasks WHERE id = ?", id);
+    }
+
+    private Task ritual(String title, LifeSphere sphere) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDeadline(LocalDate.now());
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.RITUAL);
+        task.setRecurrence(RecurrenceRule.DAILY);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,84 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.LifeSphereDto;
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Первичная синхронизация на базе, где данные появились раньше журнала изменений:
+ * после заполнения журнала клиент с cursor=0 получает все сущности пользователя.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class ChangeLogServiceTest {
+
+    @Autowired
+    private ChangeLogService changeLogService;
+    @Autowired
+    private ChangeLogBackfillService backfillService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void initialSyncReturnsEntitiesCreatedBeforeTheLog() {
+        String name = "legacy-" + UUID.randomUUID();
+        User user = userService.createUser(name, name + "@example.com", "password");
+        List<LifeSphere> spheres = lifeSphereService.createDefaultLifeSpheres(user);
+        Task task = taskService.create(task(user, spheres.get(0)), user.getId());
+
+        // Так выглядит база до появления журнала: сущности есть, записей о них нет
+        jdbcTemplate.update("DELETE FROM change_log WHERE user_id = ?", user.getId());
+        jdbcTemplate.update("DELETE FROM job_watermarks WHERE job_name = ?", ChangeLogBackfillService.JOB_NAME);
+        assertThat(changeLogService.sync(user.getId(), 0, 500).tasks()).isEmpty();
+
+        assertThat(backfillService.backfill()).isGreaterThanOrEqualTo(spheres.size() + 1);
+
+        SyncResponseDto initial = changeLogService.sync(user.getId(), 0, 500);
+        assertThat(initial.lifeSpheres()).extracting(LifeSphereDto::id)
+                .containsExactlyInAnyOrderElementsOf(spheres.stream().map(LifeSphere::getId).toList());
+        assertThat(initial.tasks()).extracting(TaskDto::id).containsExactly(task.getId());
+        assertThat(initial.hasMore()).isFalse();
+        assertThat(changeLogService.sync(user.getId(), initial.cursor(), 500).tasks()).isEmpty();
+
+        // Журнал заполняется один раз; дальше изменения попадают в него через сервисы
+        assertThat(backfillService.backfill()).isZero();
+        taskService.markAsCompleted(task.getId(), user.getId());
+        assertThat(changeLogService.sync(user.getId(), initial.cursor(), 500).tasks())
+                .extracting(TaskDto::id).containsExactly(task.getId());
+    }
+
+    private static Task task(User user, LifeSphere sphere) {
+        Task task = new Task();
+        task.setTitle("Legacy task");
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,206 @@
+package com.lifestrat.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.ArchivedTaskRepository;
+import com.lifestrat.repository.TaskRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Выгрузка данных пользователя: NDJSON и CSV содержат одни и те же строки со значениями сущностей,
+ * а задачи, перенесенные в архив, остаются в выгрузке теми же строками, что и до архивации.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class ExportServiceTest {
+
+    @Autowired
+    private ExportService exportService;
+    @Autowired
+    private TaskArchiveService taskArchiveService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private TaskRepository taskRepository;
+    @Autowired
+    private ArchivedTaskRepository archivedTaskRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "export-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void ndjsonAndCsvRoundTripEntities() throws Exception {
+        Project project = new Project();
+        project.setTitle("Ремонт, этап \"2\"");
+        project.setDescription("Кухня\nи ванная");
+        project.setDeadline(LocalDate.now().plusDays(30));
+        project.setPriority(Priority.CRITICAL);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        project = projectService.create(project, user.getId());
+        Task step = task("Купить плитку, клей");
+        step.setDescription("Строка 1\r\nСтрока \"2\"");
+        step.setType(TaskType.STEP);
+        step.setProject(project);
+        step = taskService.create(step, user.getId());
+
+        List<JsonNode> ndjson = exportNdjson();
+        JsonNode projectRow = row(ndjson, "project", project.getId());
+        assertThat(projectRow.get("title").asText()).isEqualTo(project.getTitle());
+        assertThat(projectRow.get("description").asText()).isEqualTo(project.getDescription());
+        assertThat(projectRow.get("deadline").asText()).isEqualTo(project.getDeadline().toString());
+        assertThat(projectRow.get("priority").asText()).isEqualTo("CRITICAL");
+        assertThat(projectRow.get("life_sphere_id").asLong()).isEqualTo(sphere.getId());
+        JsonNode stepRow = taskRow(ndjson, step.getId());
+        assertThat(stepRow.get("title").asText()).isEqualTo(step.getTitle());
+        assertThat(stepRow.get("description").asText()).isEqualTo(step.getDescription());
+        assertThat(stepRow.get("estimated_time_minutes").asInt()).isEqualTo(45);
+        assertThat(stepRow.get("energy_cost").asText()).isEqualTo("MEDIUM");
+        assertThat(stepRow.get("type").asText()).isEqualTo("STEP");
+        assertThat(stepRow.get("project_id").asLong()).isEqualTo(project.getId());
+        assertThat(stepRow.has("name")).isFalse();
+        assertThat(row(ndjson, "life_sphere", sphere.getId()).get("name").asText()).isEqualTo(sphere.getName());
+
+        // CSV — те же строки в том же порядке; пустое поле соответствует отсутствующему ключу NDJSON
+        List<List<String>> csv = exportCsv();
+        List<String> header = csv.get(0);
+        assertThat(csv).hasSize(ndjson.size() + 1);
+        for (int i = 0; i < ndjson.size(); i++) {
+            List<String> record = csv.get(i + 1);
+            assertThat(record).hasSameSizeAs(header);
+            for (int column = 0; column < header.size(); column++) {
+                JsonNode value = ndjson.get(i).get(header.get(column));
+                assertThat(record.get(column)).isEqualTo(value != null ? value.asText() : "");
+            }
+        }
+    }
+
+    @Test
+    void archivedTasksStayInExport() throws Exception {
+        Task done = taskService.create(task("Done long ago"), user.getId());
+        taskService.markAsCompleted(done.getId(), user.getId());
+        Task open = taskService.create(task("Still open"), user.getId());
+        List<JsonNode> before = exportNdjson();
+
+        taskArchiveService.archive(LocalDateTime.now().plusMinutes(1));
+        assertThat(taskRepository.findById(done.getId())).isEmpty();
+        assertThat(archivedTaskRepository.findById(done.getId())).isPresent();
+
+        List<JsonNode> after = exportNdjson();
+        assertThat(after).hasSameSizeAs(before);
+        assertThat(after).containsExactlyInAnyOrderElementsOf(before);
+        JsonNode archived = taskRow(after, done.getId());
+        assertThat(archived.get("title").asText()).isEqualTo("Done long ago");
+        assertThat(archived.get("completed").asBoolean()).isTrue();
+        assertThat(archived.get("life_sphere_id").asLong()).isEqualTo(sphere.getId());
+        assertThat(taskRow(after, open.getId()).get("completed").asBoolean()).isFalse();
+    }
+
+    private List<JsonNode> exportNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = exportService.export(user.getId(), ExportService.Format.NDJSON, out);
+        List<JsonNode> result = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            result.add(objectMapper.readTree(line));
+        }
+        assertThat(result).hasSize((int) rows);
+        return result;
+    }
+
+    // Разбор выгрузки CSV по RFC 4180: поля в кавычках могут содержать запятые, кавычки и переводы строк
+    private List<List<String>> exportCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(user.getId(), ExportService.Format.CSV, out);
+        String text = out.toString(StandardCharsets.UTF_8);
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',' || c == '\r') {
+                record.add(field.toString());
+                field.setLength(0);
+                if (c == '\r') {
+                    records.add(record);
+                    record = new ArrayList<>();
+                    i++; // '\n' после '\r'
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        assertThat(record).isEmpty();
+        return records;
+    }
+
+    private static JsonNode taskRow(List<JsonNode> rows, Long id) {
+        return row(rows, "task", id);
+    }
+
+    private static JsonNode row(List<JsonNode> rows, String kind, Long id) {
+        return rows.stream()
+                .filter(row -> row.get("kind").asText().equals(kind) && row.get("id").asLong() == id)
+                .findFirst().orElseThrow();
+    }
+
+    private Task task(String title) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDescription("Description of " + title);
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.HIGH);
+        task.setEstimatedTimeMinutes(45);
+        task.setEnergyCost(EnergyCost.MEDIUM);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,102 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.GlobalStatsRun;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.GlobalStatsRunRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Продолжение прерванного запуска, начатого с другой шириной диапазона: запуск должен
+ * завершиться со своей шириной, а не остаться незавершенным и пересчитываться при каждой проверке.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "lifestrat.global-stats.partition-size=4")
+class GlobalStatsServiceTest {
+
+    private static final int USERS = 12;
+    private static final long STALE_PARTITION_SIZE = 3;
+
+    private static final String TOTALS_SQL = """
+            SELECT metric, dimension, metric_value FROM global_stats_entries
+            WHERE run_id = ? AND partition_from = -1 ORDER BY metric, dimension
+            """;
+
+    @Autowired
+    private GlobalStatsService globalStatsService;
+    @Autowired
+    private GlobalStatsRunRepository runRepository;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void interruptedRunWithOtherPartitionSizeIsFinished() {
+        String prefix = "stats-" + UUID.randomUUID().toString().substring(0, 8);
+        for (int i = 0; i < USERS; i++) {
+            createUserWithTask(prefix + "-" + i);
+        }
+        GlobalStatsRun stale = runRepository.save(
+                new GlobalStatsRun(null, STALE_PARTITION_SIZE, LocalDateTime.now(), null));
+        long runsBefore = runRepository.count();
+
+        globalStatsService.run();
+
+        assertThat(runRepository.findById(stale.getId()).orElseThrow().getFinishedAt()).isNotNull();
+        assertThat(runRepository.findFirstByFinishedAtIsNullOrderByIdDesc()).isEmpty();
+        assertThat(runRepository.count()).isEqualTo(runsBefore);
+        List<Long> partitions = jdbcTemplate.queryForList(
+                "SELECT DISTINCT partition_from FROM global_stats_entries WHERE run_id = ? AND partition_from >= 0",
+                Long.class, stale.getId());
+        assertThat(partitions).isNotEmpty().allMatch(from -> from % STALE_PARTITION_SIZE == 0);
+
+        // Незавершенных запусков больше нет — проверка не начинает новый расчет
+        globalStatsService.resumeInterrupted();
+        assertThat(runRepository.count()).isEqualTo(runsBefore);
+
+        // Следующий запуск идет с текущей шириной диапазона и дает те же итоги
+        globalStatsService.run();
+        GlobalStatsRun fresh = runRepository.findAll().stream()
+                .filter(run -> run.getId() > stale.getId())
+                .findFirst().orElseThrow();
+        assertThat(fresh.getPartitionSize()).isEqualTo(4);
+        List<Map<String, Object>> staleTotals = jdbcTemplate.queryForList(TOTALS_SQL, stale.getId());
+        assertThat(staleTotals).isNotEmpty().isEqualTo(jdbcTemplate.queryForList(TOTALS_SQL, fresh.getId()));
+    }
+
+    private void createUserWithTask(String username) {
+        User user = userService.createUser(username, username + "@example.com", "password");
+        LifeSphere sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+        Task task = new Task();
+        task.setTitle("Task of " + username);
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.MEDIUM);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        taskService.create(task, user.getId());
+    }
+}
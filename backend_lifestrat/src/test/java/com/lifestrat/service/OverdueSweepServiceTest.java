@@ -0,0 +1,129 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.JobWatermark;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.JobWatermarkRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Обход просроченных записей продолжается с дня после watermark: дни до него не обходятся повторно,
+ * повторный запуск ничего не меняет, а прерванный день (watermark не сдвинут) дообходится без повторной
+ * отметки уже отмеченных строк.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class OverdueSweepServiceTest {
+
+    @Autowired
+    private OverdueSweepService overdueSweepService;
+    @Autowired
+    private JobWatermarkRepository watermarkRepository;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final LocalDate today = LocalDate.now();
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "overdue-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void sweepResumesAfterWatermark() {
+        Long beforeWatermark = task(today.minusDays(5));
+        Long dayBeforeYesterday = task(today.minusDays(2));
+        Long yesterday = task(today.minusDays(1));
+        Long project = project(today.minusDays(2));
+        watermarkRepository.save(new JobWatermark(OverdueSweepService.JOB_NAME, today.minusDays(3)));
+
+        overdueSweepService.sweep(today);
+
+        assertThat(row("tasks", beforeWatermark).get("overdue")).isEqualTo(false);
+        assertThat(row("tasks", dayBeforeYesterday).get("overdue")).isEqualTo(true);
+        assertThat(row("tasks", yesterday).get("overdue")).isEqualTo(true);
+        assertThat(row("projects", project).get("overdue")).isEqualTo(true);
+        assertThat(watermark()).isEqualTo(today.minusDays(1));
+
+        // Повторный запуск в тот же день ничего не трогает
+        Map<String, Object> flagged = row("tasks", yesterday);
+        Map<String, Object> flaggedEarlier = row("tasks", dayBeforeYesterday);
+        overdueSweepService.sweep(today);
+        assertThat(row("tasks", yesterday)).isEqualTo(flagged);
+        assertThat(row("tasks", dayBeforeYesterday)).isEqualTo(flaggedEarlier);
+        assertThat(watermark()).isEqualTo(today.minusDays(1));
+
+        // Прерванный день: часть строк уже отмечена, а watermark остался на предыдущем дне
+        Long missed = task(today.minusDays(1));
+        watermarkRepository.save(new JobWatermark(OverdueSweepService.JOB_NAME, today.minusDays(2)));
+        overdueSweepService.sweep(today);
+
+        assertThat(row("tasks", missed).get("overdue")).isEqualTo(true);
+        assertThat(row("tasks", yesterday)).isEqualTo(flagged);
+        assertThat(row("tasks", dayBeforeYesterday)).isEqualTo(flaggedEarlier);
+        assertThat(watermark()).isEqualTo(today.minusDays(1));
+    }
+
+    private LocalDate watermark() {
+        return watermarkRepository.findById(OverdueSweepService.JOB_NAME).orElseThrow().getLastProcessedDate();
+    }
+
+    private Map<String, Object> row(String table, Long id) {
+        return jdbcTemplate.queryForMap("SELECT overdue, version FROM " + table + " WHERE id = ?", id);
+    }
+
+    // Запись с прошедшим дедлайном, еще не отмеченная обходом
+    private Long task(LocalDate deadline) {
+        Task task = new Task();
+        task.setTitle("Overdue task");
+        task.setDeadline(deadline);
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        Long id = taskService.create(task, user.getId()).getId();
+        jdbcTemplate.update("UPDATE tasks SET overdue = FALSE WHERE id = ?", id);
+        return id;
+    }
+
+    private Long project(LocalDate deadline) {
+        Project project = new Project();
+        project.setTitle("Overdue project");
+        project.setDeadline(deadline);
+        project.setPriority(Priority.MEDIUM);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        Long id = projectService.create(project, user.getId()).getId();
+        jdbcTemplate.update("UPDATE projects SET overdue = FALSE WHERE id = ?", id);
+        return id;
+    }
+}
@@ -0,0 +1,190 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.LifeSpherePatchRequest;
+import com.lifestrat.dto.ProjectPatchRequest;
+import com.lifestrat.dto.TaskPatchRequest;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.LifeSphereRepository;
+import com.lifestrat.repository.ProjectRepository;
+import com.lifestrat.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Конкурентные PATCH одной и той же записи: каждый поток читает текущую версию,
+ * увеличивает счетчик в одном из полей и повторяет попытку при конфликте версий.
+ * Потерянное обновление дало бы итоговый счетчик меньше числа успешных PATCH.
+ * Пропускная способность конкурентной фазы и число конфликтов пишутся в лог теста.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Slf4j
+class PatchConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int PATCHES_PER_THREAD = 50;
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private LifeSphereRepository lifeSphereRepository;
+    @Autowired
+    private ProjectRepository projectRepository;
+    @Autowired
+    private TaskRepository taskRepository;
+
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "patch-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void concurrentTaskPatchesLoseNoUpdates() throws Exception {
+        Long taskId = taskService.create(counterTask(), user.getId()).getId();
+
+        hammer("task", () -> {
+            Task current = taskRepository.findById(taskId).orElseThrow();
+            taskService.patch(taskId, user.getId(), new TaskPatchRequest(current.getVersion(),
+                    null, null, null, null, current.getEstimatedTimeMinutes() + 1, null, null));
+        });
+
+        Task result = taskRepository.findById(taskId).orElseThrow();
+        assertThat(result.getEstimatedTimeMinutes()).isEqualTo(THREADS * PATCHES_PER_THREAD);
+        assertThat(result.getVersion()).isGreaterThanOrEqualTo((long) THREADS * PATCHES_PER_THREAD);
+    }
+
+    @Test
+    void taskUpdateRequiresCurrentVersion() {
+        Long taskId = taskService.create(counterTask(), user.getId()).getId();
+
+        Task withoutVersion = counterTask();
+        withoutVersion.setTitle("Without version");
+        assertThatThrownBy(() -> taskService.update(taskRepository.findById(taskId).orElseThrow(), withoutVersion))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        Task stale = counterTask();
+        stale.setVersion(taskRepository.findById(taskId).orElseThrow().getVersion() - 1);
+        assertThatThrownBy(() -> taskService.update(taskRepository.findById(taskId).orElseThrow(), stale))
+                .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+
+        assertThat(taskRepository.findById(taskId).orElseThrow().getTitle()).isEqualTo("Counter");
+    }
+
+    @Test
+    void concurrentProjectPatchesLoseNoUpdates() throws Exception {
+        Project project = new Project();
+        project.setTitle("0");
+        project.setDeadline(LocalDate.now().plusDays(1));
+        project.setPriority(Priority.LOW);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        Long projectId = projectService.create(project, user.getId()).getId();
+
+        hammer("project", () -> {
+            Project current = projectRepository.findById(projectId).orElseThrow();
+            String next = String.valueOf(Integer.parseInt(current.getTitle()) + 1);
+            projectService.patch(projectId, user.getId(),
+                    new ProjectPatchRequest(current.getVersion(), next, null, null, null));
+        });
+
+        Project result = projectRepository.findById(projectId).orElseThrow();
+        assertThat(Integer.parseInt(result.getTitle())).isEqualTo(THREADS * PATCHES_PER_THREAD);
+    }
+
+    @Test
+    void concurrentLifeSpherePatchesLoseNoUpdates() throws Exception {
+        Long sphereId = sphere.getId();
+        lifeSphereService.patch(sphereId, user.getId(),
+                new LifeSpherePatchRequest(lifeSphereRepository.findById(sphereId).orElseThrow().getVersion(), "0", null));
+
+        hammer("sphere", () -> {
+            LifeSphere current = lifeSphereRepository.findById(sphereId).orElseThrow();
+            String next = String.valueOf(Integer.parseInt(current.getName()) + 1);
+            lifeSphereService.patch(sphereId, user.getId(),
+                    new LifeSpherePatchRequest(current.getVersion(), next, null));
+        });
+
+        LifeSphere result = lifeSphereRepository.findById(sphereId).orElseThrow();
+        assertThat(Integer.parseInt(result.getName())).isEqualTo(THREADS * PATCHES_PER_THREAD);
+    }
+
+    private Task counterTask() {
+        Task task = new Task();
+        task.setTitle("Counter");
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.LOW);
+        task.setEstimatedTimeMinutes(0);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+
+    // Выполнить PATCHES_PER_THREAD успешных обновлений в каждом из THREADS потоков, повторяя конфликтующие
+    private void hammer(String entity, Runnable patch) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        AtomicLong conflicts = new AtomicLong();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int k = 0; k < PATCHES_PER_THREAD; k++) {
+                        while (true) {
+                            try {
+                                patch.run();
+                                break;
+                            } catch (ObjectOptimisticLockingFailureException e) {
+                                // Кто-то успел раньше — перечитываем версию и повторяем
+                                conflicts.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedMs = Math.max((System.nanoTime() - start) / 1_000_000, 1);
+            log.info("Concurrent {} PATCH: {} patches in {} ms, {} patches/s, {} version conflicts retried",
+                    entity, THREADS * PATCHES_PER_THREAD, elapsedMs,
+                    THREADS * PATCHES_PER_THREAD * 1000L / elapsedMs, conflicts.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
\ No newline at end of file
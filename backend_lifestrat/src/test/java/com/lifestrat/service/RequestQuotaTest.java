@@ -0,0 +1,227 @@
+package com.lifestrat.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lifestrat.config.RequestQuotaFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Корзины токенов без блокировок: точное число выдач при гонке потоков, очистка заполнившихся корзин
+ * одновременно со списанием, резервные корзины при заполненной таблице и ответ 429 от фильтра квот.
+ */
+class RequestQuotaTest {
+
+    private static final int THREADS = 8;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void concurrentAcquiresGrantExactlyCapacity() throws Exception {
+        // Время не идет, поэтому пополнения нет и выдать можно ровно capacity токенов
+        TokenBucket bucket = new TokenBucket(1000, 1, 0);
+        AtomicInteger granted = new AtomicInteger();
+
+        race(THREADS, thread -> {
+            for (int i = 0; i < 500; i++) {
+                if (bucket.tryAcquire(0) == 0) {
+                    granted.incrementAndGet();
+                }
+            }
+        });
+
+        assertThat(granted.get()).isEqualTo(1000);
+        assertThat(bucket.tryAcquire(0)).isPositive();
+    }
+
+    @Test
+    void partiallyDrainedBucketIsNeverEvicted() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            TokenBucket bucket = new TokenBucket(100, 1, 0);
+            AtomicInteger granted = new AtomicInteger();
+            AtomicBoolean evicted = new AtomicBoolean();
+
+            race(2, thread -> {
+                if (thread == 0) {
+                    while (granted.get() < 100 && !evicted.get()) {
+                        long result = bucket.tryAcquire(0);
+                        if (result == TokenBucket.EVICTED) {
+                            return;
+                        }
+                        if (result == 0) {
+                            granted.incrementAndGet();
+                        }
+                    }
+                } else if (bucket.tryEvict(0)) {
+                    evicted.set(true);
+                }
+            });
+
+            // Удалить можно только полную корзину: после хотя бы одной выдачи очистка должна отступить
+            assertThat(evicted.get() && granted.get() > 0).isFalse();
+        }
+    }
+
+    @Test
+    void sweepRacingAcquiresKeepsBucketCountConsistent() throws Exception {
+        // 10 токенов в миллисекунду: корзины заполняются почти сразу и постоянно попадают под очистку
+        RequestQuotaService quotaService = quotaService(100_000, 1, 600_000);
+        int subjects = 50;
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger maxSeen = new AtomicInteger();
+        AtomicInteger minSeen = new AtomicInteger();
+
+        race(THREADS, thread -> {
+            if (thread == 0) {
+                while (!done.get()) {
+                    quotaService.sweep();
+                    int count = bucketCount();
+                    maxSeen.accumulateAndGet(count, Math::max);
+                    minSeen.accumulateAndGet(count, Math::min);
+                }
+                return;
+            }
+            try {
+                for (int i = 0; i < 100_000; i++) {
+                    quotaService.tryAcquire(QuotaCategory.CRUD, "user" + (i % subjects));
+                }
+            } finally {
+                done.set(true);
+            }
+        });
+
+        assertThat(minSeen.get()).isGreaterThanOrEqualTo(0);
+        assertThat(maxSeen.get()).isLessThanOrEqualTo(subjects);
+        // Все корзины заполнились: очистка должна удалить их все и довести счетчик ровно до нуля
+        Thread.sleep(10);
+        quotaService.sweep();
+        assertThat(bucketCount()).isZero();
+    }
+
+    @Test
+    void acquireThatFindsEvictedBucketReplacesItWithoutLeakingCount() throws Exception {
+        RequestQuotaService quotaService = quotaService(100_000, 1, 600_000);
+        assertThat(quotaService.tryAcquire(QuotaCategory.CRUD, "user")).isZero();
+        assertThat(bucketCount()).isEqualTo(1);
+
+        // Очистка пометила заполнившуюся корзину, но еще не убрала ее из таблицы — ее убирает списание
+        Thread.sleep(2);
+        TokenBucket evicted = quotaService.existingBucket(QuotaCategory.CRUD, "user");
+        assertThat(evicted.tryEvict(quotaService.nowMillis())).isTrue();
+
+        assertThat(quotaService.tryAcquire(QuotaCategory.CRUD, "user")).isZero();
+        assertThat(quotaService.existingBucket(QuotaCategory.CRUD, "user")).isNotSameAs(evicted);
+        assertThat(bucketCount()).isEqualTo(1);
+    }
+
+    @Test
+    void newSubjectsShareOverflowBucketsWhenTableIsFull() {
+        RequestQuotaService quotaService = quotaService(2, 1, 1);
+        assertThat(quotaService.tryAcquire(QuotaCategory.CRUD, "first")).isZero();
+        assertThat(quotaService.tryAcquire(QuotaCategory.CRUD, "second")).isZero();
+        assertThat(bucketCount()).isEqualTo(2);
+
+        int subjects = 1000;
+        int rejected = 0;
+        for (int i = 0; i < subjects; i++) {
+            if (quotaService.tryAcquire(QuotaCategory.CRUD, "overflow" + i) > 0) {
+                rejected++;
+            }
+        }
+
+        // Таблица не растет, а 1000 субъектов делят 256 резервных корзин по одному токену
+        assertThat(bucketCount()).isEqualTo(2);
+        assertThat(rejected).isGreaterThanOrEqualTo(subjects - 256);
+    }
+
+    @Test
+    void emptyBucketAnswers429WithRetryAfter() throws Exception {
+        RequestQuotaFilter filter = new RequestQuotaFilter(quotaService(100_000, 1, 1),
+                new ObjectMapper().findAndRegisterModules());
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated("quota-user", null, List.of()));
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        MockFilterChain firstChain = new MockFilterChain();
+        filter.doFilter(tasksRequest(), first, firstChain);
+        assertThat(first.getStatus()).isEqualTo(200);
+        assertThat(firstChain.getRequest()).isNotNull();
+
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        MockFilterChain secondChain = new MockFilterChain();
+        filter.doFilter(tasksRequest(), second, secondChain);
+        assertThat(second.getStatus()).isEqualTo(429);
+        assertThat(secondChain.getRequest()).isNull();
+        // Один токен в минуту: повторить можно не раньше чем через минуту
+        assertThat(Long.parseLong(second.getHeader(HttpHeaders.RETRY_AFTER))).isBetween(1L, 60L);
+        assertThat(second.getContentAsString()).contains("\"status\":429");
+    }
+
+    private RequestQuotaService quotaService(int maxBuckets, int crudCapacity, int crudRefillPerMinute) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+        return new RequestQuotaService(true, maxBuckets, crudCapacity, crudRefillPerMinute, 20, 60, 10, 10,
+                beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    private int bucketCount() {
+        return (int) meterRegistry.get("lifestrat.quota.buckets").gauge().value();
+    }
+
+    private static MockHttpServletRequest tasksRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/tasks");
+        request.setRequestURI("/api/tasks");
+        return request;
+    }
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    // Запустить threads потоков одновременно и дождаться их завершения
+    private static void race(int threads, ThreadBody body) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    body.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.RecurrenceRule;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.event.DataChangedEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Экземпляры ритуалов вставляются SQL-запросом в обход сервисов: после коммита диапазона
+ * слушатели изменений данных получают одно событие на пользователя, а журнал — запись о каждом экземпляре.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@Import(RitualGenerationServiceTest.CommittedEvents.class)
+class RitualGenerationServiceTest {
+
+    @TestConfiguration
+    static class CommittedEvents {
+
+        final Queue<DataChangedEvent> received = new ConcurrentLinkedQueue<>();
+
+        @TransactionalEventListener
+        public void onDataChanged(DataChangedEvent event) {
+            received.add(event);
+        }
+    }
+
+    @Autowired
+    private RitualGenerationService ritualGenerationService;
+    @Autowired
+    private CommittedEvents committedEvents;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void generatedInstancesPublishOneEventPerUser() {
+        String name = "ritual-" + UUID.randomUUID();
+        User user = userService.createUser(name, name + "@example.com", "password");
+        LifeSphere sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+        taskService.create(ritual(user, sphere, "Morning run"), user.getId());
+        taskService.create(ritual(user, sphere, "Evening reading"), user.getId());
+
+        LocalDate day = LocalDate.now().plusDays(1);
+        committedEvents.received.clear();
+        assertThat(ritualGenerationService.generateForDay(day)).isGreaterThanOrEqualTo(2);
+
+        List<Long> instanceIds = jdbcTemplate.queryForList(
+                "SELECT id FROM tasks WHERE user_id = ? AND source_task_id IS NOT NULL", Long.class, user.getId());
+        assertThat(instanceIds).hasSize(2);
+        assertThat(committedEvents.received)
+                .filteredOn(event -> event.userId().equals(user.getId()))
+                .singleElement()
+                .satisfies(event -> assertThat(instanceIds).contains(event.entityId()));
+        assertThat(jdbcTemplate.queryForList("SELECT c.entity_id FROM change_log c JOIN tasks t ON t.id = c.entity_id "
+                + "WHERE c.entity_kind = 'TASK' AND t.user_id = ? AND t.source_task_id IS NOT NULL",
+                Long.class, user.getId()))
+                .containsExactlyInAnyOrderElementsOf(instanceIds);
+
+        // Повторный запуск за тот же день ничего не создает и событий не публикует
+        ritualGenerationService.generateForDay(day);
+        assertThat(committedEvents.received).filteredOn(event -> event.userId().equals(user.getId())).hasSize(1);
+    }
+
+    private static Task ritual(User user, LifeSphere sphere, String title) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDeadline(LocalDate.now());
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(20);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.RITUAL);
+        task.setRecurrence(RecurrenceRule.DAILY);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,136 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.SearchResultDto;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Полнотекстовый поиск: совпадение по префиксу и внутри слова (по триграммам) для кириллицы и латиницы,
+ * «ё» и «е» неразличимы, точное совпадение и название ранжируются выше, изменения попадают в индекс сразу.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class SearchIndexServiceTest {
+
+    private static final int LIMIT = 10;
+
+    @Autowired
+    private SearchIndexService searchIndexService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private ProjectService projectService;
+
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "search-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void tokenizerLowercasesAndFoldsYo() {
+        assertThat(UserSearchIndex.tokenize("Ёлка, ЁЖИК и Elephant-2!"))
+                .containsExactly("елка", "ежик", "и", "elephant", "2");
+    }
+
+    @Test
+    void findsByPrefixInfixAndYo() {
+        Long renovation = project("Ремонт квартиры", "Плитка и обои").getId();
+        Long tree = task("Купить ёлку", null).getId();
+        Long report = task("Elephant report", "Подготовить отчёт").getId();
+
+        assertThat(ids("рем")).containsExactly(renovation);
+        assertThat(ids("вартир")).containsExactly(renovation);
+        assertThat(ids("ЕЛК")).containsExactly(tree);
+        assertThat(ids("ёлку")).containsExactly(tree);
+        assertThat(ids("отчет")).containsExactly(report);
+        assertThat(ids("lepha")).containsExactly(report);
+        assertThat(ids("ele rep")).containsExactly(report);
+        // Внутри слова ищутся только токены от трех символов, а все токены запроса должны совпасть
+        assertThat(ids("ар")).isEmpty();
+        assertThat(ids("ремонт ёлку")).isEmpty();
+        assertThat(ids("рем", SearchIndexService.DocumentKind.TASK)).isEmpty();
+    }
+
+    @Test
+    void ranksExactOverPrefixOverInfixAndTitleOverDescription() {
+        Long exact = task("План", null).getId();
+        Long prefix = task("Планирование", null).getId();
+        Long infix = task("Перепланировка", null).getId();
+        Long inDescription = task("Разное", "Планы на лето").getId();
+
+        assertThat(ids("план")).containsExactly(exact, prefix, infix, inDescription);
+    }
+
+    @Test
+    void updatesAreVisibleImmediately() {
+        Task task = task("Сходить в спортзал", null);
+        assertThat(ids("спорт")).containsExactly(task.getId());
+
+        task.setTitle("Пробежка в парке");
+        taskService.update(taskService.findByIdAndUserId(task.getId(), user.getId()).orElseThrow(), task);
+        assertThat(ids("спорт")).isEmpty();
+        assertThat(ids("пробеж")).containsExactly(task.getId());
+
+        taskService.delete(taskService.findByIdAndUserId(task.getId(), user.getId()).orElseThrow());
+        assertThat(ids("пробеж")).isEmpty();
+    }
+
+    private List<Long> ids(String query) {
+        return ids(query, null);
+    }
+
+    private List<Long> ids(String query, SearchIndexService.DocumentKind kind) {
+        return searchIndexService.search(user.getId(), query, kind, LIMIT).stream()
+                .map(SearchResultDto::id)
+                .toList();
+    }
+
+    private Project project(String title, String description) {
+        Project project = new Project();
+        project.setTitle(title);
+        project.setDescription(description);
+        project.setDeadline(LocalDate.now().plusDays(30));
+        project.setPriority(Priority.MEDIUM);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        return projectService.create(project, user.getId());
+    }
+
+    private Task task(String title, String description) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDescription(description);
+        task.setDeadline(LocalDate.now().plusDays(1));
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(30);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return taskService.create(task, user.getId());
+    }
+}
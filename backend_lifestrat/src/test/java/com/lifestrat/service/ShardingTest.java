@@ -0,0 +1,338 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.config.ShardContext;
+import com.lifestrat.config.ShardRoutingDataSource;
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.util.ConsistentHashRing;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Шардирование на нескольких базах H2 в памяти: размещение по кольцу, уникальность имен
+ * через справочник, ребалансировка после добавления шарда, синхронизация пользователя, перенесенного
+ * на шард с меньшим номером, удаление и заполнение справочника
+ * пользователями, созданными до включения шардирования, ответ 401 для неизвестных и удаленных пользователей
+ * с шардированием и без него.
+ * Базы переживают перезапуск контекста (DB_CLOSE_DELAY=-1), поэтому каждый тест берет свои имена.
+ */
+class ShardingTest {
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final HttpClient HTTP = HttpClient.newHttpClient();
+
+    private String databasePrefix;
+
+    @BeforeEach
+    void chooseDatabaseNames() {
+        databasePrefix = "sharding-" + UUID.randomUUID();
+    }
+
+    @Test
+    void usersArePlacedOnTheirRingShard() {
+        try (ConfigurableApplicationContext context = startSharded(2)) {
+            List<Long> userIds = createUsersWithTask(context, "placed", 40);
+
+            ConsistentHashRing ring = new ConsistentHashRing(2, VIRTUAL_NODES);
+            for (Long userId : userIds) {
+                int shard = ring.shardFor(userId);
+                assertThat(count(context, shard, "SELECT COUNT(*) FROM users WHERE id = " + userId)).isEqualTo(1);
+                assertThat(count(context, shard, "SELECT COUNT(*) FROM tasks WHERE user_id = " + userId)).isEqualTo(1);
+                assertThat(count(context, 1 - shard, "SELECT COUNT(*) FROM users WHERE id = " + userId)).isZero();
+                assertThat(tasksOf(context, userId)).isEqualTo(1);
+            }
+            assertThat(count(context, 0, "SELECT COUNT(*) FROM users")).isPositive();
+            assertThat(count(context, 1, "SELECT COUNT(*) FROM users")).isPositive();
+        }
+    }
+
+    @Test
+    void duplicateUsernamesAndEmailsAreRejectedAcrossShards() {
+        try (ConfigurableApplicationContext context = startSharded(2)) {
+            UserService userService = context.getBean(UserService.class);
+            for (int i = 0; i < 10; i++) {
+                userService.createUser("user" + i, "user" + i + "@example.com", "password");
+            }
+
+            assertThatThrownBy(() -> userService.createUser("user3", "other@example.com", "password"))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("username");
+            assertThatThrownBy(() -> userService.createUser("other", "user7@example.com", "password"))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("email");
+            assertThat(count(context, 0, "SELECT COUNT(*) FROM users")
+                    + count(context, 1, "SELECT COUNT(*) FROM users")).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void rebalanceMovesUsersToAddedShard() {
+        List<Long> userIds;
+        try (ConfigurableApplicationContext context = startSharded(2)) {
+            userIds = createUsersWithTask(context, "moved", 40);
+        }
+
+        try (ConfigurableApplicationContext context = startSharded(3)) {
+            ShardRebalanceService rebalanceService = context.getBean(ShardRebalanceService.class);
+            assertThat(rebalanceService.rebalance()).isPositive();
+
+            ConsistentHashRing ring = new ConsistentHashRing(3, VIRTUAL_NODES);
+            for (Long userId : userIds) {
+                int shard = ring.shardFor(userId);
+                for (int other = 0; other < 3; other++) {
+                    long expected = other == shard ? 1 : 0;
+                    assertThat(count(context, other, "SELECT COUNT(*) FROM users WHERE id = " + userId))
+                            .isEqualTo(expected);
+                    assertThat(count(context, other, "SELECT COUNT(*) FROM tasks WHERE user_id = " + userId))
+                            .isEqualTo(expected);
+                }
+                assertThat(tasksOf(context, userId)).isEqualTo(1);
+            }
+            assertThat(count(context, 2, "SELECT COUNT(*) FROM users")).isPositive();
+            assertThat(rebalanceService.rebalance()).isZero();
+        }
+    }
+
+    @Test
+    void syncCursorSurvivesMoveToLowerShard() {
+        List<Long> userIds;
+        Map<Long, Long> cursors = new HashMap<>();
+        try (ConfigurableApplicationContext context = startSharded(3)) {
+            userIds = createUsersWithTask(context, "synced", 30);
+            ChangeLogService changeLogService = context.getBean(ChangeLogService.class);
+            for (Long userId : userIds) {
+                SyncResponseDto initial = ShardContext.callAsUser(userId,
+                        () -> changeLogService.sync(userId, 0, 500));
+                assertThat(initial.tasks()).hasSize(1);
+                cursors.put(userId, initial.cursor());
+            }
+        }
+
+        // Другое число виртуальных узлов перемещает часть пользователей между теми же шардами, в том числе вниз
+        int movedVirtualNodes = 16;
+        ConsistentHashRing before = new ConsistentHashRing(3, VIRTUAL_NODES);
+        ConsistentHashRing after = new ConsistentHashRing(3, movedVirtualNodes);
+        List<Long> movedDown = userIds.stream()
+                .filter(userId -> after.shardFor(userId) < before.shardFor(userId))
+                .toList();
+        assertThat(movedDown).isNotEmpty();
+
+        try (ConfigurableApplicationContext context = startSharded(3, WebApplicationType.NONE,
+                "--lifestrat.sharding.virtual-nodes=" + movedVirtualNodes)) {
+            assertThat(context.getBean(ShardRebalanceService.class).rebalance()).isPositive();
+            ChangeLogService changeLogService = context.getBean(ChangeLogService.class);
+            TaskService taskService = context.getBean(TaskService.class);
+
+            for (Long userId : movedDown) {
+                Long taskId = ShardContext.callAsUser(userId, () -> {
+                    Task task = taskService.findAllByUserId(userId).get(0);
+                    taskService.markAsCompleted(task.getId(), userId);
+                    return task.getId();
+                });
+
+                SyncResponseDto resumed = ShardContext.callAsUser(userId,
+                        () -> changeLogService.sync(userId, cursors.get(userId), 500));
+                assertThat(resumed.tasks()).extracting(TaskDto::id).containsExactly(taskId);
+                assertThat(resumed.tasks().get(0).completed()).isTrue();
+                assertThat(ShardContext.callAsUser(userId,
+                        () -> changeLogService.sync(userId, resumed.cursor(), 500)).tasks()).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    void deleteRemovesUserDataAndReleasesName() {
+        try (ConfigurableApplicationContext context = startSharded(2)) {
+            Long userId = createUsersWithTask(context, "deleted", 1).get(0);
+            UserService userService = context.getBean(UserService.class);
+
+            userService.delete(ShardContext.callAsUser(userId, () -> userService.findById(userId).orElseThrow()));
+
+            assertThat(userService.existsByUsername("deleted0")).isFalse();
+            for (int shard = 0; shard < 2; shard++) {
+                assertThat(count(context, shard, "SELECT COUNT(*) FROM users WHERE id = " + userId)).isZero();
+                assertThat(count(context, shard, "SELECT COUNT(*) FROM tasks WHERE user_id = " + userId)).isZero();
+            }
+            User recreated = userService.createUser("deleted0", "deleted0@example.com", "password");
+            assertThat(recreated.getId()).isNotEqualTo(userId);
+        }
+    }
+
+    @Test
+    void usersCreatedBeforeShardingAreBackfilledIntoDirectory() {
+        List<Long> userIds;
+        try (ConfigurableApplicationContext context = startUnsharded()) {
+            userIds = createUsersWithTask(context, "legacy", 20);
+        }
+
+        try (ConfigurableApplicationContext context = startSharded(2)) {
+            UserService userService = context.getBean(UserService.class);
+            for (int i = 0; i < userIds.size(); i++) {
+                assertThat(userService.existsByUsername("legacy" + i)).isTrue();
+                assertThat(tasksOf(context, userIds.get(i))).isEqualTo(1);
+            }
+
+            long maxLegacyId = userIds.stream().mapToLong(Long::longValue).max().orElseThrow();
+            User registered = userService.createUser("fresh", "fresh@example.com", "password");
+            assertThat(registered.getId()).isGreaterThan(maxLegacyId);
+
+            assertThat(context.getBean(ShardRebalanceService.class).rebalance()).isPositive();
+            for (Long userId : userIds) {
+                assertThat(tasksOf(context, userId)).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    void unknownAndDeletedUsersAreUnauthorized() throws Exception {
+        try (ConfigurableApplicationContext context = startSharded(2, WebApplicationType.SERVLET, "--server.port=0")) {
+            Long userId = createUsersWithTask(context, "known", 1).get(0);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+            assertThat(login(port, "known0", "password")).isEqualTo(200);
+            assertThat(login(port, "known0", "wrong")).isEqualTo(401);
+            assertThat(login(port, "unknown", "password")).isEqualTo(401);
+
+            String token = context.getBean(JwtService.class).generateToken("known0");
+            assertThat(getTasks(port, token)).isEqualTo(200);
+            UserService userService = context.getBean(UserService.class);
+            userService.delete(ShardContext.callAsUser(userId, () -> userService.findById(userId).orElseThrow()));
+            assertThat(getTasks(port, token)).isEqualTo(401);
+        }
+    }
+
+    @Test
+    void unknownAndDeletedUsersAreUnauthorizedWithoutSharding() throws Exception {
+        try (ConfigurableApplicationContext context = start(WebApplicationType.SERVLET,
+                "--spring.datasource.url=" + url("single"), "--server.port=0")) {
+            Long userId = createUsersWithTask(context, "single", 1).get(0);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            JwtService jwtService = context.getBean(JwtService.class);
+
+            String token = jwtService.generateToken("single0");
+            assertThat(getTasks(port, token)).isEqualTo(200);
+            assertThat(getTasks(port, jwtService.generateToken("unknown"))).isEqualTo(401);
+            UserService userService = context.getBean(UserService.class);
+            userService.delete(userService.findById(userId).orElseThrow());
+            assertThat(getTasks(port, token)).isEqualTo(401);
+        }
+    }
+
+    private ConfigurableApplicationContext startSharded(int shards) {
+        return startSharded(shards, WebApplicationType.NONE);
+    }
+
+    private ConfigurableApplicationContext startSharded(int shards, WebApplicationType type, String... extraArgs) {
+        List<String> urls = new ArrayList<>();
+        for (int shard = 0; shard < shards; shard++) {
+            urls.add(url("shard" + shard));
+        }
+        String[] args = {
+                "--lifestrat.sharding.enabled=true",
+                "--lifestrat.sharding.shard-urls=" + String.join(",", urls),
+                "--lifestrat.sharding.directory-url=" + url("directory"),
+                "--lifestrat.sharding.directory-cache-ttl-ms=50",
+                // Схему на шардах создает ShardingConfig, и она должна пережить закрытие контекста
+                "--spring.jpa.hibernate.ddl-auto=none"};
+        return start(type, Stream.concat(Stream.of(args), Stream.of(extraArgs)).toArray(String[]::new));
+    }
+
+    // Первая база без шардирования становится шардом 0 после его включения
+    private ConfigurableApplicationContext startUnsharded() {
+        return start(WebApplicationType.NONE,
+                "--spring.datasource.url=" + url("shard0"),
+                "--spring.jpa.hibernate.ddl-auto=update");
+    }
+
+    private ConfigurableApplicationContext start(WebApplicationType type, String... args) {
+        String[] common = {"--spring.main.banner-mode=off", "--lifestrat.sharding.rebalance-on-startup=false"};
+        return new SpringApplicationBuilder(LifestratApplication.class)
+                .web(type)
+                .run(Stream.concat(Stream.of(common), Stream.of(args)).toArray(String[]::new));
+    }
+
+    private String url(String database) {
+        return "jdbc:h2:mem:" + databasePrefix + "-" + database + ";DB_CLOSE_DELAY=-1";
+    }
+
+    private static List<Long> createUsersWithTask(ConfigurableApplicationContext context, String prefix, int users) {
+        UserService userService = context.getBean(UserService.class);
+        LifeSphereService lifeSphereService = context.getBean(LifeSphereService.class);
+        TaskService taskService = context.getBean(TaskService.class);
+
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            User user = userService.createUser(prefix + i, prefix + i + "@example.com", "password");
+            userIds.add(user.getId());
+            ShardContext.runAsUser(user.getId(), () -> {
+                LifeSphere sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+                Task task = new Task();
+                task.setTitle("Task of " + user.getUsername());
+                task.setDeadline(LocalDate.now().plusDays(1));
+                task.setPriority(Priority.MEDIUM);
+                task.setEstimatedTimeMinutes(30);
+                task.setEnergyCost(EnergyCost.MEDIUM);
+                task.setType(TaskType.ACTION);
+                task.setLifeSphere(sphere);
+                task.setUser(user);
+                taskService.create(task, user.getId());
+            });
+        }
+        return userIds;
+    }
+
+    private static int login(int port, String username, String password) throws IOException, InterruptedException {
+        String body = "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}";
+        return send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/login"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body)));
+    }
+
+    private static int getTasks(int port, String token) throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/tasks"))
+                .header("Authorization", "Bearer " + token)
+                .GET());
+    }
+
+    private static int send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return HTTP.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static int tasksOf(ConfigurableApplicationContext context, Long userId) {
+        TaskService taskService = context.getBean(TaskService.class);
+        return ShardContext.callAsUser(userId, () -> taskService.findAllByUserId(userId).size());
+    }
+
+    private static long count(ConfigurableApplicationContext context, int shard, String sql) {
+        ShardRoutingDataSource dataSource = context.getBean(ShardRoutingDataSource.class);
+        return new JdbcTemplate(dataSource.getShard(shard)).queryForObject(sql, Long.class);
+    }
+}
\ No newline at end of file
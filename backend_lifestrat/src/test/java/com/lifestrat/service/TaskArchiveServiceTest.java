@@ -0,0 +1,205 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import com.lifestrat.dto.AnalyticsDto;
+import com.lifestrat.dto.SyncResponseDto;
+import com.lifestrat.dto.SyncTombstoneDto;
+import com.lifestrat.dto.TaskDto;
+import com.lifestrat.dto.TimeStatisticsDto;
+import com.lifestrat.entity.ArchivedTask;
+import com.lifestrat.entity.EnergyCost;
+import com.lifestrat.entity.LifeSphere;
+import com.lifestrat.entity.Priority;
+import com.lifestrat.entity.Project;
+import com.lifestrat.entity.RecurrenceRule;
+import com.lifestrat.entity.Task;
+import com.lifestrat.entity.TaskType;
+import com.lifestrat.entity.User;
+import com.lifestrat.repository.ArchivedTaskRepository;
+import com.lifestrat.repository.TaskRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Архивация выполненных задач: строки переносятся в архив с теми же значениями и удаляются для клиентов
+ * синхронизации, аналитика после переноса не меняется, а экземпляры архивированного бывшего шаблона
+ * остаются у пользователя обычными задачами с новой версией и записью в журнале изменений.
+ * Агрегаты архива хранятся в снимке и перечитываются только после следующей архивации.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class TaskArchiveServiceTest {
+
+    @Autowired
+    private TaskArchiveService taskArchiveService;
+    @Autowired
+    private RitualGenerationService ritualGenerationService;
+    @Autowired
+    private ChangeLogService changeLogService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private LifeSphereService lifeSphereService;
+    @Autowired
+    private TaskService taskService;
+    @Autowired
+    private ProjectService projectService;
+    @Autowired
+    private AnalyticsService analyticsService;
+    @Autowired
+    private TaskRepository taskRepository;
+    @Autowired
+    private ArchivedTaskRepository archivedTaskRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+    private LifeSphere sphere;
+
+    @BeforeEach
+    void createUser() {
+        String name = "archive-" + UUID.randomUUID();
+        user = userService.createUser(name, name + "@example.com", "password");
+        sphere = lifeSphereService.createDefaultLifeSpheres(user).get(0);
+    }
+
+    @Test
+    void archivedTasksAreMovedTombstonedAndStillCounted() {
+        Project project = new Project();
+        project.setTitle("Archived project");
+        project.setDeadline(LocalDate.now().plusDays(30));
+        project.setPriority(Priority.HIGH);
+        project.setLifeSphere(sphere);
+        project.setUser(user);
+        project = projectService.create(project, user.getId());
+        Task doneStep = action("Done step", LocalDate.now(), Priority.HIGH);
+        doneStep.setType(TaskType.STEP);
+        doneStep.setProject(project);
+        doneStep = taskService.create(doneStep, user.getId());
+        Task openStep = action("Open step", LocalDate.now().plusDays(3), Priority.LOW);
+        openStep.setType(TaskType.STEP);
+        openStep.setProject(project);
+        openStep = taskService.create(openStep, user.getId());
+        Task doneYesterday = taskService.create(action("Done yesterday", LocalDate.now().minusDays(1),
+                Priority.CRITICAL), user.getId());
+        taskService.markAsCompleted(doneStep.getId(), user.getId());
+        taskService.markAsCompleted(doneYesterday.getId(), user.getId());
+
+        AnalyticsDto before = analyticsService.getAnalytics(user.getId());
+        assertThat(before.productivityStats().currentStreak()).isEqualTo(2);
+        assertThat(before.timeStatistics().completedTasksCount()).isEqualTo(2);
+        assertThat(before.projectsProgress()).singleElement()
+                .satisfies(progress -> assertThat(progress.progressPercentage()).isEqualTo(50.0));
+        long cursor = changeLogService.sync(user.getId(), 0, 500).cursor();
+
+        assertThat(taskArchiveService.archive(LocalDateTime.now().plusMinutes(1))).isGreaterThanOrEqualTo(2);
+
+        for (Task done : new Task[]{doneStep, doneYesterday}) {
+            assertThat(taskRepository.findById(done.getId())).isEmpty();
+            ArchivedTask archived = archivedTaskRepository.findById(done.getId()).orElseThrow();
+            assertThat(archived.getUserId()).isEqualTo(user.getId());
+            assertThat(archived.getTitle()).isEqualTo(done.getTitle());
+            assertThat(archived.getDeadline()).isEqualTo(done.getDeadline());
+            assertThat(archived.getPriority()).isEqualTo(done.getPriority());
+            assertThat(archived.getEstimatedTimeMinutes()).isEqualTo(done.getEstimatedTimeMinutes());
+            assertThat(archived.getLifeSphereId()).isEqualTo(sphere.getId());
+        }
+        assertThat(archivedTaskRepository.findById(doneStep.getId()).orElseThrow().getProjectId())
+                .isEqualTo(project.getId());
+        assertThat(taskRepository.findById(openStep.getId())).isPresent();
+
+        SyncResponseDto delta = changeLogService.sync(user.getId(), cursor, 500);
+        assertThat(delta.tasks()).isEmpty();
+        assertThat(delta.deleted()).extracting(SyncTombstoneDto::id)
+                .containsExactlyInAnyOrder(doneStep.getId(), doneYesterday.getId());
+
+        assertThat(analyticsService.getAnalytics(user.getId())).isEqualTo(before);
+    }
+
+    @Test
+    void archiveTotalsAreCachedUntilNextArchiveRun() {
+        Task first = taskService.create(action("First", LocalDate.now(), Priority.HIGH), user.getId());
+        taskService.markAsCompleted(first.getId(), user.getId());
+        taskArchiveService.archive(LocalDateTime.now().plusMinutes(1));
+        assertThat(analyticsService.getTimeStatistics(user.getId()).completedTasksCount()).isEqualTo(1);
+
+        // Агрегаты архива берутся из снимка, поэтому изменение таблицы в обход сервисов не видно
+        jdbcTemplate.update("DELETE FROM archived_tasks WHERE id = ?", first.getId());
+        assertThat(analyticsService.getTimeStatistics(user.getId()).completedTasksCount()).isEqualTo(1);
+        Task second = taskService.create(action("Second", LocalDate.now(), Priority.LOW), user.getId());
+        taskService.markAsCompleted(second.getId(), user.getId());
+        assertThat(analyticsService.getTimeStatistics(user.getId()).completedTasksCount()).isEqualTo(2);
+
+        // Коммит архивации сбрасывает снимки, и агрегаты перечитываются из БД
+        taskArchiveService.archive(LocalDateTime.now().plusMinutes(1));
+        TimeStatisticsDto after = analyticsService.getTimeStatistics(user.getId());
+        assertThat(after.completedTasksCount()).isEqualTo(1);
+        assertThat(after.totalTimeCompleted()).isEqualTo(40);
+        assertThat(analyticsService.getPriorityDistribution(user.getId())).containsOnlyKeys(Priority.LOW);
+    }
+
+    @Test
+    void instancesOfArchivedTemplateGetNewVersionAndChangeLogEntry() {
+        Task template = taskService.create(ritual("Daily stretch"), user.getId());
+        ritualGenerationService.generateForDay(LocalDate.now().plusDays(1));
+        Long instanceId = jdbcTemplate.queryForObject(
+                "SELECT id FROM tasks WHERE source_task_id = ?", Long.class, template.getId());
+        // Бывший шаблон: повторение снято, задача выполнена и попадает под архивацию
+        taskService.stopRecurrence(template.getId(), user.getId());
+        taskService.markAsCompleted(template.getId(), user.getId());
+
+        Map<String, Object> before = instance(instanceId);
+        long cursor = changeLogService.sync(user.getId(), 0, 500).cursor();
+
+        assertThat(taskArchiveService.archive(LocalDateTime.now().plusMinutes(1))).isPositive();
+
+        assertThat(archivedTaskRepository.findById(template.getId())).isPresent();
+        Map<String, Object> after = instance(instanceId);
+        assertThat(after.get("source_task_id")).isNull();
+        assertThat(((Number) after.get("version")).longValue())
+                .isEqualTo(((Number) before.get("version")).longValue() + 1);
+        SyncResponseDto delta = changeLogService.sync(user.getId(), cursor, 500);
+        assertThat(delta.tasks()).extracting(TaskDto::id).containsExactly(instanceId);
+        assertThat(delta.deleted()).extracting(SyncTombstoneDto::id).containsExactly(template.getId());
+    }
+
+    private Map<String, Object> instance(Long id) {
+        return jdbcTemplate.queryForMap("SELECT source_task_id, version FROM tasks WHERE id = ?", id);
+    }
+
+    private Task action(String title, LocalDate deadline, Priority priority) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDeadline(deadline);
+        task.setPriority(priority);
+        task.setEstimatedTimeMinutes(40);
+        task.setEnergyCost(EnergyCost.MEDIUM);
+        task.setType(TaskType.ACTION);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+
+    private Task ritual(String title) {
+        Task task = new Task();
+        task.setTitle(title);
+        task.setDeadline(LocalDate.now());
+        task.setPriority(Priority.MEDIUM);
+        task.setEstimatedTimeMinutes(15);
+        task.setEnergyCost(EnergyCost.LOW);
+        task.setType(TaskType.RITUAL);
+        task.setRecurrence(RecurrenceRule.DAILY);
+        task.setLifeSphere(sphere);
+        task.setUser(user);
+        return task;
+    }
+}
@@ -0,0 +1,102 @@
+package com.lifestrat.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Векторные сканы должны давать те же суммы и счетчики, что и скалярные: при любой длине хвоста,
+ * на границе сброса полос int в long каждые FLUSH_INTERVAL итераций и при выполненных задачах
+ * на границах слов битовой маски. Запускается с --add-modules jdk.incubator.vector (argLine surefire).
+ */
+class TaskScanKernelsTest {
+
+    private static final int FIRST_DAY = 20_000;
+    private static final int DAYS = 60;
+    private static final int SPHERES = 5;
+    private static final int CODES = 3;
+
+    private final TaskScanKernels scalar = new ScalarTaskScanKernels();
+    private final TaskScanKernels vector = new VectorTaskScanKernels();
+    private final int lanes = IntVector.SPECIES_PREFERRED.length();
+
+    @Test
+    void everyTailLengthMatchesScalar() {
+        Random random = new Random(1);
+        int maxSize = 3 * Long.SIZE + Math.max(lanes, ByteVector.SPECIES_PREFERRED.length());
+        for (int size = 0; size <= maxSize; size++) {
+            TaskColumns columns = new TaskColumns();
+            for (int i = 0; i < size; i++) {
+                columns.upsert(new TaskColumns.Row(i, 0, FIRST_DAY + random.nextInt(DAYS), random.nextInt(2000),
+                        (byte) random.nextInt(CODES), (byte) 0, (byte) 0, random.nextBoolean(), random.nextInt(SPHERES)));
+            }
+            assertSameResults(columns, FIRST_DAY + random.nextInt(DAYS), FIRST_DAY + DAYS / 2 + random.nextInt(DAYS));
+        }
+    }
+
+    @Test
+    void laneSumsAreFlushedBeforeOverflow() {
+        // Полные оценки во всех полосах: без сброса каждые FLUSH_INTERVAL итераций полоса int переполнилась бы
+        int flushRows = VectorTaskScanKernels.FLUSH_INTERVAL * lanes;
+        for (int size : new int[]{flushRows - 1, flushRows, flushRows + 1, 2 * flushRows + lanes + 3, 3 * flushRows}) {
+            TaskColumns columns = columns(size, TaskColumns.MAX_MINUTES, i -> true);
+            assertSameResults(columns, FIRST_DAY, Integer.MAX_VALUE);
+
+            long expected = (long) size * TaskColumns.MAX_MINUTES;
+            assertThat(vector.sumMinutes(columns)).containsExactly(expected, expected);
+            assertThat(vector.sumCompletedMinutesBySphere(columns, FIRST_DAY, Integer.MAX_VALUE, new long[1]))
+                    .containsExactly(expected);
+        }
+    }
+
+    @Test
+    void completedBitsAtWordBoundariesMatchScalar() {
+        int size = 4 * Long.SIZE + lanes / 2;
+        IntPredicate[] patterns = {
+                i -> false,
+                i -> true,
+                i -> i % Long.SIZE == 0,
+                i -> i % Long.SIZE == Long.SIZE - 1,
+                i -> i % lanes == lanes - 1,
+                i -> (i / Long.SIZE) % 2 == 1,
+                i -> i % 2 == 0,
+                i -> i >= size - lanes
+        };
+        for (IntPredicate completed : patterns) {
+            TaskColumns columns = columns(size, 1, completed);
+            assertSameResults(columns, FIRST_DAY, Integer.MAX_VALUE);
+
+            long completedCount = 0;
+            for (int i = 0; i < size; i++) {
+                completedCount += completed.test(i) ? 1 : 0;
+            }
+            assertThat(vector.sumMinutes(columns)).containsExactly(size, completedCount);
+        }
+    }
+
+    // size задач в одной сфере и в один день; минуты у всех одинаковые
+    private static TaskColumns columns(int size, int minutes, IntPredicate completed) {
+        TaskColumns columns = new TaskColumns();
+        for (int i = 0; i < size; i++) {
+            columns.upsert(new TaskColumns.Row(i, 0, FIRST_DAY, minutes, (byte) (i % CODES), (byte) 0, (byte) 0,
+                    completed.test(i), 1));
+        }
+        return columns;
+    }
+
+    private void assertSameResults(TaskColumns columns, int fromDay, int toDay) {
+        long[] scalarCounts = new long[columns.sphereCount];
+        long[] vectorCounts = new long[columns.sphereCount];
+        assertThat(vector.sumCompletedMinutesBySphere(columns, fromDay, toDay, vectorCounts))
+                .isEqualTo(scalar.sumCompletedMinutesBySphere(columns, fromDay, toDay, scalarCounts));
+        assertThat(vectorCounts).isEqualTo(scalarCounts);
+        assertThat(vector.sumMinutes(columns)).isEqualTo(scalar.sumMinutes(columns));
+        assertThat(vector.countByCode(columns.priorities, columns.size, CODES))
+                .isEqualTo(scalar.countByCode(columns.priorities, columns.size, CODES));
+    }
+}
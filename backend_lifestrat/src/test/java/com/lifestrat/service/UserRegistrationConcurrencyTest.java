@@ -0,0 +1,55 @@
+package com.lifestrat.service;
+
+import com.lifestrat.LifestratApplication;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Одновременных регистраций больше, чем соединений в пуле: регистрация не должна держать
+ * одно соединение, дожидаясь второго, иначе пул блокируется до истечения таймаута.
+ */
+@SpringBootTest(classes = LifestratApplication.class, webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = {
+                "spring.datasource.hikari.maximum-pool-size=2",
+                "spring.datasource.hikari.connection-timeout=3000"
+        })
+class UserRegistrationConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int REGISTRATIONS = 16;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void concurrentRegistrationsDoNotExhaustConnectionPool() throws Exception {
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < REGISTRATIONS; i++) {
+                String username = prefix + "-" + i;
+                futures.add(executor.submit(() -> userService.createUser(username, username + "@example.com", "password")));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < REGISTRATIONS; i++) {
+            assertThat(userService.existsByUsername(prefix + "-" + i)).isTrue();
+        }
+    }
+}
\ No newline at end of file